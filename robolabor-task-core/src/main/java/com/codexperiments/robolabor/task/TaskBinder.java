@@ -0,0 +1,33 @@
+package com.codexperiments.robolabor.task;
+
+/**
+ * Describes, at compile-time, the outer references (i.e. the this$x fields) of a task handler class and of its super classes.
+ * Binders are generated by robolabor-task-processor for each inner task handler class it can see and are named after the binary
+ * name of the handler class followed by SUFFIX (e.g. MyActivity$MyTask$$TaskBinder). When a binder exists, the TaskManager uses
+ * it instead of discovering outer references by reflection, which is both faster and independent of the field naming heuristic.
+ * Anonymous and local classes are not visible at compile-time and are always discovered by reflection.
+ *
+ * A binder only replaces the discovery. Outer references are synthetic fields that generated code can't access, thus they are
+ * still cleared and restored through java.lang.reflect.Field accessors, resolved once per class from the names given here.
+ */
+public interface TaskBinder {
+    String SUFFIX = "$$TaskBinder";
+
+    /**
+     * @return True if the handler class or one of its super classes is an inner class.
+     */
+    boolean isInner();
+
+    /**
+     * Gives the name of the outer reference field declared at each level of the class hierarchy, starting from the handler class
+     * itself and going up to its super classes (java.lang.Object excluded).
+     * 
+     * @return One field name per class in the hierarchy or null for classes that have no outer reference.
+     */
+    String[] getEmitterFieldNames();
+
+    /**
+     * @return For each level of the class hierarchy, true if the outer reference points to a task handler.
+     */
+    boolean[] getHandlerFields();
+}
@@ -0,0 +1,31 @@
+package com.codexperiments.robolabor.task;
+
+/**
+ * Defines what happens when a task is executed while an identical task (i.e. with the same TaskId or equal to it) is still
+ * running. See TaskManagerConfig.resolveExecutionMode().
+ */
+public enum TaskExecutionMode
+{
+    /**
+     * The new task is dropped: execute() returns null and its handler is never called.
+     */
+    DROP,
+    /**
+     * The new task is not executed but its handler subscribes to the running task: execute() returns the reference of the running
+     * task and the new handler receives the same callbacks as the original one. One computation thus feeds any number of
+     * handlers.
+     */
+    SINGLE_FLIGHT,
+    /**
+     * The new task replaces the running one, which is cancelled (and removed from its executor queue if it has not started yet).
+     * Typically useful for search-as-you-type, when only the result of the latest query matters.
+     */
+    LATEST_WINS,
+    /**
+     * The new task is dropped if an identical task has been executed less than a throttle period ago (see
+     * TaskManagerConfig.resolveThrottlePeriod()), whether this one is still running or not. Otherwise it is executed (or dropped
+     * if an identical task is still running). Typically useful for loads triggered repeatedly by the UI, e.g. when list items
+     * get bound.
+     */
+    THROTTLE
+}
@@ -0,0 +1,32 @@
+package com.codexperiments.robolabor.task;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Executor that lets the TaskManager give up on the tasks it has submitted: cancelled tasks are removed from the queue and a task
+ * that exceeded its deadline without responding to interruption is released, so that it doesn't hold its thread, slot or turn
+ * forever. Executors wrapping another executor (e.g. BulkheadExecutor) release what they hold themselves and then delegate to
+ * the wrapped executor, if it is a TaskExecutor too.
+ *
+ * Executors returned by TaskManagerConfig.resolveExecutor() that don't implement it still work: cancelled tasks simply stay in
+ * their queue until their turn comes and stuck tasks keep their thread.
+ */
+public interface TaskExecutor extends Executor {
+    /**
+     * Remove a task that hasn't started yet.
+     * 
+     * @param pRunnable Task to remove, as submitted to execute().
+     * @return True if the task has been removed and will never run, false if it has already started or is unknown.
+     */
+    boolean remove(Runnable pRunnable);
+
+    /**
+     * Stop waiting for a running task: it doesn't count anymore against the limits of the executor (threads, slots, ordering)
+     * and the tasks waiting behind it can run. The task itself keeps running on its thread until it returns.
+     * 
+     * @param pRunnable Running task, as submitted to execute().
+     * @param pThread Thread running the task.
+     * @return True if anything has been released, false if the task is not running or if there is nothing to release.
+     */
+    boolean release(Runnable pRunnable, Thread pThread);
+}
@@ -1,7 +1,10 @@
 package com.codexperiments.robolabor.task;
 
+import java.util.Map;
+
 import com.codexperiments.robolabor.task.handler.Task;
 import com.codexperiments.robolabor.task.handler.TaskResult;
+import com.codexperiments.robolabor.task.id.TaskId;
 
 /**
  * Terminology:
@@ -79,5 +82,34 @@ public interface TaskManager {
 
     <TResult> boolean rebind(TaskRef<TResult> pTaskRef, TaskResult<TResult> pTaskResult);
 
+    /**
+     * Rebind several tasks at once, typically all the tasks of a screen after a configuration change. Each task handler must
+     * provide the same result type as the task its reference points to.
+     * 
+     * @param pTaskResults New task handlers indexed by the reference of the task they must be bound to.
+     * @return Number of tasks that could be rebound (i.e. that are still running).
+     */
+    int rebind(Map<? extends TaskRef<?>, ? extends TaskResult<?>> pTaskResults);
+
+    /**
+     * Cancel a task. A task still waiting to be executed will never be processed. A task being processed is notified through
+     * TaskNotifier.isCancelled() and, if requested, interrupted. In any case, no handler of a cancelled task is executed once
+     * cancel() returns and the task can be executed again right away.
+     * 
+     * @param pTaskRef Reference of the task to cancel.
+     * @param pMayInterruptIfRunning True to interrupt the thread processing the task, if any.
+     * @return True if the task has been cancelled or false if it is not running anymore.
+     */
+    boolean cancel(TaskRef<?> pTaskRef, boolean pMayInterruptIfRunning);
+
+    /**
+     * Same as cancel(TaskRef, boolean) but for a task identified by its TaskId (see TaskIdentifiable).
+     * 
+     * @param pTaskId Id of the task to cancel.
+     * @param pMayInterruptIfRunning True to interrupt the thread processing the task, if any.
+     * @return True if the task has been cancelled or false if it is not running anymore.
+     */
+    boolean cancel(TaskId pTaskId, boolean pMayInterruptIfRunning);
+
     void notifyProgress(/* TaskProgress pProgress */);
 }
@@ -0,0 +1,163 @@
+package com.codexperiments.robolabor.task;
+
+import java.util.concurrent.Executor;
+
+import com.codexperiments.robolabor.task.handler.Task;
+import com.codexperiments.robolabor.task.util.TaskResultCache;
+
+/**
+ * Interface that defines how the TaskManager works.
+ */
+public interface TaskManagerConfig
+{
+    /**
+     * Gives an object identifying an emitter. Basicallt, this identifier is used later as an indirection to access the emitter
+     * (actually a Weak reference to it) while avoiding any possible memory leak. This Id could be a String, an Integer
+     * constant... Anything that identifies the emitter uniquely. For example:
+     * <ul>
+     * <li>if an Activity, like a Dashboard activity, is unique in the app, then we can use its class as an Id (i.e. one instance
+     * at once, although activity can be recreated. But any task that is emitted by a HomeActivity can be bound to any later
+     * instance of a HomeActivity).</li>
+     * <li>If an activity, let's imagine a Web activity displaying a single specific web page, is used several times in the same
+     * app, then it may be appropriate to use a more specific Id, such as page Url (e.g. for a task that loads the corresponding
+     * page). We don't want an Activity to display the result of another.</li>
+     * <ul>
+     * 
+     * @param pEmitter Emitter of a task the Id of which is needed.
+     * @return Id of the emitter. Cannot be the emitter itself, or that could potentienally result in a memory leak.
+     */
+    Object resolveEmitterId(Object pEmitter);
+
+    /**
+     * Execution pipeline to use to run the task. Some tasks may use for example a "serial" executor, to ensure background tasks
+     * are executed in order (like classic AsyncTasks starting from Android Gingerbread). Other tasks may need to be run in
+     * parallel. Executors that handle priorities (e.g. PriorityTaskExecutor) get the priority returned by resolvePriority().
+     * 
+     * @param pTask Task that need to be executed on the executor.
+     * @return Executor to use for the specified task.
+     */
+    Executor resolveExecutor(Task<?> pTask);
+
+    /**
+     * Time during which batchable tasks (see TaskBatchable) with the same batch key are collected before being processed
+     * together. The window starts when the first task of the batch is executed. All the tasks of a batch run on the executor of
+     * the first one.
+     * 
+     * @param pTask Batchable task.
+     * @return Batch window in milliseconds or 0 to process the task on its own, through onProcess().
+     */
+    long resolveBatchWindow(Task<?> pTask);
+
+    /**
+     * Priority of a task, when it is waiting for its executor with other tasks. Typically, a task loading data displayed to the
+     * user should have a higher priority than a background synchronization. Priority is ignored by executors that don't handle
+     * it.
+     * 
+     * @param pTask Task the priority of which is needed.
+     * @return Priority of the task. Higher values mean higher priorities. Default priority is 0.
+     */
+    int resolvePriority(Task<?> pTask);
+
+    /**
+     * Behavior of execute() when an identical task (i.e. with the same TaskId or equal to it) is still running, or has been
+     * executed recently in THROTTLE mode. By default, duplicate tasks are dropped. Use SINGLE_FLIGHT to attach the handler of the
+     * duplicate task to the running one or LATEST_WINS to replace the running task with the new one.
+     * 
+     * @param pTask Task being executed while an identical one is running.
+     * @return Execution mode of the task.
+     */
+    TaskExecutionMode resolveExecutionMode(Task<?> pTask);
+
+    /**
+     * Time window during which re-executions of an identical task are dropped, for tasks in THROTTLE execution mode. The window
+     * starts when the task is executed.
+     * 
+     * @param pTask Task in THROTTLE execution mode.
+     * @return Throttle period in milliseconds. 0 to throttle only while the task is running.
+     */
+    long resolveThrottlePeriod(Task<?> pTask);
+
+    /**
+     * Maximum time given to a task to complete once executed, waiting time included. When it is exceeded, the task fails with a
+     * TimeoutException, its thread is interrupted and its late result, if any, is ignored. If the task was run by a
+     * PriorityTaskExecutor, the stuck thread is replaced so that other tasks are not blocked behind it.
+     * 
+     * @param pTask Task the timeout of which is needed.
+     * @return Timeout in milliseconds or 0 if task has no deadline.
+     */
+    long resolveTimeout(Task<?> pTask);
+
+    /**
+     * Minimum time between two calls to the onProgress() handler of a task. Progress notifications are always collapsed: at most
+     * one dispatch per task is pending on the UI thread at a time. An interval additionally delays a dispatch that would follow the
+     * previous one too closely. A progress notification still pending when its task returns is dispatched before the task
+     * finishes.
+     * 
+     * @param pTask Task that notifies its progress.
+     * @return Interval in milliseconds or 0 to dispatch progress as soon as possible.
+     */
+    long resolveProgressInterval(Task<?> pTask);
+
+    /**
+     * Cache to reuse the result of an identifiable task (see TaskIdentifiable) instead of executing it again. If a fresh result
+     * is cached when the task is executed, it is delivered directly to onStart() and onFinish() on the UI thread and the task
+     * never reaches an executor. Otherwise, the task is executed and its result cached if it succeeds.
+     * 
+     * @param pTask Task that may be cached. Ignored if it is not identifiable.
+     * @return Cache to use for the specified task or null if the task result must not be cached.
+     */
+    TaskResultCache resolveResultCache(Task<?> pTask);
+
+    /**
+     * Configuration option to indicate that TaskManager should wait for an object to be bound to the task before to execute task
+     * termination handlers. For example, given an Activity that starts a task but get destroyed during processing, two cases may
+     * occur:
+     * <ul>
+     * <li>keepResultOnHold is false: task termination handlers are executed as soon as the task is over, whether an activity is
+     * bound to the task or not. If an activity is bound, onFinish and onFail are executed. If no activity is bound, then only
+     * onResult is executed. is bound to the task</li>
+     * <li>keepResultOnHold is true: task termination handlers (i.e. onFinish, onFail, ...) won't be called until an activity is
+     * bound to the task (whether it is the emitting activity or an activity bound later through rebind()).</li>
+     * </ul>
+     * 
+     * @param pTask Task the result of which need to be kept or not until an object is bound.
+     * @return True to save task result until an object is bound or false to execute termination handlers immediately.
+     */
+    boolean keepResultOnHold(Task<?> pTask);
+
+    /**
+     * Time given to an emitter to come back (i.e. an emitter with the same Id to be managed again) once it has been unmanaged or
+     * garbage collected. When it expires, any task using the emitter is cancelled if still running, or its result is dropped if
+     * it was kept on hold (see keepResultOnHold()). Typically useful to stop tasks emitted by an Activity that has been closed
+     * for good, while tasks emitted by an Activity being recreated (e.g. after a screen rotation) are kept.
+     * 
+     * @param pTask Task that uses an emitter which is not available anymore.
+     * @return Grace period in milliseconds or 0 to wait for the emitter forever.
+     */
+    long resolveGracePeriod(Task<?> pTask);
+
+    /**
+     * Configuration option to forbid use of unmanaged objects.
+     * 
+     * @return False if executing a task emitted by an unmanaged object should fail or true otherwise.
+     */
+    boolean allowUnmanagedEmitters();
+
+    /**
+     * Configuration option that allows task (not a task handler, i.e. TaskResult which can always be an inner class) declared as
+     * an inner class to be executed by the TaskManager. Using inner tasks is more risky if you are unexperienced since
+     * dereferencing is applied during processing (a NullPointerException is raised if you access the outer object members). This
+     * problem doesn't exist with tasks based on static or normal classes since no outer class reference is used.
+     * 
+     * @return True to allow inner task to be executed and false otherwise.
+     */
+    boolean allowInnerTasks();
+
+    /**
+     * Configuration option that makes termination handlers crash the application if an uncaught runtime exception occur. Useful
+     * for debugging purpose. Basically, a good strategy is to activate this option when debug mode is activated.
+     * 
+     * @return True to make application crash or false otherwise.
+     */
+    boolean crashOnHandlerFailure();
+}
\ No newline at end of file
@@ -2,9 +2,6 @@ package com.codexperiments.robolabor.task;
 
 import java.io.Serializable;
 
-import android.os.Parcel;
-import android.os.Parcelable;
-
 /**
  * TaskRef identifies uniquely one instance of a task. A task reference, as opposed to a task identity, is a bit equivalent to an
  * object reference in standard Java, as opposed to an Object identity (i.e. two tasks with the same Id can have different
@@ -15,7 +12,7 @@ import android.os.Parcelable;
  * 
  * @param <TResult> Type of the result returned by the corresponding task.
  */
-public class TaskRef<TResult> implements Parcelable, Serializable
+public class TaskRef<TResult> implements Serializable
 {
     private static final long serialVersionUID = 2997786361152719033L;
 
@@ -27,29 +24,31 @@ public class TaskRef<TResult> implements Parcelable, Serializable
         mId = pId;
     }
 
-    protected TaskRef(Parcel pParcel)
-    {
-        mId = pParcel.readInt();
-    }
-
-    @Override
-    public void writeToParcel(Parcel pParcel, int pFlags)
+    /**
+     * Create a reference to the same task as another reference.
+     */
+    protected TaskRef(TaskRef<TResult> pTaskRef)
     {
-        pParcel.writeInt(mId);
+        super();
+        mId = pTaskRef.mId;
     }
 
-    @Override
-    public int describeContents()
+    /**
+     * @return Value identifying the referenced task, for subclasses that need to write it elsewhere (e.g. in a Parcel).
+     */
+    protected int getId()
     {
-        return 0;
+        return mId;
     }
 
+    /**
+     * Subclasses (e.g. a platform-specific serializable form) reference the same task as a TaskRef with the same Id.
+     */
     @Override
     public boolean equals(Object pOther)
     {
         if (this == pOther) return true;
-        if (pOther == null) return false;
-        if (getClass() != pOther.getClass()) return false;
+        if (!(pOther instanceof TaskRef)) return false;
 
         TaskRef<?> lOther = (TaskRef<?>) pOther;
         return mId == lOther.mId;
@@ -60,16 +59,4 @@ public class TaskRef<TResult> implements Parcelable, Serializable
     {
         return mId;
     }
-
-    public static final Parcelable.Creator<TaskRef<?>> CREATOR = new Parcelable.Creator<TaskRef<?>>() {
-        public TaskRef<?> createFromParcel(Parcel pParcel)
-        {
-            return new TaskRef<Object>(pParcel);
-        }
-
-        public TaskRef<?>[] newArray(int pSize)
-        {
-            return new TaskRef[pSize];
-        }
-    };
-}
+}
\ No newline at end of file
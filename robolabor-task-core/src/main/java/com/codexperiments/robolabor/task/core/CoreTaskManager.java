@@ -0,0 +1,2096 @@
+package com.codexperiments.robolabor.task.core;
+
+import static com.codexperiments.robolabor.task.core.TaskManagerException.emitterIdCouldNotBeDetermined;
+import static com.codexperiments.robolabor.task.core.TaskManagerException.emitterNotManaged;
+import static com.codexperiments.robolabor.task.core.TaskManagerException.innerTasksNotAllowed;
+import static com.codexperiments.robolabor.task.core.TaskManagerException.internalError;
+import static com.codexperiments.robolabor.task.core.TaskManagerException.invalidBatchResults;
+import static com.codexperiments.robolabor.task.core.TaskManagerException.invalidEmitterId;
+import static com.codexperiments.robolabor.task.core.TaskManagerException.notCalledFromTask;
+import static com.codexperiments.robolabor.task.core.TaskManagerException.progressCalledAfterTaskFinished;
+import static com.codexperiments.robolabor.task.core.TaskManagerException.taskExecutedFromUnexecutedTask;
+import static com.codexperiments.robolabor.task.core.TaskManagerException.unmanagedEmittersNotAllowed;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.codexperiments.robolabor.task.TaskBinder;
+import com.codexperiments.robolabor.task.TaskExecutionMode;
+import com.codexperiments.robolabor.task.TaskExecutor;
+import com.codexperiments.robolabor.task.TaskManager;
+import com.codexperiments.robolabor.task.TaskManagerConfig;
+import com.codexperiments.robolabor.task.TaskRef;
+import com.codexperiments.robolabor.task.TaskScheduler;
+import com.codexperiments.robolabor.task.handler.Task;
+import com.codexperiments.robolabor.task.handler.TaskBatchable;
+import com.codexperiments.robolabor.task.handler.TaskComputation;
+import com.codexperiments.robolabor.task.handler.TaskFork;
+import com.codexperiments.robolabor.task.handler.TaskHandler;
+import com.codexperiments.robolabor.task.handler.TaskIdentifiable;
+import com.codexperiments.robolabor.task.handler.TaskNotifier;
+import com.codexperiments.robolabor.task.handler.TaskPriority;
+import com.codexperiments.robolabor.task.handler.TaskProgress;
+import com.codexperiments.robolabor.task.handler.TaskResult;
+import com.codexperiments.robolabor.task.handler.TaskStart;
+import com.codexperiments.robolabor.task.id.TaskId;
+import com.codexperiments.robolabor.task.util.TaskForkPool;
+import com.codexperiments.robolabor.task.util.TaskResultCache;
+import com.codexperiments.robolabor.task.util.TaskTimer;
+import com.codexperiments.robolabor.task.util.WeakIdentityMap;
+
+/**
+ * Platform-independent implementation of the TaskManager. Threading is delegated to a TaskScheduler, on which task handlers are
+ * called, and to a LockingStrategy, which defines from which threads the manager can be used. Platform-specific managers (e.g.
+ * AndroidTaskManager) only provide their own scheduler and strategy. On a plain JVM, an EventLoopTaskScheduler and its
+ * EventLoopLockingStrategy play the role of the Android UI-Thread.
+ * 
+ * TODO Remove TaskId but create a TaskEquality helper class.
+ * 
+ * TODO onBeforeProcess / onRestore / onCommit
+ * 
+ * TODO Save TaskRefs list.
+ * 
+ * TODO TaskRef add a Tag
+ * 
+ * TODO pending(TaskType)
+ */
+public class CoreTaskManager implements TaskManager {
+    private static final int DEFAULT_CAPACITY = 64;
+    // Reference counter value while task emitters are being restored or removed.
+    private static final int REFERENCE_TRANSITION = Integer.MIN_VALUE;
+    // To generate task references.
+    private static int TASK_REF_COUNTER;
+
+    private TaskScheduler mDefaultScheduler;
+    private LockingStrategy mLockingStrategy;
+    private TaskManagerConfig mConfig;
+    // All the current running tasks, indexed by their identity (i.e. their TaskId if any or else the task itself) so that an
+    // identical task is never executed twice concurrently and so that a task can be cancelled through its TaskId.
+    private ConcurrentMap<Object, TaskContainer<?>> mContainers;
+    // Identities of the tasks executed in THROTTLE mode during their throttle period. Each entry is removed by the task timer once
+    // its period expires, so that this map only holds recently executed tasks.
+    private ConcurrentMap<Object, Object> mThrottledKeys;
+    // Batches of batchable tasks being collected, indexed by batch key. A batch is removed when its window expires, right before
+    // being submitted to its executor. Guarded by the map itself.
+    private Map<Object, TaskBatch<?>> mBatches;
+    // Running tasks indexed by their reference so that they can be rebound without a lookup.
+    private Map<TaskRef<?>, TaskContainer<?>> mContainersByRef;
+    // Keep tracks of all emitters. Note that TaskEmitterRef uses a weak reference to avoid memory leaks. A reference is evicted
+    // as soon as its emitter is unmanaged or garbage collected and no running task uses it anymore, so that this Map only
+    // contains live emitters (emitter Ids can be numerous, e.g. one per item or per URL).
+    private ConcurrentMap<TaskEmitterId, TaskEmitterRef> mEmitters;
+    // Receives emitter weak references once their emitter is garbage collected. Polled when emitters are accessed.
+    private final ReferenceQueue<Object> mEmitterQueue;
+    // Allows getting back an existing descriptor through its handler when dealing with nested tasks. A weak map is necessary since
+    // there is no way to know when a handler are not necessary anymore. Handlers are compared by identity.
+    private Map<TaskHandler, TaskDescriptor<?>> mDescriptors;
+
+    static {
+        TASK_REF_COUNTER = Integer.MIN_VALUE;
+    }
+
+    /**
+     * @param pConfig Configuration of the manager.
+     * @param pDefaultScheduler Scheduler on which task handlers are called (i.e. onStart(), onProgress(), onFinish()...).
+     * @param pLockingStrategy Defines from which threads the manager can be called. Must be consistent with the scheduler.
+     */
+    public CoreTaskManager(TaskManagerConfig pConfig, TaskScheduler pDefaultScheduler, LockingStrategy pLockingStrategy) {
+        super();
+
+        mDefaultScheduler = pDefaultScheduler;
+        mConfig = pConfig;
+        mLockingStrategy = pLockingStrategy;
+        mContainers = new ConcurrentHashMap<Object, TaskContainer<?>>(DEFAULT_CAPACITY);
+        mContainersByRef = new ConcurrentHashMap<TaskRef<?>, TaskContainer<?>>(DEFAULT_CAPACITY);
+        mThrottledKeys = new ConcurrentHashMap<Object, Object>(DEFAULT_CAPACITY);
+        mBatches = new HashMap<Object, TaskBatch<?>>();
+        mEmitters = new ConcurrentHashMap<TaskEmitterId, TaskEmitterRef>(DEFAULT_CAPACITY);
+        mEmitterQueue = new ReferenceQueue<Object>();
+        mDescriptors = new WeakIdentityMap<TaskHandler, TaskDescriptor<?>>(DEFAULT_CAPACITY);
+    }
+
+    @Override
+    public void manage(Object pEmitter) {
+        if (pEmitter == null) throw new NullPointerException("Emitter is null");
+        mLockingStrategy.checkCallIsAllowed();
+
+        // Save the new emitter in the reference list. Replace the existing one, if any, according to its id (the old one is
+        // considered obsolete). Emitter Id is computed by the configuration and can be null if emitter is not managed.
+        Object lEmitterIdValue = mConfig.resolveEmitterId(pEmitter);
+        // Emitter id must not be the emitter itself or we have a leak. Warn user about this (tempting) configuration misuse.
+        if ((lEmitterIdValue == null) || (lEmitterIdValue == pEmitter)) throw invalidEmitterId(lEmitterIdValue, pEmitter);
+
+        // Save the reference of the emitter. Initialize it lazily if it doesn't exist. A new reference can't be used by any task
+        // yet since tasks can only be executed from managed emitters.
+        expungeEmitters();
+        TaskEmitterId lEmitterId = new TaskEmitterId(pEmitter.getClass(), lEmitterIdValue);
+        TaskEmitterRef lEmitterRef = mEmitters.get(lEmitterId);
+        if (lEmitterRef == null) {
+            mEmitters.put(lEmitterId, new TaskEmitterRef(lEmitterId, pEmitter, mEmitterQueue));
+        } else {
+            lEmitterRef.set(pEmitter);
+
+            // Try to terminate any task we can, which is possible if the newly managed emitter is one of their emitter. Only the
+            // tasks indexed on the emitter are considered and they are all restored at once with a single post on the scheduler.
+            TaskRestoreBatch lRestoreBatch = new TaskRestoreBatch();
+            for (TaskContainer<?> lContainer : lEmitterRef.getContainers()) {
+                lContainer.manage(lRestoreBatch);
+            }
+            lRestoreBatch.schedule(mDefaultScheduler);
+        }
+    }
+
+    @Override
+    public void unmanage(Object pEmitter) {
+        if (pEmitter == null) throw new NullPointerException("Emitter is null");
+        mLockingStrategy.checkCallIsAllowed();
+
+        // Remove an existing task emitter. If the emitter reference (in Java terms) is different from the object to remove, then
+        // don't do anything. This could occur if a new object is managed before an older one with the same Id is unmanaged.
+        // Typically, this could occur for example if an Activity X starts and then navigates to an Activity B which is,
+        // according to Android lifecycle, started before A is stopped (the two activities are alive at the same time during a
+        // short period of time).
+        // TODO (lEmitterRef.get() == pEmitter) is not a proper way to handle unmanage() when dealing with activities since this
+        // can lead to concurrency defects. It would be better to force call to unmanage().
+        Object lEmitterIdValue = mConfig.resolveEmitterId(pEmitter);
+        if (lEmitterIdValue != null) {
+            TaskEmitterId lEmitterId = new TaskEmitterId(pEmitter.getClass(), lEmitterIdValue);
+            TaskEmitterRef lEmitterRef = mEmitters.get(lEmitterId);
+            if ((lEmitterRef != null) && (lEmitterRef.get() == pEmitter)) {
+                lEmitterRef.clear();
+                startGracePeriods(lEmitterRef);
+                evictEmitter(lEmitterRef);
+            }
+        }
+        expungeEmitters();
+    }
+
+    @Override
+    public <TResult> TaskRef<TResult> execute(Task<TResult> pTask) {
+        return execute(pTask, pTask);
+    }
+
+    @Override
+    public <TResult> TaskRef<TResult> execute(Task<TResult> pTask, TaskResult<TResult> pTaskResult) {
+        if (pTask == null) throw new NullPointerException("Task is null");
+        if (pTaskResult == null) throw new NullPointerException("TaskResult is null");
+        mLockingStrategy.checkCallIsAllowed();
+
+        // Create a container to run the task.
+        TaskContainer<TResult> lContainer = new TaskContainer<TResult>(pTask, mDefaultScheduler);
+        TaskExecutionMode lExecutionMode = mConfig.resolveExecutionMode(pTask);
+        if ((lExecutionMode == TaskExecutionMode.THROTTLE) && !throttle(lContainer.getKey(), pTask)) return null;
+
+        // Save the task before running it.
+        // Note that it is safe to add the task to the container since it is an empty stub that shouldn't create any side-effect.
+        TaskContainer<?> lRunningContainer;
+        while (((lRunningContainer = mContainers.putIfAbsent(lContainer.getKey(), lContainer)) != null)
+                        && (lExecutionMode == TaskExecutionMode.LATEST_WINS)) {
+            // Superseded task may be over or cancelled concurrently, in which case it is removed anyway.
+            cancelContainer(lRunningContainer, true);
+            mContainers.remove(lRunningContainer.getKey(), lRunningContainer);
+        }
+        if (lRunningContainer == null) {
+            // Prepare the task (i.e. initialize and cache needed values) after adding it because prepareToRun() is a bit
+            // expensive and should be performed only if necessary.
+            try {
+                TaskRef<TResult> lTaskRef = lContainer.prepareToRun(pTaskResult);
+                mContainersByRef.put(lTaskRef, lContainer);
+                // A cached result is delivered without executing the task.
+                if (!lContainer.finishFromCache()) {
+                    submitContainer(lContainer, pTask);
+                }
+                return lTaskRef;
+            }
+            // If preparation operation fails, try to leave the manager in a consistent state without memory leaks.
+            catch (RuntimeException eRuntimeException) {
+                lContainer.unindex();
+                mContainersByRef.remove(lContainer.mTaskRef);
+                mContainers.remove(lContainer.getKey(), lContainer);
+                throw eRuntimeException;
+            }
+        }
+        // If an identical task is already executing, attach the new handler to it if allowed or else do nothing.
+        else if (lExecutionMode == TaskExecutionMode.SINGLE_FLIGHT) {
+            return subscribeContainer(lRunningContainer, pTaskResult);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Submit a container to its executor, either directly or in a batch if the task is batchable (see TaskBatchable).
+     * 
+     * @param pContainer Container of the task, prepared to run.
+     * @param pTask Task to execute.
+     */
+    @SuppressWarnings("unchecked")
+    private <TResult> void submitContainer(TaskContainer<TResult> pContainer, Task<TResult> pTask) {
+        Executor lExecutor = mConfig.resolveExecutor(pTask);
+        long lBatchWindow = (pTask instanceof TaskBatchable) ? mConfig.resolveBatchWindow(pTask) : 0;
+        if (lBatchWindow <= 0) {
+            pContainer.submit(lExecutor);
+            return;
+        }
+
+        pContainer.prepareToSubmit(lExecutor);
+        Object lBatchKey = ((TaskBatchable<TResult>) pTask).getBatchKey();
+        final TaskBatch<?> lNewBatch;
+        synchronized (mBatches) {
+            // Cast safety is left to the user: tasks with the same batch key are expected to return results of the same type.
+            TaskBatch<TResult> lBatch = (TaskBatch<TResult>) mBatches.get(lBatchKey);
+            if (lBatch == null) {
+                lBatch = new TaskBatch<TResult>(lBatchKey, lExecutor);
+                mBatches.put(lBatchKey, lBatch);
+                lNewBatch = lBatch;
+            } else {
+                lNewBatch = null;
+            }
+            lBatch.add(pContainer);
+        }
+        // The first task of a batch starts its window.
+        if (lNewBatch != null) {
+            TaskTimer.getInstance().schedule(new Runnable() {
+                public void run() {
+                    lNewBatch.submit();
+                }
+            }, lBatchWindow);
+        }
+    }
+
+    /**
+     * Start the throttle period of a task if it is not throttled already.
+     * 
+     * @param pKey Identity of the task (see TaskContainer.getKey()).
+     * @param pTask Task in THROTTLE execution mode.
+     * @return True if the task can be executed or false if it must be dropped.
+     */
+    private boolean throttle(final Object pKey, Task<?> pTask) {
+        long lThrottlePeriod = mConfig.resolveThrottlePeriod(pTask);
+        if (lThrottlePeriod <= 0) return true;
+
+        // A token rather than a timestamp, so that an expired period cannot remove the entry of the next one.
+        final Object lToken = new Object();
+        if (mThrottledKeys.putIfAbsent(pKey, lToken) != null) return false;
+        TaskTimer.getInstance().schedule(new Runnable() {
+            public void run() {
+                mThrottledKeys.remove(pKey, lToken);
+            }
+        }, lThrottlePeriod);
+        return true;
+    }
+
+    /**
+     * Attach a new handler to a running task, which is then shared by all its handlers.
+     * 
+     * @param pContainer Container of the running task.
+     * @param pTaskResult Handler of the duplicate task.
+     * @return Reference of the running task or null if it is over (or cancelled) meanwhile.
+     */
+    @SuppressWarnings("unchecked")
+    private <TResult> TaskRef<TResult> subscribeContainer(TaskContainer<?> pContainer, TaskResult<TResult> pTaskResult) {
+        // Cast safety is left to the user: identical tasks are expected to return results of the same type.
+        return ((TaskContainer<TResult>) pContainer).subscribe(pTaskResult);
+    }
+
+    @Override
+    public <TResult> boolean rebind(TaskRef<TResult> pTaskRef, TaskResult<TResult> pTaskResult) {
+        if (pTaskRef == null) throw new NullPointerException("Task is null");
+        if (pTaskResult == null) throw new NullPointerException("TaskResult is null");
+        mLockingStrategy.checkCallIsAllowed();
+
+        return rebindContainer(pTaskRef, pTaskResult);
+    }
+
+    @Override
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public int rebind(Map<? extends TaskRef<?>, ? extends TaskResult<?>> pTaskResults) {
+        if (pTaskResults == null) throw new NullPointerException("TaskResults are null");
+        mLockingStrategy.checkCallIsAllowed();
+
+        int lReboundCount = 0;
+        for (Map.Entry<? extends TaskRef<?>, ? extends TaskResult<?>> lTaskResult : pTaskResults.entrySet()) {
+            if (lTaskResult.getKey() == null) throw new NullPointerException("Task is null");
+            if (lTaskResult.getValue() == null) throw new NullPointerException("TaskResult is null");
+            // Raw types are necessary here since nothing links key and value types in a Map. Type safety is left to the caller.
+            if (rebindContainer((TaskRef) lTaskResult.getKey(), (TaskResult) lTaskResult.getValue())) {
+                ++lReboundCount;
+            }
+        }
+        return lReboundCount;
+    }
+
+    /**
+     * Find the running task with the specified reference and replace its handler.
+     * 
+     * @param pTaskRef Reference of the task to rebind to.
+     * @param pTaskResult Task handler that must replace the previous one.
+     * @return True if the task is still running and could be rebound, false otherwise.
+     */
+    @SuppressWarnings("unchecked")
+    private <TResult> boolean rebindContainer(TaskRef<TResult> pTaskRef, TaskResult<TResult> pTaskResult) {
+        // Cast safety is guaranteed by the execute() method that returns a properly typed TaskRef for a new container.
+        TaskContainer<TResult> lContainer = (TaskContainer<TResult>) mContainersByRef.get(pTaskRef);
+        if (lContainer == null) return false;
+
+        lContainer.rebind(pTaskResult);
+        return true;
+    }
+
+    @Override
+    public boolean cancel(TaskRef<?> pTaskRef, boolean pMayInterruptIfRunning) {
+        if (pTaskRef == null) throw new NullPointerException("Task is null");
+        mLockingStrategy.checkCallIsAllowed();
+
+        return cancelContainer(mContainersByRef.get(pTaskRef), pMayInterruptIfRunning);
+    }
+
+    @Override
+    public boolean cancel(TaskId pTaskId, boolean pMayInterruptIfRunning) {
+        if (pTaskId == null) throw new NullPointerException("TaskId is null");
+        mLockingStrategy.checkCallIsAllowed();
+
+        return cancelContainer(mContainers.get(pTaskId), pMayInterruptIfRunning);
+    }
+
+    /**
+     * Cancel a task and clean its references right away.
+     * 
+     * @param pContainer Container of the task to cancel. May be null.
+     * @param pMayInterruptIfRunning True to interrupt the thread processing the task.
+     * @return True if the task was cancelled or false if no such task is running.
+     */
+    private boolean cancelContainer(TaskContainer<?> pContainer, boolean pMayInterruptIfRunning) {
+        if ((pContainer == null) || !pContainer.cancel(pMayInterruptIfRunning)) return false;
+
+        notifyFinished(pContainer);
+        pContainer.releaseDescriptor();
+        return true;
+    }
+
+    @Override
+    public void notifyProgress() {
+        throw notCalledFromTask();
+    }
+
+    /**
+     * Translate an error raised outside of the TaskManager public methods (e.g. by a TaskNotifier on a background Thread or handed
+     * to onFail()), where platforms can't catch it to raise their own exception type.
+     * 
+     * @param pException Engine error.
+     * @return Exception to raise instead. The engine error itself by default.
+     */
+    protected TaskManagerException translateException(TaskManagerException pException) {
+        return pException;
+    }
+
+    /**
+     * Create the reference returned to the user for a new task. Platforms can return a subclass (e.g. one that can be written in a
+     * Parcel on Android).
+     * 
+     * @param pId Unique Id of the reference.
+     * @return Task reference.
+     */
+    protected <TResult> TaskRef<TResult> createTaskRef(int pId) {
+        return new TaskRef<TResult>(pId);
+    }
+
+    /**
+     * Called internally when initializing a TaskDescriptor to a reference to an emitter, either managed or not. If the emitter is
+     * not managed, then return an unmanaged reference (i.e. that is not stored in mEmitters).
+     * 
+     * @param pEmitter Emitter to find the reference of.
+     * @return Emitter reference. No null is returned.
+     */
+    protected TaskEmitterRef resolveRef(Object pEmitter) {
+        // Save the new emitter in the reference list. Replace the existing one, if any, according to its id (the old one is
+        // considered obsolete). Emitter Id is computed by the configuration strategy. Note that an emitter Id can be null if no
+        // dereferencing should be performed.
+        Object lEmitterIdValue = mConfig.resolveEmitterId(pEmitter);
+        // Emitter id must not be the emitter itself or we have a leak. Warn user about this (tempting) configuration misuse.
+        // Note that when we arrive here, pEmitter can't be null.
+        if (lEmitterIdValue == pEmitter) throw invalidEmitterId(lEmitterIdValue, pEmitter);
+
+        TaskEmitterRef lEmitterRef;
+        // Managed emitter case.
+        if (lEmitterIdValue != null) {
+            expungeEmitters();
+            TaskEmitterId lEmitterId = new TaskEmitterId(pEmitter.getClass(), lEmitterIdValue);
+            lEmitterRef = mEmitters.get(lEmitterId);
+            // If emitter is managed by the user explicitly and is properly registered in the emitter list, do nothing. User can
+            // update reference himself through manage(Object) later. But if emitter is managed (i.e. emitter Id returned by
+            // configuration is not null) but is not in the emitter list, then a call to manage() is missing. Warn the user.
+            if (lEmitterRef == null) throw emitterNotManaged(lEmitterIdValue, pEmitter);
+        }
+        // Unmanaged emitter case.
+        else {
+            if (!mConfig.allowUnmanagedEmitters()) throw unmanagedEmittersNotAllowed(pEmitter);
+            // TODO This is wrong! There should be only one TaskEmitterRef per emitter or concurrency problems may occur.
+            lEmitterRef = new TaskEmitterRef(pEmitter);
+        }
+        return lEmitterRef;
+    }
+
+    /**
+     * Remove an emitter reference from the emitter list if it is not useful anymore, i.e. if its emitter has been unmanaged or
+     * garbage collected and no running task uses it.
+     * 
+     * @param pEmitterRef Emitter reference to evict.
+     */
+    protected void evictEmitter(TaskEmitterRef pEmitterRef) {
+        if (pEmitterRef.isEvictable() && mEmitters.remove(pEmitterRef.getId(), pEmitterRef)) {
+            // The emitter may have been managed again or a task may have been started with it concurrently. In that case, put
+            // the reference back (unless a new one has been created meanwhile, which is then the right one).
+            if (!pEmitterRef.isEvictable()) {
+                mEmitters.putIfAbsent(pEmitterRef.getId(), pEmitterRef);
+            }
+        }
+    }
+
+    /**
+     * Evict emitter references whose emitter has been garbage collected without being unmanaged. Never blocks.
+     */
+    protected void expungeEmitters() {
+        Reference<? extends Object> lEmitterWeakRef;
+        while ((lEmitterWeakRef = mEmitterQueue.poll()) != null) {
+            TaskEmitterRef lEmitterRef = ((TaskEmitterWeakRef) lEmitterWeakRef).getEmitterRef();
+            // The emitter may have been replaced by a new one in-between.
+            if (lEmitterRef.get() == null) {
+                startGracePeriods(lEmitterRef);
+                evictEmitter(lEmitterRef);
+            }
+        }
+    }
+
+    /**
+     * Give some time to an emitter that is not available anymore to come back before cancelling the tasks that use it. See
+     * TaskManagerConfig.resolveGracePeriod().
+     * 
+     * @param pEmitterRef Emitter reference whose emitter has been unmanaged or garbage collected.
+     */
+    protected void startGracePeriods(TaskEmitterRef pEmitterRef) {
+        for (TaskContainer<?> lContainer : pEmitterRef.getContainers()) {
+            lContainer.startGracePeriod(pEmitterRef);
+        }
+    }
+
+    /**
+     * Called when task is processed and finished to clean remaining references.
+     * 
+     * @param pContainer Finished task container.
+     */
+    protected void notifyFinished(final TaskContainer<?> pContainer) {
+        // Remove the container from the emitter index first so that, once removed from the container list, an equal container
+        // started later can be indexed safely.
+        pContainer.stopGracePeriod();
+        pContainer.stopDeadline();
+        pContainer.unindex();
+        pContainer.evictEmitters();
+        mContainersByRef.remove(pContainer.mTaskRef);
+        mContainers.remove(pContainer.getKey(), pContainer);
+    }
+
+    /**
+     * Wrapper class that contains all the information about the task to execute.
+     */
+    private class TaskContainer<TResult> implements Runnable, TaskNotifier, TaskPriority {
+        // Handlers
+        private Task<TResult> mTask;
+
+        // Container info.
+        private volatile TaskDescriptor<TResult> mDescriptor;
+        // Additional handlers attached by single-flight executions. Removed one by one as they get finished.
+        private final List<TaskDescriptor<TResult>> mSubscribers;
+        private final TaskRef<TResult> mTaskRef;
+        private final TaskId mTaskId;
+        private final int mPriority;
+        private final long mGracePeriod;
+        private final long mTimeout;
+        private final long mProgressInterval;
+        private final TaskResultCache mResultCache;
+        private final TaskScheduler mScheduler;
+        private Executor mExecutor;
+
+        // Task result and state.
+        private TResult mResult;
+        private Throwable mThrowable;
+        private boolean mRunning;
+        private boolean mFinished;
+        private boolean mDescriptorFinished; // True once the main handler (i.e. not subscribers) is finished.
+        // Cancellation state. Once cancelled, a task doesn't start if still queued and none of its handlers gets executed.
+        private volatile boolean mCancelled;
+        // Thread currently processing the task, if any, so that it can be interrupted on cancellation. Guarded by the container.
+        private Thread mProcessingThread;
+        // Pending grace period started when one of the task emitters became unavailable. The generation is incremented each time
+        // the grace period is stopped so that a stale expiration is ignored. Guarded by the container.
+        private TaskTimer.Timeout mGraceTimeout;
+        private int mGraceGeneration;
+        // Timeout state. Once timed out, a task doesn't start if still queued and its result is ignored. Processed becomes true
+        // when the task has returned in time. Guarded by the container.
+        private TaskTimer.Timeout mDeadlineTimeout;
+        private boolean mTimedOut;
+        private boolean mProcessed;
+        // Progress state. At most one progress dispatch is pending at a time: notifications sent meanwhile are collapsed into
+        // it. Last progress time (in nanoseconds) is written on the scheduler thread when progress is dispatched. Progress timeout
+        // is the delayed dispatch, if any, cancelled when the pending progress is flushed. Guarded by the container.
+        private final AtomicBoolean mProgressPending;
+        private volatile long mLastProgressTime;
+        private TaskTimer.Timeout mProgressTimeout;
+
+        // Cached values.
+        private Runnable mProgressRunnable;
+        private Runnable mDelayedProgressRunnable;
+        private Runnable mFinishRunnable;
+
+        public TaskContainer(Task<TResult> pTask, TaskScheduler pScheduler) {
+            super();
+            mTask = pTask;
+
+            mDescriptor = null;
+            mSubscribers = new CopyOnWriteArrayList<TaskDescriptor<TResult>>();
+            mTaskRef = createTaskRef(TASK_REF_COUNTER++);
+            mTaskId = (pTask instanceof TaskIdentifiable) ? ((TaskIdentifiable) pTask).getId() : null;
+            mPriority = mConfig.resolvePriority(pTask);
+            mGracePeriod = mConfig.resolveGracePeriod(pTask);
+            mTimeout = mConfig.resolveTimeout(pTask);
+            mProgressInterval = mConfig.resolveProgressInterval(pTask);
+            mResultCache = (mTaskId != null) ? mConfig.resolveResultCache(pTask) : null;
+            mExecutor = null;
+            mScheduler = pScheduler;
+
+            mResult = null;
+            mThrowable = null;
+            mRunning = true;
+            mFinished = false;
+            mDescriptorFinished = false;
+            mCancelled = false;
+            mProcessingThread = null;
+            mGraceTimeout = null;
+            mGraceGeneration = 0;
+            mDeadlineTimeout = null;
+            mTimedOut = false;
+            mProcessed = false;
+            mProgressPending = new AtomicBoolean(false);
+            // So that the first progress is dispatched right away.
+            mLastProgressTime = System.nanoTime() - (mProgressInterval * 1000000L);
+            mProgressTimeout = null;
+
+            mProgressRunnable = new Runnable() {
+                public void run() {
+                    // Reset the flag before handlers read the task state, so that a later notification is never lost. If it is
+                    // already reset, pending progress has been flushed before the task finished.
+                    if (!mProgressPending.getAndSet(false)) return;
+                    mLastProgressTime = System.nanoTime();
+                    // A delayed progress may come after the task has finished, in which case it is outdated.
+                    if (!mCancelled && mRunning) {
+                        mDescriptor.onProgress();
+                        for (TaskDescriptor<TResult> lSubscriber : mSubscribers) {
+                            lSubscriber.onProgress();
+                        }
+                    }
+                }
+            };
+            mDelayedProgressRunnable = new Runnable() {
+                public void run() {
+                    mScheduler.schedule(mProgressRunnable);
+                }
+            };
+            mFinishRunnable = new Runnable() {
+                public void run() {
+                    finishProcessed();
+                }
+            };
+        }
+
+        /**
+         * @return Identity of the container, used to detect duplicated tasks: the TaskId if any or else the task itself.
+         */
+        public Object getKey() {
+            return (mTaskId != null) ? mTaskId : mTask;
+        }
+
+        /**
+         * Initialize the container before running it.
+         */
+        protected TaskRef<TResult> prepareToRun(TaskResult<TResult> pTaskResult) {
+            // Initialize the descriptor safely in its corner and dereference required values.
+            final TaskDescriptor<TResult> lDescriptor = new TaskDescriptor<TResult>(pTaskResult);
+            if (!lDescriptor.needDereferencing(mTask)) {
+                prepareTask();
+            }
+            // Make the descriptor visible once fully initialized and index it so that manage() can find the task.
+            mDescriptor = lDescriptor;
+            lDescriptor.index(this);
+            // Execute onStart() handler.
+            mScheduler.scheduleIfNecessary(new Runnable() {
+                public void run() {
+                    lDescriptor.onStart(true);
+                }
+            });
+
+            // Save the descriptor so that any child task can use current descriptor as a parent.
+            mDescriptors.put(pTaskResult, lDescriptor); // TODO Global lock that could lead to contention. Check for optim.
+            return mTaskRef;
+        }
+
+        /**
+         * Dereference the task itself if it is disjoint from its handlers. This is definitive. No code inside the task is allowed
+         * to access this$x references.
+         */
+        private void prepareTask() {
+            TaskEmitterPlan lPlan = TaskEmitterPlan.of(mTask.getClass());
+            if (lPlan.isInner()) {
+                if (!mConfig.allowInnerTasks()) throw innerTasksNotAllowed(mTask);
+
+                // Remove any references to the outer class.
+                for (TaskEmitterAccessor lAccessor : lPlan.getEmitterAccessors()) {
+                    lAccessor.set(mTask, null);
+                }
+            }
+        }
+
+        /**
+         * Run background task on Executor-thread
+         */
+        public void run() {
+            // A task cancelled or timed out while waiting in the executor queue is not processed at all.
+            if (!startProcessing(Thread.currentThread())) return;
+
+            TResult lResult = null;
+            Throwable lThrowable = null;
+            try {
+                lResult = mTask.onProcess(this);
+            } catch (final Exception eException) {
+                lThrowable = eException;
+            } finally {
+                if (endProcessing(lResult, lThrowable)) {
+                    mScheduler.schedule(mFinishRunnable);
+                }
+            }
+        }
+
+        /**
+         * Flag the task as being processed, unless it has been cancelled or has timed out meanwhile.
+         * 
+         * @param pProcessingThread Thread to interrupt on cancellation or timeout. Null if the thread is shared with other tasks
+         *            and must not be interrupted (e.g. when processed in a batch).
+         * @return True if the task can be processed, false if it must be skipped.
+         */
+        public boolean startProcessing(Thread pProcessingThread) {
+            synchronized (this) {
+                if (mCancelled || mTimedOut) return false;
+                mProcessingThread = pProcessingThread;
+                return true;
+            }
+        }
+
+        /**
+         * Save the outcome of task processing, unless it must be ignored because the task has been cancelled or has timed out
+         * meanwhile. Must be called on the processing thread.
+         * 
+         * @return True if the outcome has been saved and the task must be finished on the scheduler thread.
+         */
+        public boolean endProcessing(TResult pResult, Throwable pThrowable) {
+            boolean lIgnored;
+            synchronized (this) {
+                mProcessingThread = null;
+                lIgnored = mCancelled || mTimedOut;
+                // An interruption sent by cancel() or a timeout must not leak into the next task executed by the thread.
+                if (lIgnored) Thread.interrupted();
+                else mProcessed = true;
+            }
+            if (lIgnored) return false;
+
+            stopDeadline();
+            if ((mResultCache != null) && (pThrowable == null)) {
+                mResultCache.put(mTaskId, pResult);
+            }
+            mResult = pResult;
+            mThrowable = pThrowable;
+            return true;
+        }
+
+        /**
+         * Finish the task once processed. Must be called on the scheduler thread.
+         */
+        public void finishProcessed() {
+            // Last progress notified by the task (e.g. a final 100%) may still be delayed by the progress interval. It is
+            // delivered before the task finishes instead of being dropped.
+            if (mProgressPending.get()) {
+                synchronized (this) {
+                    if (mProgressTimeout != null) {
+                        mProgressTimeout.cancel();
+                        mProgressTimeout = null;
+                    }
+                }
+                mProgressRunnable.run();
+            }
+            mRunning = false;
+            finish();
+        }
+
+        /**
+         * Look for a fresh result of the task in the result cache, if any. If one is found, the task is finished with it on the
+         * scheduler thread, as if it had been processed.
+         * 
+         * @return True if a cached result is used, in which case the task must not be submitted, or false otherwise.
+         */
+        @SuppressWarnings("unchecked")
+        public boolean finishFromCache() {
+            if (mResultCache == null) return false;
+            TaskResultCache.Entry lEntry = mResultCache.get(mTaskId);
+            if (lEntry == null) return false;
+
+            // Cast safety is left to the configuration: tasks with the same Id must return results of the same type.
+            mResult = (TResult) lEntry.getResult();
+            mScheduler.schedule(mFinishRunnable);
+            return true;
+        }
+
+        /**
+         * Start the task deadline, if any, and submit the container to its executor.
+         * 
+         * @param pExecutor Executor to run the task on.
+         */
+        public void submit(Executor pExecutor) {
+            prepareToSubmit(pExecutor);
+            pExecutor.execute(this);
+        }
+
+        /**
+         * Start the task deadline, if any, before the task is submitted to its executor, either directly or in a batch.
+         * 
+         * @param pExecutor Executor the task is run on.
+         */
+        public void prepareToSubmit(Executor pExecutor) {
+            mExecutor = pExecutor;
+            if (mTimeout > 0) {
+                synchronized (this) {
+                    mDeadlineTimeout = TaskTimer.getInstance().schedule(new Runnable() {
+                        public void run() {
+                            onDeadlineExpired();
+                        }
+                    }, mTimeout);
+                }
+            }
+        }
+
+        /**
+         * Stop the task deadline because the task is over or cancelled.
+         */
+        public synchronized void stopDeadline() {
+            if (mDeadlineTimeout != null) {
+                mDeadlineTimeout.cancel();
+                mDeadlineTimeout = null;
+            }
+        }
+
+        /**
+         * Called on the timer thread when the task deadline is exceeded. The task thread, if any, is interrupted and released
+         * by its executor if it is a TaskExecutor. Task failure is then reported on the scheduler thread.
+         */
+        private void onDeadlineExpired() {
+            synchronized (this) {
+                mDeadlineTimeout = null;
+                if (mCancelled || mProcessed || mTimedOut) return;
+                mTimedOut = true;
+
+                // Interrupt and release under the lock, like cancel(): processing thread can't end processing meanwhile and
+                // pick an unrelated task that would get interrupted or lose its worker instead. Executor never calls the
+                // container while holding its own lock.
+                if (mProcessingThread != null) {
+                    mProcessingThread.interrupt();
+                    // The thread may not respond to interruption (e.g. a stuck network call). Don't let it block other tasks.
+                    if (mExecutor instanceof TaskExecutor) {
+                        ((TaskExecutor) mExecutor).release(this, mProcessingThread);
+                    }
+                }
+            }
+            mScheduler.schedule(new Runnable() {
+                public void run() {
+                    mResult = null;
+                    mThrowable = new TimeoutException("Task " + mTask + " exceeded its deadline of " + mTimeout + "ms");
+                    mRunning = false;
+                    finish();
+                }
+            });
+        }
+
+        /**
+         * Flag the task as cancelled and interrupt it if it is being processed and if requested. Nothing is done if the task has
+         * already been cancelled or finished.
+         * 
+         * @param pMayInterruptIfRunning True to interrupt the thread processing the task.
+         * @return True if task has been cancelled, false if it was already cancelled or finished.
+         */
+        public boolean cancel(boolean pMayInterruptIfRunning) {
+            synchronized (this) {
+                if (mCancelled || mFinished) return false;
+                mCancelled = true;
+
+                if (pMayInterruptIfRunning && (mProcessingThread != null)) {
+                    mProcessingThread.interrupt();
+                }
+            }
+            // Don't let cancelled tasks pile up in the executor queue (e.g. when a task keeps being superseded).
+            if (mExecutor instanceof TaskExecutor) {
+                ((TaskExecutor) mExecutor).remove(this);
+            }
+            return true;
+        }
+
+        /**
+         * Start the grace period given to an emitter to come back, if the configuration defines one and if it is not started yet.
+         * When it expires, the task is cancelled on its scheduler thread if the emitter is still unavailable.
+         * 
+         * @param pEmitterRef Emitter reference whose emitter has become unavailable.
+         */
+        public synchronized void startGracePeriod(final TaskEmitterRef pEmitterRef) {
+            if ((mGracePeriod <= 0) || (mGraceTimeout != null) || mCancelled) return;
+
+            final int lGraceGeneration = mGraceGeneration;
+            mGraceTimeout = TaskTimer.getInstance().schedule(new Runnable() {
+                public void run() {
+                    mScheduler.schedule(new Runnable() {
+                        public void run() {
+                            onGracePeriodExpired(pEmitterRef, lGraceGeneration);
+                        }
+                    });
+                }
+            }, mGracePeriod);
+        }
+
+        /**
+         * Stop the pending grace period, if any, because the emitter is available again or because the task is over.
+         */
+        public synchronized void stopGracePeriod() {
+            if (mGraceTimeout != null) {
+                mGraceTimeout.cancel();
+                mGraceTimeout = null;
+                ++mGraceGeneration;
+            }
+        }
+
+        private void onGracePeriodExpired(TaskEmitterRef pEmitterRef, int pGraceGeneration) {
+            synchronized (this) {
+                // Grace period has been stopped (and maybe restarted) after expiration.
+                if (pGraceGeneration != mGraceGeneration) return;
+                mGraceTimeout = null;
+                ++mGraceGeneration;
+            }
+            // Emitter may have come back between timer expiration and now.
+            if (pEmitterRef.get() == null) {
+                cancelContainer(this, true);
+            }
+        }
+
+        /**
+         * Forget the descriptor of a cancelled task so that it cannot be used as a parent of a new task.
+         */
+        public void releaseDescriptor() {
+            TaskDescriptor<TResult> lDescriptor = mDescriptor;
+            if (lDescriptor != null) {
+                lDescriptor.release();
+            }
+            for (TaskDescriptor<TResult> lSubscriber : mSubscribers) {
+                lSubscriber.release();
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        @Override
+        public <TComputationResult> TaskFork<TComputationResult> fork(TaskComputation<TComputationResult> pComputation) {
+            return TaskForkPool.getInstance().fork(pComputation, this);
+        }
+
+        /**
+         * Remove the container from the index of the emitters its current descriptor and its subscribers use. Nothing is done
+         * for the main descriptor if the container hasn't been prepared yet.
+         */
+        public void unindex() {
+            TaskDescriptor<TResult> lDescriptor = mDescriptor;
+            if (lDescriptor != null) {
+                lDescriptor.unindex(this);
+            }
+            for (TaskDescriptor<TResult> lSubscriber : mSubscribers) {
+                lSubscriber.unindex(this);
+            }
+        }
+
+        /**
+         * Evict the emitters used by the current descriptor if they are not useful anymore. Must be called once the container has
+         * been unindexed.
+         */
+        public void evictEmitters() {
+            TaskDescriptor<TResult> lDescriptor = mDescriptor;
+            if (lDescriptor != null) {
+                lDescriptor.evictEmitters();
+            }
+            for (TaskDescriptor<TResult> lSubscriber : mSubscribers) {
+                lSubscriber.evictEmitters();
+            }
+        }
+
+        /**
+         * Called when a newly managed emitter is used by the present container, in order to call onStart() handler. Note this
+         * code allows onStart() to be called even if task is rebound in-between. Thus, if a manager is restored with an emitter A
+         * and then task is rebound with a new emitter B from another thread, it is possible to have onStart() called on both A
+         * and B in any order. This might not be what you expect but honestly mixing rebind() and manage() in different threads is
+         * not a very good practice anyway... The only real guarantee given is that onStart() will never be called after
+         * onFinish().
+         * 
+         * @param pRestoreBatch Batch to add the restoration to if the container uses the default scheduler.
+         */
+        public void manage(TaskRestoreBatch pRestoreBatch) {
+            stopGracePeriod();
+            final TaskDescriptor<TResult> lDescriptor = mDescriptor;
+            // Note that descriptor can be null if container has been indexed but rebound concurrently.
+            if (lDescriptor != null) {
+                manage(pRestoreBatch, lDescriptor);
+            }
+            for (TaskDescriptor<TResult> lSubscriber : mSubscribers) {
+                manage(pRestoreBatch, lSubscriber);
+            }
+        }
+
+        private void manage(TaskRestoreBatch pRestoreBatch, TaskDescriptor<TResult> pDescriptor) {
+            if (mScheduler == mDefaultScheduler) {
+                pRestoreBatch.add(this, pDescriptor);
+            } else {
+                restore(pDescriptor);
+            }
+        }
+
+        /**
+         * Attach an additional handler to the task (see TaskExecutionMode.SINGLE_FLIGHT). The handler gets onStart() called and
+         * then the same progress and termination callbacks as the main handler. Note that rebind() only replaces the main
+         * handler. Subscribers are never rebound.
+         * 
+         * @param pTaskResult Handler to attach.
+         * @return Reference of the task or null if the task is already over or cancelled.
+         */
+        public TaskRef<TResult> subscribe(TaskResult<TResult> pTaskResult) {
+            final TaskDescriptor<TResult> lDescriptor = new TaskDescriptor<TResult>(pTaskResult);
+            // Index first so that the subscriber is unindexed properly if the task finishes concurrently.
+            lDescriptor.index(this);
+            boolean lSubscribed;
+            synchronized (this) {
+                lSubscribed = !mCancelled && !mFinished;
+                if (lSubscribed) mSubscribers.add(lDescriptor);
+            }
+            if (!lSubscribed) {
+                lDescriptor.unindex(this);
+                lDescriptor.evictEmitters();
+                return null;
+            }
+
+            // Save the descriptor so that any child task can use it as a parent. Then, call onStart() or onFinish() directly if
+            // the task is already processed.
+            mDescriptors.put(pTaskResult, lDescriptor);
+            restore(lDescriptor);
+            return mTaskRef;
+        }
+
+        /**
+         * Replace the previous task handler with a new one. Previous handler is lost. See manage() for concurrency concerns.
+         * 
+         * @param pTaskResult Task handler that must replace previous one.
+         */
+        public void rebind(TaskResult<TResult> pTaskResult) {
+            final TaskDescriptor<TResult> lDescriptor = new TaskDescriptor<TResult>(pTaskResult);
+            final TaskDescriptor<TResult> lPreviousDescriptor = mDescriptor;
+            // Move the container from the emitters of the previous handler to the emitters of the new one. Previous emitters can
+            // be evicted only once the new ones are indexed, as they may be the same.
+            unindex();
+            mDescriptor = lDescriptor;
+            lDescriptor.index(this);
+            if (lPreviousDescriptor != null) {
+                lPreviousDescriptor.evictEmitters();
+            }
+            restore(lDescriptor);
+            // Save the descriptor so that any child task can use current descriptor as a parent.
+            mDescriptors.put(pTaskResult, lDescriptor); // TODO Global lock that could lead to contention. Check for optim.
+        }
+
+        /**
+         * Calls onStart() handler when a task is rebound to another object or when an emitter gets managed again.
+         * 
+         * @param pDescriptor Descriptor to use to call onStart(). Necessary to use this parameter as descriptor can be changed
+         *            concurrently through rebind.
+         */
+        private void restore(final TaskDescriptor<TResult> pDescriptor) {
+            mScheduler.scheduleIfNecessary(new Runnable() {
+                public void run() {
+                    restoreNow(pDescriptor);
+                }
+            });
+        }
+
+        /**
+         * Calls onStart() handler immediately. Must be called on the scheduler thread. See restore().
+         * 
+         * @param pDescriptor Descriptor to use to call onStart().
+         */
+        private void restoreNow(TaskDescriptor<?> pDescriptor) {
+            if (!finish()) {
+                pDescriptor.onStart(true);
+            }
+        }
+
+        /**
+         * Try to execute task termination handlers (i.e. onFinish and onFail). The latter may not be executed if at least one of
+         * the outer object reference can't be restored. When the task is effectively finished, the corresponding flag is set to
+         * prevent any other invocation. That way, finish() can be called at any time:
+         * <ul>
+         * <li>When task isn't finished yet, in which case nothing happens. This can occur if a new instance of the emitter
+         * becomes managed while task is still executing: the task manager try to call finish on all tasks.</li>
+         * <li>When task has just finished, i.e. finish is called from the computation thread, and its emitter is available. In
+         * this case, the flag is set to true and task termination handler is triggered.</li>
+         * <li>When task has just finished but its emitter is not available yet, i.e. it has been unmanaged. In this case, the
+         * flag is set to true but task termination handler is NOT triggered. it will be triggered later when a new emitter (with
+         * the same Id) becomes managed.</li>
+         * <li>When an emitter with the same Id as the previously managed-then-unmanaged one becomes managed. In this case the
+         * flag is already true but task termination handler may have not been called yet (i.e. if mFinished is false). This can
+         * be done now. Note hat it is possible to have finish() called several times since there may be a delay between finish()
+         * call and execution as it is posted on the UI Thread.</li>
+         * </ul>
+         * 
+         * @return True if the task could be finished and its termination handlers executed or false otherwise.
+         */
+        private boolean finish() {
+            // Execute task termination handlers if they have not been yet (but only if the task has been fully processed). A
+            // cancelled task is considered finished although its handlers are never executed.
+            if (mCancelled) return true;
+            if (mRunning) return false;
+            if (mFinished) return true;
+
+            // TODO Don't like the configuration parameter here.
+            boolean lKeepResultOnHold = mConfig.keepResultOnHold(mTask);
+            if (!mDescriptorFinished) {
+                mDescriptorFinished = mDescriptor.onFinish(mResult, mThrowable, lKeepResultOnHold);
+            }
+            // Subscribers are finished independently since their emitters may not be available at the same time.
+            for (TaskDescriptor<TResult> lSubscriber : mSubscribers) {
+                if (lSubscriber.onFinish(mResult, mThrowable, lKeepResultOnHold)) {
+                    mSubscribers.remove(lSubscriber);
+                    lSubscriber.unindex(this);
+                    lSubscriber.evictEmitters();
+                }
+            }
+            // A subscriber may have been added meanwhile. It will finish the task itself when restored.
+            synchronized (this) {
+                mFinished = mDescriptorFinished && mSubscribers.isEmpty();
+            }
+            if (mFinished) {
+                notifyFinished(this);
+            }
+            return mFinished;
+        }
+
+        @Override
+        public int getPriority() {
+            return mPriority;
+        }
+
+        @Override
+        public void notifyProgress() {
+            // Progress is always executed on the scheduler Thread but sent from the background Thread.
+            if (!mRunning) throw translateException(progressCalledAfterTaskFinished());
+            if (!mProgressPending.compareAndSet(false, true)) return;
+
+            long lDelay = 0;
+            if (mProgressInterval > 0) {
+                lDelay = mProgressInterval - (System.nanoTime() - mLastProgressTime) / 1000000L;
+            }
+            if (lDelay > 0) {
+                synchronized (this) {
+                    mProgressTimeout = TaskTimer.getInstance().schedule(mDelayedProgressRunnable, lDelay);
+                }
+            } else {
+                mScheduler.schedule(mProgressRunnable);
+            }
+        }
+
+        @Override
+        public boolean equals(Object pOther) {
+            if (this == pOther) return true;
+            if (pOther == null) return false;
+            if (getClass() != pOther.getClass()) return false;
+
+            TaskContainer<?> lOtherContainer = (TaskContainer<?>) pOther;
+            // Check equality on the user-defined task Id if possible.
+            if (mTaskId != null) {
+                return mTaskId.equals(lOtherContainer.mTaskId);
+            }
+            // If the task has no Id, then we use task equality method. This is likely to turn into a simple reference check.
+            else if (mTask != null) {
+                return mTask.equals(lOtherContainer.mTask);
+            }
+            // A container can't be created with a null task. So the following case should never occur.
+            else {
+                throw internalError();
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            if (mTaskId != null) {
+                return mTaskId.hashCode();
+            } else if (mTask != null) {
+                return mTask.hashCode();
+            } else {
+                throw internalError();
+            }
+        }
+    }
+
+    /**
+     * Batchable tasks with the same batch key collected during a batch window and processed together with a single call to
+     * TaskBatchable.onProcessBatch(). Each task keeps its own container, so that its handler is restored, finished, cancelled or
+     * timed out individually. But the whole batch takes only one executor slot and is finished with a single post on the
+     * scheduler.
+     */
+    private class TaskBatch<TResult> implements Runnable, TaskNotifier {
+        private final Object mBatchKey;
+        private final Executor mExecutor;
+        // Filled while the batch is collected (guarded by mBatches) and then only read once submitted.
+        private final List<TaskContainer<TResult>> mContainers;
+        // Containers actually processed, i.e. not cancelled or timed out before the batch has started.
+        private volatile List<TaskContainer<TResult>> mProcessedContainers;
+
+        public TaskBatch(Object pBatchKey, Executor pExecutor) {
+            super();
+            mBatchKey = pBatchKey;
+            mExecutor = pExecutor;
+            mContainers = new ArrayList<TaskContainer<TResult>>();
+            mProcessedContainers = Collections.emptyList();
+        }
+
+        public void add(TaskContainer<TResult> pContainer) {
+            mContainers.add(pContainer);
+        }
+
+        /**
+         * Close the batch, so that new tasks go to a new batch, and submit it to its executor. Called when batch window expires.
+         */
+        public void submit() {
+            synchronized (mBatches) {
+                mBatches.remove(mBatchKey);
+            }
+            mExecutor.execute(this);
+        }
+
+        @SuppressWarnings("unchecked")
+        public void run() {
+            // The batch thread is shared by all its tasks. Thus it is never interrupted when one of them is cancelled.
+            List<TaskContainer<TResult>> lContainers = new ArrayList<TaskContainer<TResult>>(mContainers.size());
+            List<TaskBatchable<TResult>> lTasks = new ArrayList<TaskBatchable<TResult>>(mContainers.size());
+            for (TaskContainer<TResult> lContainer : mContainers) {
+                if (lContainer.startProcessing(null)) {
+                    lContainers.add(lContainer);
+                    lTasks.add((TaskBatchable<TResult>) lContainer.mTask);
+                }
+            }
+            if (lContainers.isEmpty()) return;
+            mProcessedContainers = lContainers;
+
+            List<TResult> lResults = null;
+            Throwable lThrowable = null;
+            try {
+                lResults = lTasks.get(0).onProcessBatch(lTasks, this);
+                if ((lResults == null) || (lResults.size() != lTasks.size())) {
+                    throw translateException(invalidBatchResults(lTasks.get(0), lTasks.size()));
+                }
+            } catch (final Exception eException) {
+                lResults = null;
+                lThrowable = eException;
+            } finally {
+                // Results are dispatched to their own task and all the tasks of the batch are finished with a single post.
+                final List<TaskContainer<TResult>> lProcessedContainers = new ArrayList<TaskContainer<TResult>>(lTasks.size());
+                for (int i = 0, lSize = lContainers.size(); i < lSize; ++i) {
+                    TaskContainer<TResult> lContainer = lContainers.get(i);
+                    if (lContainer.endProcessing((lResults != null) ? lResults.get(i) : null, lThrowable)) {
+                        lProcessedContainers.add(lContainer);
+                    }
+                }
+                if (!lProcessedContainers.isEmpty()) {
+                    mDefaultScheduler.schedule(new Runnable() {
+                        public void run() {
+                            for (TaskContainer<TResult> lContainer : lProcessedContainers) {
+                                lContainer.finishProcessed();
+                            }
+                        }
+                    });
+                }
+            }
+        }
+
+        @Override
+        public void notifyProgress() {
+            for (TaskContainer<TResult> lContainer : mProcessedContainers) {
+                lContainer.notifyProgress();
+            }
+        }
+
+        @Override
+        public <TComputationResult> TaskFork<TComputationResult> fork(TaskComputation<TComputationResult> pComputation) {
+            return TaskForkPool.getInstance().fork(pComputation, this);
+        }
+
+        /**
+         * @return True only if all the tasks of the batch have been cancelled.
+         */
+        @Override
+        public boolean isCancelled() {
+            for (TaskContainer<TResult> lContainer : mProcessedContainers) {
+                if (!lContainer.isCancelled()) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Gathers the tasks to restore when an emitter gets managed, so that they are all restored with a single post on the
+     * scheduler instead of one post per task.
+     */
+    private static final class TaskRestoreBatch implements Runnable {
+        private final List<TaskContainer<?>> mContainers;
+        private final List<TaskDescriptor<?>> mDescriptors;
+
+        public TaskRestoreBatch() {
+            super();
+            mContainers = new ArrayList<TaskContainer<?>>();
+            mDescriptors = new ArrayList<TaskDescriptor<?>>();
+        }
+
+        public void add(TaskContainer<?> pContainer, TaskDescriptor<?> pDescriptor) {
+            mContainers.add(pContainer);
+            mDescriptors.add(pDescriptor);
+        }
+
+        public void schedule(TaskScheduler pScheduler) {
+            if (!mContainers.isEmpty()) {
+                pScheduler.scheduleIfNecessary(this);
+            }
+        }
+
+        public void run() {
+            for (int i = 0, lSize = mContainers.size(); i < lSize; ++i) {
+                mContainers.get(i).restoreNow(mDescriptors.get(i));
+            }
+        }
+    }
+
+    /**
+     * Contains all the information necessary to restore all the emitters (even parent emitters) of a task. Once prepareToRun() is
+     * called, the content of this class is not modified anymore (except the emitter and the reference counter dedicated to
+     * referencing and dereferencing).
+     */
+    private class TaskDescriptor<TResult> {
+        private final TaskResult<TResult> mTaskResult;
+        // Never modified once initialized in prepareDescriptor().
+        private TaskEmitterDescriptor[] mEmitterDescriptors;
+        // Every descriptor, parents included, whose emitters must be restored before a handler of this task gets executed.
+        // Parents come first, in the order they must be referenced, and the current descriptor last (only if it has emitters).
+        // Each descriptor appears only once. Computed once in prepareDescriptor() from the (already flat) chains of the direct
+        // parents, so that referencing never needs to walk the task hierarchy. Never modified once initialized.
+        private TaskDescriptor<?>[] mReferenceChain;
+        // Counts the number of time a task has been referenced without being dereferenced. A task will be dereferenced only when
+        // this counter reaches 0, which means that no other task needs references to be set. This situation can occur for example
+        // when starting a child task from a parent task handler (e.g. in onFinish()): when the child task is launched, it must
+        // not dereference emitters because the parent task is still in its onFinish() handler and may need references to them.
+        // Holds REFERENCE_TRANSITION while emitters are being restored (0 -> 1) or removed (1 -> 0). Other transitions are a
+        // simple compare-and-set on the counter, so that handler dispatch never acquires a lock.
+        private final AtomicInteger mReferenceCounter;
+
+        // TODO Boolean option to indicate if we should look for emitter or if task is not "managed".
+        public TaskDescriptor(TaskResult<TResult> pTaskResult) {
+            mTaskResult = pTaskResult;
+            mEmitterDescriptors = null;
+            mReferenceChain = null;
+            mReferenceCounter = new AtomicInteger(0);
+
+            prepareDescriptor();
+        }
+
+        public boolean needDereferencing(Task<TResult> pTask) {
+            return pTask == mTaskResult;
+        }
+
+        /**
+         * Remove the descriptor from the descriptor list, if it is still the one associated with its handler.
+         */
+        public void release() {
+            if (mDescriptors.get(mTaskResult) == this) {
+                mDescriptors.remove(mTaskResult);
+            }
+        }
+
+        /**
+         * Register the container on each emitter this descriptor uses, so that it gets restored when one of them is managed.
+         */
+        public void index(TaskContainer<?> pContainer) {
+            for (TaskEmitterDescriptor lEmitterDescriptor : mEmitterDescriptors) {
+                lEmitterDescriptor.index(pContainer);
+            }
+        }
+
+        /**
+         * Unregister the container from each emitter this descriptor uses. See index().
+         */
+        public void unindex(TaskContainer<?> pContainer) {
+            for (TaskEmitterDescriptor lEmitterDescriptor : mEmitterDescriptors) {
+                lEmitterDescriptor.unindex(pContainer);
+            }
+        }
+
+        /**
+         * Evict the emitters this descriptor uses from the emitter list if they are not useful anymore. See evictEmitter().
+         */
+        public void evictEmitters() {
+            for (TaskEmitterDescriptor lEmitterDescriptor : mEmitterDescriptors) {
+                evictEmitter(lEmitterDescriptor.getEmitterRef());
+            }
+        }
+
+        /**
+         * Locate all the outer object references (e.g. this$0) inside the task class, manage them if necessary and cache emitter
+         * field properties for later use. Check is performed recursively on all super classes too.
+         */
+        private void prepareDescriptor() {
+            // Most of the time, a task will have only one emitter and no parents. Hence these capacities.
+            List<TaskEmitterDescriptor> lEmitterDescriptors = new ArrayList<TaskEmitterDescriptor>(1);
+            List<TaskDescriptor<?>> lParentDescriptors = new ArrayList<TaskDescriptor<?>>(0);
+            try {
+                // Go through the emitter fields of the main class and each of its super classes, as cached in the class plan.
+                TaskEmitterPlan lPlan = TaskEmitterPlan.of(mTaskResult.getClass());
+                TaskEmitterAccessor[] lEmitterAccessors = lPlan.getEmitterAccessors();
+                for (int i = 0; i < lEmitterAccessors.length; ++i) {
+                    prepareEmitterField(lEmitterAccessors[i], lPlan.isHandlerField(i), lEmitterDescriptors, lParentDescriptors);
+                }
+
+                mEmitterDescriptors = lEmitterDescriptors.toArray(new TaskEmitterDescriptor[lEmitterDescriptors.size()]);
+                mReferenceChain = prepareReferenceChain(lParentDescriptors);
+            } finally {
+                for (TaskEmitterDescriptor lEmitterDescriptor : lEmitterDescriptors) {
+                    lEmitterDescriptor.dereference(mTaskResult);
+                }
+            }
+        }
+
+        /**
+         * Merge the reference chains of all the direct parents, in order and without duplicates (a parent can be reached through
+         * several paths), and append the current descriptor if it has emitters of its own.
+         * 
+         * @param pParentDescriptors Direct parents of the task.
+         * @return Reference chain of the task.
+         */
+        private TaskDescriptor<?>[] prepareReferenceChain(List<TaskDescriptor<?>> pParentDescriptors) {
+            List<TaskDescriptor<?>> lReferenceChain = new ArrayList<TaskDescriptor<?>>(pParentDescriptors.size() + 1);
+            for (TaskDescriptor<?> lParentDescriptor : pParentDescriptors) {
+                for (TaskDescriptor<?> lAncestorDescriptor : lParentDescriptor.mReferenceChain) {
+                    if (!lReferenceChain.contains(lAncestorDescriptor)) lReferenceChain.add(lAncestorDescriptor);
+                }
+            }
+            if (mEmitterDescriptors.length > 0) lReferenceChain.add(this);
+            return lReferenceChain.toArray(new TaskDescriptor<?>[lReferenceChain.size()]);
+        }
+
+        /**
+         * Find and save the descriptor of the corresponding field, i.e. an indirect (weak) reference pointing to the emitter
+         * through its Id or a simple indirect (weak) reference for unmanaged emitters.
+         * 
+         * @param pAccessor Accessor to the field to manage.
+         * @param pHandlerField True if the field points to a task handler.
+         * @param pEmitterDescriptors Emitter descriptors found so far, which the new one is appended to.
+         * @param pParentDescriptors Parent descriptors found so far, which new ones are appended to.
+         */
+        private void prepareEmitterField(TaskEmitterAccessor pAccessor,
+                                         boolean pHandlerField,
+                                         List<TaskEmitterDescriptor> pEmitterDescriptors,
+                                         List<TaskDescriptor<?>> pParentDescriptors)
+        {
+            // Extract the emitter "reflectively" and compute its Id.
+            TaskEmitterRef lEmitterRef = null;
+            Object lEmitter = pAccessor.get(mTaskResult);
+
+            if (lEmitter != null) {
+                lEmitterRef = resolveRef(lEmitter);
+                lookForParentDescriptor(pHandlerField, lEmitter, pParentDescriptors);
+            }
+            // If reference is null, that means the emitter is probably used in a parent container and already managed.
+            // Try to find its Id in parent containers.
+            else {
+                // Not sure there is a problem here. The list of parent descriptors should be entirely created before to be
+                // sure we can properly resolve reference. However this$x fields are processed from child class to super
+                // classes. My guess is that top-most child class will always have its outer reference filled, which itself
+                // will point to parent outer objects. And if one of the outer reference is created explicitly through a
+                // "myOuter.new Inner()", well the outer class reference myOuter cannot be null or a NullPointerException is
+                // thrown by the Java language anyway. But that remains late-night suppositions... Anyway if it doesn't work
+                // it probably means you're just writing really bad code so just stop it please! Note that this whole case can
+                // occur only when onFinish() is called with keepResultOnHold option set to false (in which case referencing
+                // is not guaranteed be fully applied).
+                lEmitterRef = resolveRefInParentDescriptors(pAccessor, pParentDescriptors);
+            }
+
+            if (lEmitterRef != null) {
+                pEmitterDescriptors.add(new TaskEmitterDescriptor(pAccessor, lEmitterRef));
+            } else {
+                // Maybe this is too brutal and we should do nothing, hoping that no access will be made. But for the moment I
+                // really think this case should never happen under normal conditions. See the big paragraph above...
+                throw emitterIdCouldNotBeDetermined(mTaskResult);
+            }
+        }
+
+        /**
+         * Sometimes, we cannot resolve a parent emitter reference because it has already been dereferenced. In that case, we
+         * should find the emitter reference somewhere in parent descriptors. Parent reference chains already contain all the
+         * ancestors, so there is no need to go through the hierarchy recursively.
+         * 
+         * @param pAccessor Emitter field accessor.
+         * @param pParentDescriptors Parent descriptors found so far.
+         * @return Emitter reference or null if none could be found.
+         */
+        private TaskEmitterRef resolveRefInParentDescriptors(TaskEmitterAccessor pAccessor,
+                                                             List<TaskDescriptor<?>> pParentDescriptors)
+        {
+            for (TaskDescriptor<?> lParentDescriptor : pParentDescriptors) {
+                for (TaskDescriptor<?> lAncestorDescriptor : lParentDescriptor.mReferenceChain) {
+                    for (TaskEmitterDescriptor lParentEmitterDescriptor : lAncestorDescriptor.mEmitterDescriptors) {
+                        // We have found the right ref if its field has the same type than the field of the emitter we look for.
+                        // I turned my mind upside-down but this seems to work.
+                        TaskEmitterRef lEmitterRef = lParentEmitterDescriptor.hasSameType(pAccessor);
+                        if (lEmitterRef != null) return lEmitterRef;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Check for parent tasks (i.e. a task containing directly or indirectly innertasks) and their descriptors that will be
+         * necessary to restore absolutely all emitters of a task.
+         * 
+         * @param pHandlerField True if the emitter field points to a task handler.
+         * @param pEmitter Effective emitter reference. Must not be null.
+         * @param pParentDescriptors Parent descriptors found so far, which new ones are appended to.
+         */
+        private void lookForParentDescriptor(boolean pHandlerField, Object pEmitter, List<TaskDescriptor<?>> pParentDescriptors) {
+            if (pHandlerField) {
+                TaskDescriptor<?> lDescriptor = mDescriptors.get(pEmitter);
+                if (lDescriptor == null) throw taskExecutedFromUnexecutedTask(pEmitter);
+                pParentDescriptors.add(lDescriptor);
+            } else {
+                // Go through the emitter fields of the main class and each of its super classes.
+                TaskEmitterPlan lPlan = TaskEmitterPlan.of(pEmitter.getClass());
+                TaskEmitterAccessor[] lEmitterAccessors = lPlan.getEmitterAccessors();
+                // Find all parent emitter references and their corresponding descriptors.
+                for (int i = 0; i < lEmitterAccessors.length; ++i) {
+                    Object lParentEmitter = lEmitterAccessors[i].get(pEmitter);
+                    if (lParentEmitter != null) {
+                        lookForParentDescriptor(lPlan.isHandlerField(i), lParentEmitter, pParentDescriptors);
+                    } else {
+                        // Look for the big comment in prepareEmitterField(). Here we try to check the whole hierarchy of
+                        // parent this$x to look for parent descriptors (not only this$x for the handler class and its super
+                        // classes). In this case, if we get a null, I really think we are stuck if there is a Task handler
+                        // and its associated descriptor hidden deeper behind this null reference. Basically we can do
+                        // nothing against this except maybe a warning as code may still be correct if the null reference
+                        // just hides e.g. a managed object (e.g. an Activity). That's why an exception would be too brutal.
+                        // User will get a NullPointerException anyway if he try to go through such a reference. Again note
+                        // that this whole case can occur only when onFinish() is called with keepResultOnHold option set to
+                        // false (in which case referencing is not guaranteed be fully applied).
+                    }
+                }
+            }
+        }
+
+        /**
+         * Restore all the emitters back into the task handler. Called before each task handler is executed to avoid
+         * NullPointerException when accessing outer emitters. Referencing can fail if an emitter has been unmanaged. In that
+         * case, any set reference is rolled-back and dereferenceEmitter() shouldn't be called. But if referencing succeeds, then
+         * dereferenceEmitter() MUST be called eventually (preferably using a finally block).
+         * 
+         * @param pRollbackOnFailure True to cancel referencing if one of the emitter cannot be restored, or false if partial
+         *            referencing is allowed.
+         * @return True if restoration was performed properly. This may be false if a previously managed object become unmanaged
+         *         meanwhile.
+         */
+        private boolean referenceEmitter(boolean pRollbackOnFailure) {
+            // Restore emitters in parent containers first and current container last. Everything is rolled-back if referencing
+            // fails at some point.
+            final TaskDescriptor<?>[] lReferenceChain = mReferenceChain;
+            for (int i = 0; i < lReferenceChain.length; ++i) {
+                boolean lReferenced;
+                try {
+                    lReferenced = lReferenceChain[i].referenceOwnEmitters(pRollbackOnFailure);
+                } catch (TaskManagerException eTaskManagerException) {
+                    rollbackReferenceChain(i);
+                    throw eTaskManagerException;
+                }
+                if (!lReferenced) {
+                    rollbackReferenceChain(i);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Dereference the descriptors of the reference chain that have been referenced before the failing one.
+         * 
+         * @param pFailureIndex Index of the descriptor in the chain that couldn't be referenced.
+         */
+        private void rollbackReferenceChain(int pFailureIndex) {
+            for (int i = pFailureIndex - 1; i >= 0; --i) {
+                mReferenceChain[i].dereferenceOwnEmitters();
+            }
+        }
+
+        /**
+         * Remove emitter references from the task handler. Called after each task handler is executed to avoid memory leaks.
+         */
+        private void dereferenceEmitter() {
+            // Dereference in the opposite order of referencing.
+            final TaskDescriptor<?>[] lReferenceChain = mReferenceChain;
+            for (int i = lReferenceChain.length - 1; i >= 0; --i) {
+                lReferenceChain[i].dereferenceOwnEmitters();
+            }
+        }
+
+        /**
+         * Restore the emitters of the current descriptor only (i.e. not the parent ones). See referenceEmitter().
+         */
+        private boolean referenceOwnEmitters(boolean pRollbackOnFailure) {
+            while (true) {
+                int lReferenceCounter = mReferenceCounter.get();
+                if (lReferenceCounter == REFERENCE_TRANSITION) {
+                    // Another thread is restoring or removing emitters. This never lasts more than a few field assignments.
+                    Thread.yield();
+                } else if (lReferenceCounter != 0) {
+                    // Emitters are already restored. Just count the new reference.
+                    if (mReferenceCounter.compareAndSet(lReferenceCounter, lReferenceCounter + 1)) return true;
+                } else if (mReferenceCounter.compareAndSet(0, REFERENCE_TRANSITION)) {
+                    return referenceOwnEmittersInTransition(pRollbackOnFailure);
+                }
+            }
+        }
+
+        /**
+         * Restore the emitters of the current descriptor once the transition state has been acquired. Transition state is always
+         * released before returning, to 1 if referencing is done or to 0 if it is rolled-back.
+         */
+        private boolean referenceOwnEmittersInTransition(boolean pRollbackOnFailure) {
+            try {
+                // TODO There is a race problem in this code. A TaskEmitterRef can be used several times for one TaskDescriptor
+                // because of parent or superclass emitters ref that may be identical. In that case, a call to manage() on another
+                // thread during referenceEmitter() may cause two different emitters to be restored whereas we would expect the
+                // same ref.
+                for (TaskEmitterDescriptor lEmitterDescriptor : mEmitterDescriptors) {
+                    if (!lEmitterDescriptor.reference(mTaskResult) && pRollbackOnFailure) {
+                        // Rollback modifications in case of failure.
+                        for (TaskEmitterDescriptor lRolledEmitterDescriptor : mEmitterDescriptors) {
+                            if (lRolledEmitterDescriptor == lEmitterDescriptor) break;
+                            lRolledEmitterDescriptor.dereference(mTaskResult);
+                        }
+                        mReferenceCounter.set(0);
+                        return false;
+                    }
+                }
+                mReferenceCounter.set(1);
+                return true;
+            }
+            // Note: Rollback any modifications if an exception occurs. Having an exception here denotes an internal bug.
+            catch (TaskManagerException eTaskManagerException) {
+                try {
+                    // Note that if referencing failed at some point, dereferencing is likely to fail too. That's not a big issue
+                    // since an exception will be thrown in both cases anyway.
+                    for (TaskEmitterDescriptor lRolledEmitterDescriptor : mEmitterDescriptors) {
+                        lRolledEmitterDescriptor.dereference(mTaskResult);
+                    }
+                } finally {
+                    mReferenceCounter.set(0);
+                }
+                throw eTaskManagerException;
+            }
+        }
+
+        /**
+         * Remove the emitters of the current descriptor only (i.e. not the parent ones). See dereferenceEmitter().
+         */
+        private void dereferenceOwnEmitters() {
+            while (true) {
+                int lReferenceCounter = mReferenceCounter.get();
+                if (lReferenceCounter == REFERENCE_TRANSITION) {
+                    Thread.yield();
+                } else if (lReferenceCounter != 1) {
+                    if (mReferenceCounter.compareAndSet(lReferenceCounter, lReferenceCounter - 1)) return;
+                } else if (mReferenceCounter.compareAndSet(1, REFERENCE_TRANSITION)) {
+                    try {
+                        // Note: No need to rollback modifications if an exception occur. Leave references as is, thus creating a
+                        // memory leak. We can't do much about it since having an exception here denotes an internal bug.
+                        for (TaskEmitterDescriptor lEmitterDescriptor : mEmitterDescriptors) {
+                            lEmitterDescriptor.dereference(mTaskResult);
+                        }
+                    } finally {
+                        mReferenceCounter.set(0);
+                    }
+                    return;
+                }
+            }
+        }
+
+        public void onStart(boolean pIsRestored) {
+            if (mTaskResult instanceof TaskStart) {
+                if (referenceEmitter(true)) {
+                    try {
+                        ((TaskStart) mTaskResult).onStart(pIsRestored);
+                    } catch (RuntimeException eRuntimeException) {
+                        if (mConfig.crashOnHandlerFailure()) throw eRuntimeException;
+                    } finally {
+                        dereferenceEmitter();
+                    }
+                }
+            }
+        }
+
+        public void onProgress() {
+            if (mTaskResult instanceof TaskProgress) {
+                if (referenceEmitter(true)) {
+                    try {
+                        ((TaskProgress) mTaskResult).onProgress();
+                    } catch (RuntimeException eRuntimeException) {
+                        if (mConfig.crashOnHandlerFailure()) throw eRuntimeException;
+                    } finally {
+                        dereferenceEmitter();
+                    }
+                }
+            }
+        }
+
+        public boolean onFinish(TResult pResult, Throwable pThrowable, boolean pKeepResultOnHold) {
+            // A task can be considered finished only if referencing succeed or if an option allows bypassing referencing failure.
+            boolean lRestored = referenceEmitter(pKeepResultOnHold);
+            if (!lRestored && pKeepResultOnHold) return false;
+
+            // Run termination handlers.
+            try {
+                if (pThrowable == null) {
+                    mTaskResult.onFinish(pResult);
+                } else {
+                    mTaskResult.onFail(pThrowable);
+                }
+            } catch (RuntimeException eRuntimeException) {
+                if (mConfig.crashOnHandlerFailure()) throw eRuntimeException;
+            } finally {
+                // After task is over, it may still get dereferenced (e.g. if a child task gets executed). So dereference it
+                // immediately to leave it in a clean state. This will ease potential NullPointerException detection (e.g. if
+                // an inner task is executed from termination handler of another task).
+                if (lRestored) dereferenceEmitter();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Caches the result of the reflection lookups performed on a handler class, i.e. its outer references (the this$x fields of
+     * the class and its super classes). A class never changes once loaded, so its plan is computed only once and then shared by
+     * all the tasks and handlers of the same type, whatever the manager they are executed in.
+     */
+    private static final class TaskEmitterPlan {
+        // Most applications launch tasks from a limited set of (anonymous) classes. Hence a small initial capacity.
+        private static final Map<Class<?>, TaskEmitterPlan> PLANS = new ConcurrentHashMap<Class<?>, TaskEmitterPlan>(DEFAULT_CAPACITY);
+
+        private final TaskEmitterAccessor[] mEmitterAccessors; // From the class to its super classes.
+        private final boolean[] mHandlerFields; // True if the field at the same index points to a task handler.
+        private final boolean mInner; // True if at least one class in the hierarchy is an inner class.
+
+        private TaskEmitterPlan(TaskEmitterAccessor[] pEmitterAccessors, boolean[] pHandlerFields, boolean pInner) {
+            mEmitterAccessors = pEmitterAccessors;
+            mHandlerFields = pHandlerFields;
+            mInner = pInner;
+        }
+
+        /**
+         * Find the plan of the specified class or compute it if this is the first time the class is encountered. Computation may
+         * occur twice if two threads run into the same class at once, which is harmless since both plans are identical.
+         * 
+         * @param pClass Class to get the plan of.
+         * @return Plan of the class. Never null.
+         */
+        public static TaskEmitterPlan of(Class<?> pClass) {
+            TaskEmitterPlan lPlan = PLANS.get(pClass);
+            if (lPlan == null) {
+                lPlan = create(pClass);
+                PLANS.put(pClass, lPlan);
+            }
+            return lPlan;
+        }
+
+        private static TaskEmitterPlan create(Class<?> pClass) {
+            TaskEmitterPlan lPlan = createFromBinder(pClass);
+            return (lPlan != null) ? lPlan : createFromReflection(pClass);
+        }
+
+        /**
+         * Build the plan from the TaskBinder generated at compile-time for the class, if any. Binders spare the expensive
+         * discovery of outer references (enclosing class lookup, scan of all declared fields) and don't rely on field names
+         * being preserved by an obfuscator. Outer references are still read and written through Field accessors resolved here,
+         * once per class.
+         * 
+         * @param pClass Class to create the plan of.
+         * @return Plan of the class or null if no binder has been generated for it or if it is unusable.
+         */
+        private static TaskEmitterPlan createFromBinder(Class<?> pClass) {
+            TaskBinder lBinder;
+            try {
+                lBinder = (TaskBinder) Class.forName(pClass.getName() + TaskBinder.SUFFIX, true, pClass.getClassLoader())
+                                            .getDeclaredConstructor()
+                                            .newInstance();
+            } catch (ClassNotFoundException eClassNotFoundException) {
+                // No binder for this class (e.g. an anonymous class). This is the normal case when annotation processing is off.
+                return null;
+            } catch (NoSuchMethodException eNoSuchMethodException) {
+                return null;
+            } catch (InstantiationException eInstantiationException) {
+                return null;
+            } catch (IllegalAccessException eIllegalAccessException) {
+                return null;
+            } catch (InvocationTargetException eInvocationTargetException) {
+                return null;
+            }
+
+            String[] lEmitterFieldNames = lBinder.getEmitterFieldNames();
+            boolean[] lBinderHandlerFields = lBinder.getHandlerFields();
+            List<TaskEmitterAccessor> lEmitterAccessors = new ArrayList<TaskEmitterAccessor>(1);
+            List<Boolean> lHandlerFields = new ArrayList<Boolean>(1);
+            try {
+                Class<?> lClass = pClass;
+                for (int i = 0; (i < lEmitterFieldNames.length) && (lClass != Object.class); ++i) {
+                    if (lEmitterFieldNames[i] != null) {
+                        lEmitterAccessors.add(new TaskEmitterAccessor(lClass.getDeclaredField(lEmitterFieldNames[i])));
+                        lHandlerFields.add(lBinderHandlerFields[i]);
+                    }
+                    lClass = lClass.getSuperclass();
+                }
+            }
+            // Binder is out of sync with the class (e.g. compiled separately or with a compiler that doesn't generate all outer
+            // references). Reflection still knows better.
+            catch (NoSuchFieldException eNoSuchFieldException) {
+                return null;
+            }
+
+            boolean[] lHandlerFieldArray = new boolean[lHandlerFields.size()];
+            for (int i = 0; i < lHandlerFieldArray.length; ++i) {
+                lHandlerFieldArray[i] = lHandlerFields.get(i);
+            }
+            TaskEmitterAccessor[] lAccessorArray = lEmitterAccessors.toArray(new TaskEmitterAccessor[lEmitterAccessors.size()]);
+            return new TaskEmitterPlan(lAccessorArray, lHandlerFieldArray, lBinder.isInner());
+        }
+
+        /**
+         * Build the plan of the class by looking for outer references (i.e. "this$" fields) by reflection.
+         * 
+         * @param pClass Class to create the plan of.
+         * @return Plan of the class.
+         */
+        private static TaskEmitterPlan createFromReflection(Class<?> pClass) {
+            List<TaskEmitterAccessor> lEmitterAccessors = new ArrayList<TaskEmitterAccessor>(1);
+            boolean lInner = false;
+            // Go through the main class and each of its super classes and look for "this$" fields.
+            Class<?> lClass = pClass;
+            while (lClass != Object.class) {
+                // If current class is an inner class...
+                if ((lClass.getEnclosingClass() != null) && !Modifier.isStatic(lClass.getModifiers())) {
+                    lInner = true;
+                    for (Field lField : lClass.getDeclaredFields()) {
+                        if (lField.getName().startsWith("this$")) {
+                            lEmitterAccessors.add(new TaskEmitterAccessor(lField));
+                            // There should be only one outer reference per "class" in the Task class hierarchy. So we can
+                            // stop as soon as the field is found as there won't be another.
+                            break;
+                        }
+                    }
+                }
+                lClass = lClass.getSuperclass();
+            }
+
+            boolean[] lHandlerFields = new boolean[lEmitterAccessors.size()];
+            for (int i = 0; i < lHandlerFields.length; ++i) {
+                lHandlerFields[i] = TaskHandler.class.isAssignableFrom(lEmitterAccessors.get(i).getType());
+            }
+            TaskEmitterAccessor[] lAccessorArray = lEmitterAccessors.toArray(new TaskEmitterAccessor[lEmitterAccessors.size()]);
+            return new TaskEmitterPlan(lAccessorArray, lHandlerFields, lInner);
+        }
+
+        public TaskEmitterAccessor[] getEmitterAccessors() {
+            return mEmitterAccessors;
+        }
+
+        public boolean isHandlerField(int pIndex) {
+            return mHandlerFields[pIndex];
+        }
+
+        public boolean isInner() {
+            return mInner;
+        }
+    }
+
+    /**
+     * Reads and writes one outer reference (i.e. a this$x field) of a handler. Accessors are created once per class by its
+     * TaskEmitterPlan, with all the reflection set-up (access checks, field lookup) performed up-front, so that referencing and
+     * dereferencing, which occur around each handler call (including every progress notification), boil down to a raw field
+     * access. Reflection failures cannot occur under normal conditions and are reported as internal errors.
+     */
+    private static final class TaskEmitterAccessor {
+        private final Field mField;
+        private final Class<?> mType;
+
+        public TaskEmitterAccessor(Field pField) {
+            pField.setAccessible(true);
+            mField = pField;
+            mType = pField.getType();
+        }
+
+        public Class<?> getType() {
+            return mType;
+        }
+
+        public Object get(Object pHandler) {
+            try {
+                return mField.get(pHandler);
+            } catch (IllegalAccessException eIllegalAccessException) {
+                throw internalError(eIllegalAccessException);
+            } catch (RuntimeException eRuntimeException) {
+                throw internalError(eRuntimeException);
+            }
+        }
+
+        public void set(Object pHandler, Object pEmitter) {
+            try {
+                mField.set(pHandler, pEmitter);
+            } catch (IllegalAccessException eIllegalAccessException) {
+                throw internalError(eIllegalAccessException);
+            } catch (RuntimeException eRuntimeException) {
+                throw internalError(eRuntimeException);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "TaskEmitterAccessor [mField=" + mField + "]";
+        }
+    }
+
+    /**
+     * Contains all the information necessary to restore a single emitter on a task handler (its field and its generated Id).
+     */
+    private static final class TaskEmitterDescriptor {
+        private final TaskEmitterAccessor mEmitterAccessor;
+        private final TaskEmitterRef mEmitterRef;
+
+        public TaskEmitterDescriptor(TaskEmitterAccessor pEmitterAccessor, TaskEmitterRef pEmitterRef) {
+            mEmitterAccessor = pEmitterAccessor;
+            mEmitterRef = pEmitterRef;
+        }
+
+        public TaskEmitterRef getEmitterRef() {
+            return mEmitterRef;
+        }
+
+        public TaskEmitterRef hasSameType(TaskEmitterAccessor pAccessor) {
+            return (pAccessor.getType() == mEmitterAccessor.getType()) ? mEmitterRef : null;
+        }
+
+        public void index(TaskContainer<?> pContainer) {
+            mEmitterRef.addContainer(pContainer);
+        }
+
+        public void unindex(TaskContainer<?> pContainer) {
+            mEmitterRef.removeContainer(pContainer);
+        }
+
+        /**
+         * Restore reference to the current emitter on the specified task handler.
+         * 
+         * @param pTaskResult Emitter to restore.
+         * @return True if referencing succeed or false else.
+         */
+        public boolean reference(TaskResult<?> pTaskResult) {
+            // Read the emitter only once as it can be cleared concurrently.
+            Object lEmitter = mEmitterRef.get();
+            if (lEmitter != null) {
+                mEmitterAccessor.set(pTaskResult, lEmitter);
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        /**
+         * Clear reference to the given emitter on the specified task handler.
+         * 
+         * @param pTaskResult Emitter to dereference.
+         */
+        public void dereference(TaskResult<?> pTaskResult) {
+            mEmitterAccessor.set(pTaskResult, null);
+        }
+
+        @Override
+        public String toString() {
+            return "TaskEmitterDescriptor [mEmitterAccessor=" + mEmitterAccessor + ", mEmitterRef=" + mEmitterRef + "]";
+        }
+    }
+
+    /**
+     * Represents a reference to an emitter. Its goal is to add a level of indirection to the emitter so that several tasks can
+     * easily share updates made to an emitter. Compared by identity: there is only one reference per managed emitter Id in the
+     * emitter list.
+     */
+    private static final class TaskEmitterRef {
+        private final TaskEmitterId mEmitterId;
+        private volatile WeakReference<Object> mEmitterRef;
+        // Containers whose descriptor uses this emitter, so that manage() restores only the tasks it affects. Unmanaged emitters
+        // are never managed again, hence no index for them.
+        private final Set<TaskContainer<?>> mContainers;
+        // Queue notified when a managed emitter is garbage collected. Null for unmanaged emitters.
+        private final ReferenceQueue<Object> mQueue;
+
+        public TaskEmitterRef(Object pEmitterValue) {
+            mEmitterId = null;
+            mContainers = null;
+            mQueue = null;
+            set(pEmitterValue);
+        }
+
+        public TaskEmitterRef(TaskEmitterId pEmitterId, Object pEmitterValue, ReferenceQueue<Object> pQueue) {
+            mEmitterId = pEmitterId;
+            mContainers = Collections.newSetFromMap(new ConcurrentHashMap<TaskContainer<?>, Boolean>());
+            mQueue = pQueue;
+            set(pEmitterValue);
+        }
+
+        public TaskEmitterId getId() {
+            return mEmitterId;
+        }
+
+        public Object get() {
+            return (mEmitterRef != null) ? mEmitterRef.get() : null;
+        }
+
+        public void set(Object pEmitterValue) {
+            mEmitterRef = (mQueue != null) ? new TaskEmitterWeakRef(pEmitterValue, this, mQueue)
+                            : new WeakReference<Object>(pEmitterValue);
+        }
+
+        /**
+         * @return True if this is a managed emitter whose emitter is not available anymore and that no running task uses.
+         */
+        public boolean isEvictable() {
+            return (mContainers != null) && (get() == null) && mContainers.isEmpty();
+        }
+
+        public void clear() {
+            mEmitterRef = null;
+        }
+
+        public Collection<TaskContainer<?>> getContainers() {
+            return (mContainers != null) ? mContainers : Collections.<TaskContainer<?>> emptySet();
+        }
+
+        public void addContainer(TaskContainer<?> pContainer) {
+            if (mContainers != null) mContainers.add(pContainer);
+        }
+
+        public void removeContainer(TaskContainer<?> pContainer) {
+            if (mContainers != null) mContainers.remove(pContainer);
+        }
+
+        @Override
+        public String toString() {
+            return "TaskEmitterRef [mEmitterId=" + mEmitterId + ", mEmitterRef=" + mEmitterRef + "]";
+        }
+    }
+
+    /**
+     * Weak reference to a managed emitter that remembers the emitter reference it belongs to, so that this one can be evicted
+     * when the emitter is garbage collected.
+     */
+    private static final class TaskEmitterWeakRef extends WeakReference<Object> {
+        private final TaskEmitterRef mEmitterRef;
+
+        public TaskEmitterWeakRef(Object pEmitterValue, TaskEmitterRef pEmitterRef, ReferenceQueue<Object> pQueue) {
+            super(pEmitterValue, pQueue);
+            mEmitterRef = pEmitterRef;
+        }
+
+        public TaskEmitterRef getEmitterRef() {
+            return mEmitterRef;
+        }
+    }
+
+    /**
+     * Contains the information to store the Id of an emitter. Emitter class is necessary since if internal Ids may be quite
+     * common and thus similar between emitters of different types (e.g. fragments which have integer Ids starting from 0).
+     */
+    private static final class TaskEmitterId {
+        private final Class<?> mType;
+        private final Object mId;
+
+        public TaskEmitterId(Class<?> pType, Object pId) {
+            super();
+            mType = pType;
+            mId = pId;
+        }
+
+        @Override
+        public boolean equals(Object pOther) {
+            if (this == pOther) return true;
+            if (pOther == null) return false;
+            if (getClass() != pOther.getClass()) return false;
+
+            TaskEmitterId lOther = (TaskEmitterId) pOther;
+            if (mId == null) {
+                if (lOther.mId != null) return false;
+            } else if (!mId.equals(lOther.mId)) return false;
+
+            if (mType == null) return lOther.mType == null;
+            else return mType.equals(lOther.mType);
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + ((mId == null) ? 0 : mId.hashCode());
+            result = prime * result + ((mType == null) ? 0 : mType.hashCode());
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "TaskEmitterId [mType=" + mType + ", mId=" + mId + "]";
+        }
+    }
+}
\ No newline at end of file
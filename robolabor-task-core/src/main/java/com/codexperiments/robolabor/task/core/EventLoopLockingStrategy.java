@@ -0,0 +1,22 @@
+package com.codexperiments.robolabor.task.core;
+
+import static com.codexperiments.robolabor.task.core.TaskManagerException.mustBeExecutedFromEventLoop;
+
+/**
+ * Everything is done on the thread of an event loop. No lock required. This is the plain-JVM equivalent of the Android
+ * UI-Thread strategy.
+ */
+public class EventLoopLockingStrategy implements LockingStrategy {
+    private final EventLoopTaskScheduler mEventLoop;
+
+    public EventLoopLockingStrategy(EventLoopTaskScheduler pEventLoop) {
+        super();
+        if (pEventLoop == null) throw new NullPointerException("Event loop is null");
+        mEventLoop = pEventLoop;
+    }
+
+    @Override
+    public void checkCallIsAllowed() {
+        if (!mEventLoop.isEventLoopThread()) throw mustBeExecutedFromEventLoop();
+    }
+}
@@ -0,0 +1,107 @@
+package com.codexperiments.robolabor.task.core;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.codexperiments.robolabor.task.TaskScheduler;
+
+/**
+ * Scheduler running everything, in order, on a single daemon thread. This is the plain-JVM equivalent of the Android UI-Thread
+ * (and of its Looper): task handlers are called on the event loop and, combined with an EventLoopLockingStrategy, the TaskManager
+ * must be called from the event loop only, by scheduling the calls on it:
+ *
+ * <pre>
+ * final EventLoopTaskScheduler lEventLoop = new EventLoopTaskScheduler(&quot;TaskManager-EventLoop&quot;);
+ * final TaskManager lTaskManager = new CoreTaskManager(lConfig, lEventLoop, new EventLoopLockingStrategy(lEventLoop));
+ * lEventLoop.schedule(new Runnable() {
+ *     public void run() {
+ *         lTaskManager.execute(lTask);
+ *     }
+ * });
+ * </pre>
+ *
+ * An exception or an error thrown by a runnable is reported to the uncaught exception handler of the event loop thread, which keeps
+ * running.
+ */
+public class EventLoopTaskScheduler implements TaskScheduler {
+    private final BlockingQueue<Runnable> mQueue;
+    private final Thread mThread;
+    private volatile boolean mRunning;
+
+    /**
+     * Create and start the event loop.
+     *
+     * @param pName Name of the event loop thread.
+     */
+    public EventLoopTaskScheduler(String pName) {
+        super();
+        mQueue = new LinkedBlockingQueue<Runnable>();
+        mRunning = true;
+        mThread = new Thread(new Runnable() {
+            public void run() {
+                loop();
+            }
+        }, pName);
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    @Override
+    public void schedule(Runnable pRunnable) {
+        if (pRunnable == null) throw new NullPointerException("Runnable is null");
+        if (!mRunning) throw new RejectedExecutionException("Event loop has been shut down");
+        mQueue.add(pRunnable);
+    }
+
+    @Override
+    public void scheduleIfNecessary(Runnable pRunnable) {
+        if (isEventLoopThread()) {
+            pRunnable.run();
+        } else {
+            schedule(pRunnable);
+        }
+    }
+
+    /**
+     * @return True if the current thread is the event loop thread.
+     */
+    public boolean isEventLoopThread() {
+        return Thread.currentThread() == mThread;
+    }
+
+    /**
+     * Stop the event loop once the runnable being run, if any, is over. Runnables still queued are discarded.
+     */
+    public void shutdown() {
+        mRunning = false;
+        mThread.interrupt();
+    }
+
+    private void loop() {
+        try {
+            while (mRunning) {
+                Runnable lRunnable;
+                try {
+                    lRunnable = mQueue.take();
+                } catch (InterruptedException eInterruptedException) {
+                    // Event loop has been shut down or interrupted by a runnable. In both cases, the running flag decides.
+                    continue;
+                }
+
+                try {
+                    lRunnable.run();
+                } catch (Throwable eThrowable) {
+                    // Errors too (e.g. an AssertionError or a StackOverflowError in a handler): the event loop is the only thread
+                    // running handlers, if it died, every task would silently stop being notified.
+                    Thread.UncaughtExceptionHandler lHandler = mThread.getUncaughtExceptionHandler();
+                    lHandler.uncaughtException(mThread, eThrowable);
+                }
+            }
+        } finally {
+            // If the loop terminates anyway (e.g. the exception handler fails), new runnables are rejected instead of being lost.
+            mRunning = false;
+            mQueue.clear();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.codexperiments.robolabor.task.core;
+
+/**
+ * Allows changing the way things are synchronized in the code (i.e. everything on a single thread, like the Android UI-Thread or
+ * an event loop, or multi-threaded).
+ */
+public interface LockingStrategy {
+    /**
+     * Called before any TaskManager operation.
+     *
+     * @throws TaskManagerException If the operation is not allowed from the current thread.
+     */
+    void checkCallIsAllowed();
+}
@@ -0,0 +1,10 @@
+package com.codexperiments.robolabor.task.core;
+
+/**
+ * Tasks and handlers can be executed on any threads concurrently.
+ */
+public class MultiThreadLockingStrategy implements LockingStrategy {
+    @Override
+    public void checkCallIsAllowed() {
+    }
+}
@@ -0,0 +1,66 @@
+package com.codexperiments.robolabor.task.core;
+
+import com.codexperiments.robolabor.task.handler.Task;
+import com.codexperiments.robolabor.task.handler.TaskResult;
+
+public class TaskManagerException extends RuntimeException {
+    private static final long serialVersionUID = 1075178581665280357L;
+
+    public TaskManagerException(String pMessage, Object... pArguments) {
+        super(String.format(pMessage, pArguments));
+    }
+
+    public TaskManagerException(Throwable pThrowable, String pMessage, Object... pArguments) {
+        super(String.format(pMessage, pArguments), pThrowable);
+    }
+
+    public static TaskManagerException emitterIdCouldNotBeDetermined(TaskResult<?> pTask) {
+        return new TaskManagerException("Invalid task %1$s : Emitter Id couldn't be bound.", pTask);
+    }
+
+    public static TaskManagerException emitterNotManaged(Object pEmitterId, Object pEmitter) {
+        return new TaskManagerException("A call to manage for emitter %2$s with Id %1$s is missing.", pEmitterId, pEmitter);
+    }
+
+    public static TaskManagerException innerTasksNotAllowed(Task<?> pTask) {
+        return new TaskManagerException("Inner tasks like %1$s not allowed by configuration.", pTask.getClass());
+    }
+
+    public static TaskManagerException internalError() {
+        return internalError(null);
+    }
+
+    public static TaskManagerException internalError(Throwable pThrowable) {
+        return new TaskManagerException(pThrowable, "Internal error inside the TaskManager.");
+    }
+
+    public static TaskManagerException invalidBatchResults(TaskResult<?> pTask, int pTaskCount) {
+        return new TaskManagerException("Batch processed by %1$s must return one result per task (%2$s expected).",
+                                        pTask,
+                                        pTaskCount);
+    }
+
+    public static TaskManagerException invalidEmitterId(Object pEmitterId, Object pEmitter) {
+        return new TaskManagerException("Emitter Id %1$s is invalid for emitter %2$s.", pEmitterId, pEmitter);
+    }
+
+    public static TaskManagerException mustBeExecutedFromEventLoop() {
+        return new TaskManagerException("This method must be executed from the event loop thread only.");
+    }
+
+    public static TaskManagerException notCalledFromTask() {
+        return new TaskManagerException("This operation must be called inside a task.");
+    }
+
+    public static TaskManagerException progressCalledAfterTaskFinished() {
+        return new TaskManagerException("notifyProgress() called after task finished.");
+    }
+
+    public static TaskManagerException taskExecutedFromUnexecutedTask(Object pEmitter) {
+        return new TaskManagerException("Task executed from parent task %1$s that hasn't been executed yet.", pEmitter);
+    }
+
+    public static TaskManagerException unmanagedEmittersNotAllowed(Object pEmitter) {
+        return new TaskManagerException("Unmanaged emitter forbidden by configuration (%1$s).", pEmitter);
+    }
+}
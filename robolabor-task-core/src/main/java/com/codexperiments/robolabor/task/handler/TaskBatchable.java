@@ -0,0 +1,28 @@
+package com.codexperiments.robolabor.task.handler;
+
+import java.util.List;
+
+public interface TaskBatchable<TResult> extends Task<TResult> {
+    /**
+     * Tasks with equal batch keys that are executed within the same batch window (see TaskManagerConfig.resolveBatchWindow()) are
+     * processed together through a single call to onProcessBatch(), instead of one call to onProcess() each. Typically, a batch
+     * key identifies the backend resource the tasks write to (e.g. a database table).
+     * 
+     * @return Key of the batch the task belongs to. Must not be null.
+     */
+    Object getBatchKey();
+
+    /**
+     * Execute a batch of tasks in the background, e.g. several row insertions in a single database transaction. Called on the
+     * first task of the batch, in place of onProcess(), with the same restrictions. Result of each task is then delivered to its
+     * own handler. If an exception is thrown, all the tasks of the batch fail with it.
+     * 
+     * @param pTasks Tasks of the batch, in execution order. Current task is the first one.
+     * @param pNotifier Notifier of the whole batch. Progress is notified to every task of the batch.
+     * @return Result of each task, in the same order as the tasks.
+     * 
+     * @throws Exception If any exception occurs during processing. The exception is forwarded to TaskResult.onFail() of every
+     *             task.
+     */
+    List<TResult> onProcessBatch(List<TaskBatchable<TResult>> pTasks, TaskNotifier pNotifier) throws Exception;
+}
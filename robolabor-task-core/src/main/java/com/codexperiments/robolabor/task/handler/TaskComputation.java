@@ -0,0 +1,14 @@
+package com.codexperiments.robolabor.task.handler;
+
+public interface TaskComputation<TResult> {
+    /**
+     * Execute a part of a task in the background, forked from Task.onProcess() through TaskNotifier.fork(). The same rules as
+     * onProcess() apply. In addition, a computation may run concurrently with other computations of the same task and should thus
+     * not share mutable state with them.
+     * 
+     * @param pNotifier Notifier of the task the computation belongs to. Progress notified here is delivered to the task progress
+     *            handler, aggregated with the progress of the task itself and of its other computations.
+     * @throws Exception If any exception occurs during processing. The exception is rethrown by TaskFork.join().
+     */
+    TResult onCompute(TaskNotifier pNotifier) throws Exception;
+}
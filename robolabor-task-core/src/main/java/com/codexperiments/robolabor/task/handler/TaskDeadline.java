@@ -0,0 +1,15 @@
+package com.codexperiments.robolabor.task.handler;
+
+public interface TaskDeadline
+{
+    /**
+     * Maximum time given to a task to complete, counted from the moment it is executed through the TaskManager (i.e. time spent
+     * waiting for an executor included). When it is exceeded, the task fails with a java.util.concurrent.TimeoutException passed
+     * to onFail(), the thread processing it is interrupted and any result it may return later is ignored.
+     * 
+     * Note that the TaskManagerConfig decides which timeout is finally used. Implementing TaskDeadline is not compulsory.
+     * 
+     * @return Timeout in milliseconds or 0 if task has no deadline.
+     */
+    long getTimeout();
+}
@@ -0,0 +1,18 @@
+package com.codexperiments.robolabor.task.handler;
+
+public interface TaskFork<TResult> {
+    /**
+     * Wait for the forked computation to be over and return its result. If the computation hasn't been started yet by the pool,
+     * it is executed directly by the calling thread. Thus, joining from inside another computation never blocks the pool.
+     * 
+     * @return Result of the computation.
+     * @throws Exception Exception thrown by the computation, if any. A CancellationException is thrown if the task has been
+     *             cancelled before the computation started.
+     */
+    TResult join() throws Exception;
+
+    /**
+     * @return True if the computation is over, whether it succeeded or not.
+     */
+    boolean isDone();
+}
@@ -0,0 +1,26 @@
+package com.codexperiments.robolabor.task.handler;
+
+/**
+ * TODO Pass a progression object.
+ */
+public interface TaskNotifier {
+    void notifyProgress();
+
+    /**
+     * Indicates if the task has been cancelled through TaskManager.cancel(). Long running tasks should check it regularly and
+     * return as soon as possible when it becomes true. Result of a cancelled task is ignored.
+     * 
+     * @return True if the task has been cancelled.
+     */
+    boolean isCancelled();
+
+    /**
+     * Run a part of the task in parallel, on a work-stealing pool shared by all tasks and sized according to the number of cores.
+     * A typical CPU-bound task splits its work into computations, forks them and then joins them all (from the last forked one to
+     * the first one preferably). Computations may themselves fork other computations through the notifier they receive.
+     * 
+     * @param pComputation Computation to run.
+     * @return Handle to join the computation.
+     */
+    <TResult> TaskFork<TResult> fork(TaskComputation<TResult> pComputation);
+}
@@ -0,0 +1,15 @@
+package com.codexperiments.robolabor.task.handler;
+
+public interface TaskPriority
+{
+    /**
+     * Priority of a task. When several tasks are waiting for the same executor, tasks with the highest priority are executed
+     * first. Tasks with the same priority are executed in submission order. Note that priority is only a hint: executors that do
+     * not handle priorities ignore it, and waiting tasks see their priority raised over time so that they are not starved.
+     * 
+     * Note that the TaskManagerConfig decides which priority is finally used. Implementing TaskPriority is not compulsory.
+     * 
+     * @return Priority of the task. Higher values mean higher priorities. Default priority is 0.
+     */
+    int getPriority();
+}
@@ -1,16 +1,19 @@
 package com.codexperiments.robolabor.task.util;
 
+import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.AbstractMap;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
-import android.os.Process;
-
 /**
- * TODO Comments
+ * Map with weakly referenced keys and values, for concurrent use. Entries whose key has been garbage collected are expunged
+ * lazily, each time the map is accessed (like WeakHashMap does), so that no cleanup thread is needed.
+ *
+ * @deprecated The TaskManager now uses {@link WeakIdentityMap}, which compares keys by identity and allocates nothing on lookup.
  */
+@Deprecated
 public class AutoCleanMap<TKey, TValue> extends AbstractMap<TKey, TValue> {
     private ConcurrentHashMap<WeakKey<TKey>, WeakValue<TValue>> mMap;
     private ReferenceQueue<TKey> mQueue;
@@ -18,33 +21,26 @@ public class AutoCleanMap<TKey, TValue> extends AbstractMap<TKey, TValue> {
     public AutoCleanMap(int pCapacity) {
         mMap = new ConcurrentHashMap<WeakKey<TKey>, WeakValue<TValue>>(pCapacity);
         mQueue = new ReferenceQueue<TKey>();
-
-        startCleanup();
     }
 
     public AutoCleanMap() {
         this(16);
     }
 
-    private void startCleanup() {
-        new Thread(new Runnable() {
-            @SuppressWarnings("unchecked")
-            public void run() {
-                Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
-                while (true) {
-                    try {
-                        WeakKey<TKey> lWeakKey = (WeakKey<TKey>) mQueue.remove();
-                        mMap.remove(lWeakKey);
-                    } catch (InterruptedException eInterruptedException) {
-                        // Ignore and retry.
-                    }
-                }
-            }
-        }).start();
+    /**
+     * Remove entries whose key has been garbage collected. Never blocks: only keys already enqueued by the garbage collector are
+     * processed. Cleared keys are still equal to themselves so that they can be found back in the map.
+     */
+    private void expungeStaleEntries() {
+        Reference<? extends TKey> lWeakKey;
+        while ((lWeakKey = mQueue.poll()) != null) {
+            mMap.remove(lWeakKey);
+        }
     }
 
     @Override
     public TValue get(Object pKey) {
+        expungeStaleEntries();
         // We cannot be sure pKey is a TKey. So use a WeakKey<Object> instead of WeakKey<TKey> and type erasure will do the rest.
         WeakValue<TValue> lWeakValue = mMap.get(new WeakKey<Object>(pKey));
         return (lWeakValue != null) ? lWeakValue.get() : null;
@@ -52,6 +48,7 @@ public class AutoCleanMap<TKey, TValue> extends AbstractMap<TKey, TValue> {
 
     @Override
     public TValue put(TKey pKey, TValue pValue) {
+        expungeStaleEntries();
         mMap.put(new WeakKey<TKey>(pKey, mQueue), new WeakValue<TValue>(pValue));
         return pValue;
     }
@@ -0,0 +1,277 @@
+package com.codexperiments.robolabor.task.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import com.codexperiments.robolabor.task.TaskExecutor;
+import com.codexperiments.robolabor.task.handler.TaskPriority;
+
+/**
+ * Executor that limits the number of tasks of each category running concurrently on a shared executor. Tasks in excess wait in
+ * the queue of their category, in submission order, instead of occupying a thread of the shared executor. Thus, a burst of tasks
+ * of one category (e.g. image decoding) can never take all the threads and starve the other categories (e.g. small metadata
+ * requests).
+ *
+ * Typically used from TaskManagerConfig.resolveExecutor(), with the task class or any configuration-defined key as category:
+ *
+ * <pre>
+ * public Executor resolveExecutor(Task&lt;?&gt; pTask) {
+ *     return mBulkheadExecutor.forCategory(pTask.getClass());
+ * }
+ * </pre>
+ *
+ * Categories are expected to be a small, bounded set: their queues are created on demand and kept forever. If the shared executor
+ * handles priorities (see PriorityTaskExecutor), each task is submitted with its own priority.
+ *
+ * Category executors are TaskExecutors: a cancelled task is removed from its queue and a stuck task gives its slot back, along
+ * with its thread if the shared executor is a TaskExecutor too.
+ */
+public class BulkheadExecutor {
+    private final Executor mExecutor;
+    private final int mDefaultLimit;
+    // Bulkheads and limits of each category. Guarded by the bulkhead map.
+    private final Map<Object, Bulkhead> mBulkheads;
+    private final Map<Object, Integer> mLimits;
+
+    /**
+     * @param pExecutor Executor shared by all categories.
+     * @param pDefaultLimit Maximum number of tasks running concurrently for categories without a specific limit. Must be
+     *            positive.
+     */
+    public BulkheadExecutor(Executor pExecutor, int pDefaultLimit) {
+        super();
+        if (pExecutor == null) throw new NullPointerException("Executor is null");
+        if (pDefaultLimit <= 0) throw new IllegalArgumentException("Limit must be positive");
+
+        mExecutor = pExecutor;
+        mDefaultLimit = pDefaultLimit;
+        mBulkheads = new HashMap<Object, Bulkhead>();
+        mLimits = new HashMap<Object, Integer>();
+    }
+
+    /**
+     * Define the maximum number of tasks of a category running concurrently. A lower limit doesn't affect tasks that are already
+     * running. A higher one lets waiting tasks start right away.
+     *
+     * @param pCategory Category of tasks.
+     * @param pLimit Maximum number of tasks running concurrently. Must be positive.
+     */
+    public void setLimit(Object pCategory, int pLimit) {
+        if (pCategory == null) throw new NullPointerException("Category is null");
+        if (pLimit <= 0) throw new IllegalArgumentException("Limit must be positive");
+
+        Bulkhead lBulkhead;
+        synchronized (mBulkheads) {
+            mLimits.put(pCategory, pLimit);
+            lBulkhead = mBulkheads.get(pCategory);
+        }
+        if (lBulkhead != null) {
+            lBulkhead.setLimit(pLimit);
+        }
+    }
+
+    /**
+     * @param pCategory Category of the tasks to execute.
+     * @return Executor running tasks within the limit of the category.
+     */
+    public TaskExecutor forCategory(Object pCategory) {
+        if (pCategory == null) throw new NullPointerException("Category is null");
+
+        synchronized (mBulkheads) {
+            Bulkhead lBulkhead = mBulkheads.get(pCategory);
+            if (lBulkhead == null) {
+                Integer lLimit = mLimits.get(pCategory);
+                lBulkhead = new Bulkhead((lLimit != null) ? lLimit : mDefaultLimit);
+                mBulkheads.put(pCategory, lBulkhead);
+            }
+            return lBulkhead;
+        }
+    }
+
+    /**
+     * Execute a task as soon as its category is below its limit.
+     *
+     * @param pCategory Category of the task.
+     * @param pRunnable Task to execute.
+     */
+    public void execute(Object pCategory, Runnable pRunnable) {
+        forCategory(pCategory).execute(pRunnable);
+    }
+
+    /**
+     * @return Number of tasks of a category that wait for their turn. Mostly useful for debugging purpose.
+     */
+    public int getWaitingCount(Object pCategory) {
+        return ((Bulkhead) forCategory(pCategory)).getWaitingCount();
+    }
+
+    /**
+     * Queue and running count of a category. A task is submitted to the shared executor only when it gets a slot. When it is
+     * over, or released because it is stuck, its slot is handed over directly to the next waiting task, if any.
+     */
+    private final class Bulkhead implements TaskExecutor {
+        // Guarded by the bulkhead itself.
+        private final LinkedList<Runnable> mWaitingRunnables;
+        private final Map<Runnable, Slot> mSlots; // Tasks that own a slot, submitted or running.
+        private int mLimit;
+        private int mRunningCount;
+
+        public Bulkhead(int pLimit) {
+            mWaitingRunnables = new LinkedList<Runnable>();
+            mSlots = new IdentityHashMap<Runnable, Slot>();
+            mLimit = pLimit;
+            mRunningCount = 0;
+        }
+
+        @Override
+        public void execute(Runnable pRunnable) {
+            if (pRunnable == null) throw new NullPointerException("Runnable is null");
+
+            synchronized (this) {
+                if (mRunningCount >= mLimit) {
+                    mWaitingRunnables.addLast(pRunnable);
+                    return;
+                }
+                ++mRunningCount;
+            }
+            submit(pRunnable);
+        }
+
+        /**
+         * Remove a task waiting for a slot or, if it already owns one, from the shared executor queue (provided it is a
+         * TaskExecutor). In the latter case, its slot is handed over.
+         */
+        @Override
+        public boolean remove(Runnable pRunnable) {
+            Slot lSlot;
+            synchronized (this) {
+                for (Iterator<Runnable> lRunnables = mWaitingRunnables.iterator(); lRunnables.hasNext();) {
+                    if (lRunnables.next() == pRunnable) {
+                        lRunnables.remove();
+                        return true;
+                    }
+                }
+                lSlot = mSlots.get(pRunnable);
+            }
+            if ((lSlot != null) && (mExecutor instanceof TaskExecutor) && ((TaskExecutor) mExecutor).remove(lSlot)) {
+                releaseSlot(lSlot);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Hand over the slot of a stuck task to the next waiting task and release the thread running it in the shared executor
+         * (provided it is a TaskExecutor).
+         */
+        @Override
+        public boolean release(Runnable pRunnable, Thread pThread) {
+            Slot lSlot;
+            synchronized (this) {
+                lSlot = mSlots.get(pRunnable);
+            }
+            if ((lSlot == null) || !releaseSlot(lSlot)) return false;
+
+            if (mExecutor instanceof TaskExecutor) {
+                ((TaskExecutor) mExecutor).release(lSlot, pThread);
+            }
+            return true;
+        }
+
+        /**
+         * Submit a task that owns a slot to the shared executor. If the executor rejects it, the slot is released so that the
+         * category is not blocked forever.
+         */
+        private void submit(Runnable pRunnable) {
+            Slot lSlot = new Slot(pRunnable);
+            synchronized (this) {
+                mSlots.put(pRunnable, lSlot);
+            }
+            try {
+                mExecutor.execute(lSlot);
+            } catch (RuntimeException eRuntimeException) {
+                releaseSlot(lSlot);
+                throw eRuntimeException;
+            }
+        }
+
+        /**
+         * Hand over a slot to the next waiting task, or release it if none is waiting or if the limit has been lowered. A slot is
+         * released once only, whether its task is over, removed or stuck.
+         * 
+         * @return True if the slot has been released, false if it was already.
+         */
+        private boolean releaseSlot(Slot pSlot) {
+            Runnable lNextRunnable = null;
+            synchronized (this) {
+                if (pSlot.mReleased) return false;
+                pSlot.mReleased = true;
+                if (mSlots.get(pSlot.mRunnable) == pSlot) {
+                    mSlots.remove(pSlot.mRunnable);
+                }
+
+                if ((mRunningCount <= mLimit) && !mWaitingRunnables.isEmpty()) {
+                    lNextRunnable = mWaitingRunnables.removeFirst();
+                } else {
+                    --mRunningCount;
+                }
+            }
+            if (lNextRunnable != null) {
+                submit(lNextRunnable);
+            }
+            return true;
+        }
+
+        public void setLimit(int pLimit) {
+            // Start waiting tasks that fit in the new limit.
+            List<Runnable> lStartedRunnables = new ArrayList<Runnable>();
+            synchronized (this) {
+                mLimit = pLimit;
+                while ((mRunningCount < mLimit) && !mWaitingRunnables.isEmpty()) {
+                    lStartedRunnables.add(mWaitingRunnables.removeFirst());
+                    ++mRunningCount;
+                }
+            }
+            for (Runnable lRunnable : lStartedRunnables) {
+                submit(lRunnable);
+            }
+        }
+
+        public synchronized int getWaitingCount() {
+            return mWaitingRunnables.size();
+        }
+
+        /**
+         * A task that owns a slot of the bulkhead. Slot is released once the task is over, whatever its outcome.
+         */
+        private final class Slot implements Runnable, TaskPriority {
+            private final Runnable mRunnable;
+            private boolean mReleased; // Guarded by the bulkhead.
+
+            public Slot(Runnable pRunnable) {
+                mRunnable = pRunnable;
+                mReleased = false;
+            }
+
+            @Override
+            public int getPriority() {
+                return (mRunnable instanceof TaskPriority) ? ((TaskPriority) mRunnable).getPriority()
+                                : PriorityTaskExecutor.DEFAULT_PRIORITY;
+            }
+
+            public void run() {
+                try {
+                    mRunnable.run();
+                } finally {
+                    releaseSlot(this);
+                }
+            }
+        }
+    }
+}
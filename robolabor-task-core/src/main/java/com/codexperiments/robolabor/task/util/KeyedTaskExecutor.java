@@ -0,0 +1,252 @@
+package com.codexperiments.robolabor.task.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import com.codexperiments.robolabor.task.TaskExecutor;
+import com.codexperiments.robolabor.task.handler.TaskPriority;
+
+/**
+ * Executor that runs tasks sharing the same key strictly in submission order, one at a time, while tasks with different keys run
+ * in parallel on a shared executor. No thread is dedicated to a key: a key only has a queue while some of its tasks are waiting
+ * or running, and each task of a queue is submitted to the shared executor once the previous one is over.
+ *
+ * Typically used from TaskManagerConfig.resolveExecutor(), e.g. to run all the tasks related to one account in order:
+ *
+ * <pre>
+ * public Executor resolveExecutor(Task&lt;?&gt; pTask) {
+ *     return mKeyedExecutor.forKey(((AccountTask) pTask).getAccountId());
+ * }
+ * </pre>
+ *
+ * If the shared executor handles priorities (see PriorityTaskExecutor), each task is submitted with its own priority. Key
+ * executors are TaskExecutors: a cancelled task is removed from its queue and a stuck task lets its key move on.
+ */
+public class KeyedTaskExecutor {
+    private final Executor mExecutor;
+    // Queues of the keys that have tasks waiting or running. Guarded by the map itself.
+    private final Map<Object, KeyQueue> mQueues;
+
+    /**
+     * @param pExecutor Executor shared by all keys. Its parallelism bounds the number of keys processed concurrently.
+     */
+    public KeyedTaskExecutor(Executor pExecutor) {
+        super();
+        if (pExecutor == null) throw new NullPointerException("Executor is null");
+
+        mExecutor = pExecutor;
+        mQueues = new HashMap<Object, KeyQueue>();
+    }
+
+    /**
+     * @param pKey Key of the tasks to execute. Tasks with a null key are not ordered at all.
+     * @return Executor running tasks in order with any other task of the same key.
+     */
+    public TaskExecutor forKey(final Object pKey) {
+        return new TaskExecutor() {
+            public void execute(Runnable pRunnable) {
+                KeyedTaskExecutor.this.execute(pKey, pRunnable);
+            }
+
+            public boolean remove(Runnable pRunnable) {
+                return KeyedTaskExecutor.this.remove(pKey, pRunnable);
+            }
+
+            public boolean release(Runnable pRunnable, Thread pThread) {
+                return KeyedTaskExecutor.this.release(pKey, pRunnable, pThread);
+            }
+        };
+    }
+
+    /**
+     * Execute a task after all the previously submitted tasks with the same key.
+     *
+     * @param pKey Key of the task. If null, task is submitted directly to the shared executor.
+     * @param pRunnable Task to execute.
+     */
+    public void execute(Object pKey, Runnable pRunnable) {
+        if (pRunnable == null) throw new NullPointerException("Runnable is null");
+        if (pKey == null) {
+            mExecutor.execute(pRunnable);
+            return;
+        }
+
+        KeyTask lKeyTask;
+        synchronized (mQueues) {
+            KeyQueue lQueue = mQueues.get(pKey);
+            if (lQueue != null) {
+                // A task with the same key is already waiting or running. It will submit the new one when over.
+                lQueue.mRunnables.addLast(pRunnable);
+                return;
+            }
+            lQueue = new KeyQueue(pKey);
+            lKeyTask = new KeyTask(lQueue, pRunnable);
+            lQueue.mHead = lKeyTask;
+            mQueues.put(pKey, lQueue);
+        }
+        submit(lKeyTask);
+    }
+
+    /**
+     * Remove a task that hasn't started yet. If it is the next one of its key and is already submitted, it is removed from the
+     * shared executor queue (provided it is a TaskExecutor) and the key moves on to the following task.
+     *
+     * @param pKey Key of the task.
+     * @param pRunnable Task to remove.
+     * @return True if the task has been removed and will never run, false otherwise.
+     */
+    public boolean remove(Object pKey, Runnable pRunnable) {
+        if (pKey == null) {
+            return (mExecutor instanceof TaskExecutor) && ((TaskExecutor) mExecutor).remove(pRunnable);
+        }
+
+        KeyTask lHead;
+        synchronized (mQueues) {
+            KeyQueue lQueue = mQueues.get(pKey);
+            if (lQueue == null) return false;
+            for (Iterator<Runnable> lRunnables = lQueue.mRunnables.iterator(); lRunnables.hasNext();) {
+                if (lRunnables.next() == pRunnable) {
+                    lRunnables.remove();
+                    return true;
+                }
+            }
+            lHead = lQueue.mHead;
+        }
+        if ((lHead.mRunnable == pRunnable) && (mExecutor instanceof TaskExecutor) && ((TaskExecutor) mExecutor).remove(lHead)) {
+            next(lHead);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stop waiting for a stuck task: the next task of its key is submitted right away and the thread running the stuck task is
+     * released in the shared executor (provided it is a TaskExecutor). Tasks of the key are thus not ordered anymore with
+     * respect to the stuck task.
+     *
+     * @param pKey Key of the task.
+     * @param pRunnable Running task.
+     * @param pThread Thread running the task.
+     * @return True if the task was the running task of its key, false otherwise.
+     */
+    public boolean release(Object pKey, Runnable pRunnable, Thread pThread) {
+        if (pKey == null) {
+            return (mExecutor instanceof TaskExecutor) && ((TaskExecutor) mExecutor).release(pRunnable, pThread);
+        }
+
+        KeyTask lHead;
+        synchronized (mQueues) {
+            KeyQueue lQueue = mQueues.get(pKey);
+            if ((lQueue == null) || (lQueue.mHead.mRunnable != pRunnable)) return false;
+            lHead = lQueue.mHead;
+        }
+        if (!next(lHead)) return false;
+
+        if (mExecutor instanceof TaskExecutor) {
+            ((TaskExecutor) mExecutor).release(lHead, pThread);
+        }
+        return true;
+    }
+
+    /**
+     * @return Number of keys that have tasks waiting or running. Mostly useful for debugging purpose.
+     */
+    public int getActiveKeyCount() {
+        synchronized (mQueues) {
+            return mQueues.size();
+        }
+    }
+
+    /**
+     * Submit the head of a queue to the shared executor. If the executor rejects it, the key is released so that later tasks
+     * with the same key are not blocked forever.
+     */
+    private void submit(KeyTask pKeyTask) {
+        try {
+            mExecutor.execute(pKeyTask);
+        } catch (RuntimeException eRuntimeException) {
+            synchronized (mQueues) {
+                if (mQueues.get(pKeyTask.mQueue.mKey) == pKeyTask.mQueue) {
+                    mQueues.remove(pKeyTask.mQueue.mKey);
+                }
+            }
+            throw eRuntimeException;
+        }
+    }
+
+    /**
+     * Move a key on to its next task once its head task is over, removed or released. Done once only per head task.
+     *
+     * @return True if the key has moved on, false if it already had.
+     */
+    private boolean next(KeyTask pHead) {
+        KeyTask lNextTask = null;
+        synchronized (mQueues) {
+            if (pHead.mDone) return false;
+            pHead.mDone = true;
+
+            KeyQueue lQueue = pHead.mQueue;
+            if (lQueue.mRunnables.isEmpty()) {
+                if (mQueues.get(lQueue.mKey) == lQueue) {
+                    mQueues.remove(lQueue.mKey);
+                }
+            } else {
+                lNextTask = new KeyTask(lQueue, lQueue.mRunnables.removeFirst());
+                lQueue.mHead = lNextTask;
+            }
+        }
+        // Submit the next task instead of running it right away so that other keys get their share of the executor.
+        if (lNextTask != null) {
+            submit(lNextTask);
+        }
+        return true;
+    }
+
+    /**
+     * Tasks of a key. The head task is the one submitted to the shared executor or running. Others wait for their turn.
+     */
+    private static final class KeyQueue {
+        private final Object mKey;
+        // Guarded by mQueues.
+        private KeyTask mHead;
+        private final LinkedList<Runnable> mRunnables;
+
+        public KeyQueue(Object pKey) {
+            mKey = pKey;
+            mHead = null;
+            mRunnables = new LinkedList<Runnable>();
+        }
+    }
+
+    /**
+     * Head task of a key, as submitted to the shared executor. Once over, the key moves on to its next task.
+     */
+    private final class KeyTask implements Runnable, TaskPriority {
+        private final KeyQueue mQueue;
+        private final Runnable mRunnable;
+        private boolean mDone; // Guarded by mQueues.
+
+        public KeyTask(KeyQueue pQueue, Runnable pRunnable) {
+            mQueue = pQueue;
+            mRunnable = pRunnable;
+            mDone = false;
+        }
+
+        @Override
+        public int getPriority() {
+            return (mRunnable instanceof TaskPriority) ? ((TaskPriority) mRunnable).getPriority()
+                            : PriorityTaskExecutor.DEFAULT_PRIORITY;
+        }
+
+        public void run() {
+            try {
+                mRunnable.run();
+            } finally {
+                next(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package com.codexperiments.robolabor.task.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.codexperiments.robolabor.task.TaskExecutor;
+import com.codexperiments.robolabor.task.handler.TaskPriority;
+
+/**
+ * Executor that runs tasks by priority on a fixed number of threads. Each priority has its own lane in which tasks are queued in
+ * submission order. When a thread becomes available, it picks the head of the lane with the highest effective priority, i.e. the
+ * priority of the task raised by one for each aging period spent in the queue. Thus, low priority tasks always end up being
+ * executed, even when higher priority tasks keep coming (no starvation).
+ *
+ * Priority of a Runnable is read from the TaskPriority interface if implemented, or is TaskPriority default priority (i.e. 0)
+ * otherwise (tasks submitted through submit() keep their priority). Threads are started lazily, when tasks are submitted, and are
+ * stopped only when the executor is shut down. A thread stuck in a task can however be released (see releaseWorker()): it is
+ * replaced immediately and stops once its task is over. Released threads are not waited for on termination.
+ */
+public class PriorityTaskExecutor extends AbstractExecutorService implements TaskExecutor {
+    public static final int DEFAULT_PRIORITY = 0;
+
+    private final int mThreadCount;
+    private final long mAgingPeriod; // In nanoseconds.
+    private final ThreadFactory mThreadFactory;
+
+    // Lanes indexed by priority, from the highest to the lowest. Empty lanes are removed. Lanes and counters are all guarded by
+    // the lanes map itself.
+    private final TreeMap<Integer, LinkedList<QueuedTask>> mLanes;
+    private final Set<Thread> mWorkerThreads;
+    private int mStartedThreadCount;
+    private int mIdleThreadCount;
+    // Idle threads notified but not awake yet. They are not available anymore to the tasks submitted meanwhile.
+    private int mWakeUpCount;
+    private boolean mShutdown;
+    // Counted down once shut down and once all the workers have stopped.
+    private final CountDownLatch mTerminated;
+
+    /**
+     * @param pThreadCount Number of threads running tasks concurrently.
+     * @param pAgingPeriodMillis Waiting time after which the priority of a queued task is raised by one. Must be positive.
+     * @param pThreadFactory Factory creating worker threads.
+     */
+    public PriorityTaskExecutor(int pThreadCount, long pAgingPeriodMillis, ThreadFactory pThreadFactory) {
+        super();
+        if (pThreadCount <= 0) throw new IllegalArgumentException("Thread count must be positive");
+        if (pAgingPeriodMillis <= 0) throw new IllegalArgumentException("Aging period must be positive");
+        if (pThreadFactory == null) throw new NullPointerException("ThreadFactory is null");
+
+        mThreadCount = pThreadCount;
+        mAgingPeriod = pAgingPeriodMillis * 1000000L;
+        mThreadFactory = pThreadFactory;
+
+        mLanes = new TreeMap<Integer, LinkedList<QueuedTask>>(Collections.reverseOrder());
+        mWorkerThreads = new HashSet<Thread>();
+        mStartedThreadCount = 0;
+        mIdleThreadCount = 0;
+        mWakeUpCount = 0;
+        mShutdown = false;
+        mTerminated = new CountDownLatch(1);
+    }
+
+    @Override
+    public void execute(Runnable pRunnable) {
+        if (pRunnable == null) throw new NullPointerException("Runnable is null");
+
+        int lPriority = (pRunnable instanceof TaskPriority) ? ((TaskPriority) pRunnable).getPriority() : DEFAULT_PRIORITY;
+        QueuedTask lQueuedTask = new QueuedTask(pRunnable, lPriority, System.nanoTime());
+        boolean lStartThread = false;
+        synchronized (mLanes) {
+            if (mShutdown) throw new RejectedExecutionException("Executor has been shut down");
+            LinkedList<QueuedTask> lLane = mLanes.get(lPriority);
+            if (lLane == null) {
+                lLane = new LinkedList<QueuedTask>();
+                mLanes.put(lPriority, lLane);
+            }
+            lLane.addLast(lQueuedTask);
+
+            if (mIdleThreadCount > mWakeUpCount) {
+                ++mWakeUpCount;
+                mLanes.notify();
+            } else if (mStartedThreadCount < mThreadCount) {
+                ++mStartedThreadCount;
+                lStartThread = true;
+            }
+        }
+        // Thread is started outside of the lock since thread creation can be slow.
+        if (lStartThread) {
+            startWorker();
+        }
+    }
+
+    /**
+     * Remove a task from the queue if it hasn't started yet. Useful to keep the queue short when tasks get cancelled.
+     *
+     * @param pRunnable Task to remove.
+     * @return True if the task was waiting and has been removed, false otherwise.
+     */
+    @Override
+    public boolean remove(Runnable pRunnable) {
+        synchronized (mLanes) {
+            for (Iterator<LinkedList<QueuedTask>> lLanes = mLanes.values().iterator(); lLanes.hasNext();) {
+                LinkedList<QueuedTask> lLane = lLanes.next();
+                for (Iterator<QueuedTask> lQueuedTasks = lLane.iterator(); lQueuedTasks.hasNext();) {
+                    if (lQueuedTasks.next().mRunnable == pRunnable) {
+                        lQueuedTasks.remove();
+                        if (lLane.isEmpty()) lLanes.remove();
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stop accepting new tasks. Tasks already queued are still executed, after which workers stop.
+     */
+    @Override
+    public void shutdown() {
+        boolean lTerminated;
+        synchronized (mLanes) {
+            mShutdown = true;
+            lTerminated = (mStartedThreadCount == 0);
+            // Idle workers wake up and stop since there is nothing left to do.
+            mLanes.notifyAll();
+        }
+        if (lTerminated) mTerminated.countDown();
+    }
+
+    /**
+     * Stop accepting new tasks, discard queued tasks and interrupt the running ones.
+     *
+     * @return Tasks that were queued and will never run.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> lQueuedRunnables = new ArrayList<Runnable>();
+        synchronized (mLanes) {
+            for (LinkedList<QueuedTask> lLane : mLanes.values()) {
+                for (QueuedTask lQueuedTask : lLane) {
+                    lQueuedRunnables.add(lQueuedTask.mRunnable);
+                }
+            }
+            mLanes.clear();
+            for (Thread lWorkerThread : mWorkerThreads) {
+                lWorkerThread.interrupt();
+            }
+        }
+        shutdown();
+        return lQueuedRunnables;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        synchronized (mLanes) {
+            return mShutdown;
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return mTerminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long pTimeout, TimeUnit pUnit) throws InterruptedException {
+        return mTerminated.await(pTimeout, pUnit);
+    }
+
+    /**
+     * Keep the priority of tasks submitted through submit() or invokeAll(), which are wrapped in a Future.
+     */
+    @Override
+    protected <TResult> RunnableFuture<TResult> newTaskFor(Runnable pRunnable, TResult pValue) {
+        return new PriorityFutureTask<TResult>(pRunnable, pValue);
+    }
+
+    /**
+     * Release the worker thread running a task. See releaseWorker().
+     */
+    @Override
+    public boolean release(Runnable pRunnable, Thread pThread) {
+        return releaseWorker(pThread);
+    }
+
+    private void startWorker() {
+        mThreadFactory.newThread(new Worker()).start();
+    }
+
+    /**
+     * Stop counting a worker thread as part of the pool, typically because its task exceeded its deadline and doesn't respond to
+     * interruption. Another worker is started if tasks are waiting, so that they are not blocked behind the stuck one. The
+     * released thread stops as soon as its current task is over.
+     *
+     * @param pThread Worker thread to release.
+     * @return True if thread was a worker of this executor, false otherwise (e.g. already released or not a worker).
+     */
+    public boolean releaseWorker(Thread pThread) {
+        synchronized (mLanes) {
+            if (!mWorkerThreads.remove(pThread)) return false;
+        }
+        onWorkerLost();
+        return true;
+    }
+
+    /**
+     * Called when a worker stops, either because it has been released or because of an uncaught exception.
+     */
+    private void onWorkerExit(Thread pThread) {
+        synchronized (mLanes) {
+            // Released workers are not counted anymore.
+            if (!mWorkerThreads.remove(pThread)) return;
+        }
+        onWorkerLost();
+    }
+
+    /**
+     * Forget a worker that is not part of the pool anymore. Another worker is started if tasks are still waiting.
+     */
+    private void onWorkerLost() {
+        boolean lStartThread = false;
+        boolean lTerminated = false;
+        synchronized (mLanes) {
+            --mStartedThreadCount;
+            if (!mLanes.isEmpty() && (mIdleThreadCount <= mWakeUpCount)) {
+                ++mStartedThreadCount;
+                lStartThread = true;
+            } else {
+                lTerminated = mShutdown && (mStartedThreadCount == 0);
+            }
+        }
+        if (lStartThread) {
+            startWorker();
+        } else if (lTerminated) {
+            mTerminated.countDown();
+        }
+    }
+
+    private boolean isWorker(Thread pThread) {
+        synchronized (mLanes) {
+            return mWorkerThreads.contains(pThread);
+        }
+    }
+
+    /**
+     * Wait for a task to execute and remove it from its lane.
+     *
+     * @return Next task to execute according to effective priorities or null if the executor is shut down and has nothing left to
+     *         execute.
+     */
+    private Runnable take() throws InterruptedException {
+        synchronized (mLanes) {
+            while (mLanes.isEmpty()) {
+                if (mShutdown) return null;
+                ++mIdleThreadCount;
+                try {
+                    mLanes.wait();
+                } finally {
+                    --mIdleThreadCount;
+                    // Thread may also wake up because of an interruption or spuriously. The pending wake-up is consumed anyway.
+                    if (mWakeUpCount > 0) --mWakeUpCount;
+                }
+            }
+
+            // The head of each lane is its oldest task and thus the one with the highest effective priority in the lane. Lanes
+            // are visited from the highest priority to the lowest, so that ties are won by the highest base priority.
+            long lNow = System.nanoTime();
+            LinkedList<QueuedTask> lSelectedLane = null;
+            long lSelectedPriority = Long.MIN_VALUE;
+            for (LinkedList<QueuedTask> lLane : mLanes.values()) {
+                long lEffectivePriority = lLane.getFirst().effectivePriority(lNow, mAgingPeriod);
+                if (lEffectivePriority > lSelectedPriority) {
+                    lSelectedLane = lLane;
+                    lSelectedPriority = lEffectivePriority;
+                }
+            }
+
+            QueuedTask lQueuedTask = lSelectedLane.removeFirst();
+            if (lSelectedLane.isEmpty()) {
+                mLanes.remove(lQueuedTask.mPriority);
+            }
+            return lQueuedTask.mRunnable;
+        }
+    }
+
+    /**
+     * @return Number of tasks waiting for a thread, per priority. Mostly useful for debugging purpose.
+     */
+    public Map<Integer, Integer> getQueuedCounts() {
+        TreeMap<Integer, Integer> lQueuedCounts = new TreeMap<Integer, Integer>();
+        synchronized (mLanes) {
+            for (Map.Entry<Integer, LinkedList<QueuedTask>> lLane : mLanes.entrySet()) {
+                lQueuedCounts.put(lLane.getKey(), lLane.getValue().size());
+            }
+        }
+        return lQueuedCounts;
+    }
+
+    /**
+     * Runs queued tasks until released or shut down. If a task fails with an uncaught exception, its worker dies (and the exception reaches
+     * the thread uncaught exception handler) but is replaced.
+     */
+    private class Worker implements Runnable {
+        public void run() {
+            Thread lThread = Thread.currentThread();
+            synchronized (mLanes) {
+                mWorkerThreads.add(lThread);
+            }
+
+            try {
+                while (isWorker(lThread)) {
+                    Runnable lRunnable;
+                    try {
+                        lRunnable = take();
+                    } catch (InterruptedException eInterruptedException) {
+                        // Ignore and retry. Workers only stop once there is nothing left to execute after shutdown.
+                        continue;
+                    }
+                    if (lRunnable == null) break;
+
+                    lRunnable.run();
+                    // Clear the interrupted flag so that it doesn't leak into the next task.
+                    Thread.interrupted();
+                }
+            } finally {
+                onWorkerExit(lThread);
+            }
+        }
+    }
+
+    private static final class PriorityFutureTask<TResult> extends FutureTask<TResult> implements TaskPriority {
+        private final int mPriority;
+
+        public PriorityFutureTask(Runnable pRunnable, TResult pValue) {
+            super(pRunnable, pValue);
+            mPriority = (pRunnable instanceof TaskPriority) ? ((TaskPriority) pRunnable).getPriority() : DEFAULT_PRIORITY;
+        }
+
+        @Override
+        public int getPriority() {
+            return mPriority;
+        }
+    }
+
+    private static final class QueuedTask {
+        private final Runnable mRunnable;
+        private final int mPriority;
+        private final long mQueueTime;
+
+        public QueuedTask(Runnable pRunnable, int pPriority, long pQueueTime) {
+            mRunnable = pRunnable;
+            mPriority = pPriority;
+            mQueueTime = pQueueTime;
+        }
+
+        public long effectivePriority(long pNow, long pAgingPeriod) {
+            return mPriority + ((pNow - mQueueTime) / pAgingPeriod);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.codexperiments.robolabor.task.util;
+
+import java.util.LinkedList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.codexperiments.robolabor.task.handler.TaskComputation;
+import com.codexperiments.robolabor.task.handler.TaskFork;
+import com.codexperiments.robolabor.task.handler.TaskNotifier;
+
+/**
+ * Work-stealing pool running the computations forked by tasks (see TaskNotifier.fork()). Each worker has its own queue: a
+ * computation forked from a worker is pushed to the tail of its queue and the worker takes its most recent computation first
+ * (which is likely to be hot in cache and small). An idle worker steals the oldest computation of another worker (which is likely
+ * to be the biggest). Computations forked from outside the pool (e.g. directly from Task.onProcess()) go to a shared queue.
+ *
+ * Joining a computation that no worker has started yet executes it on the joining thread. Otherwise, the joining thread waits
+ * for the thread that runs it. Thus, a join never waits for a computation stuck in a queue and nested forks cannot deadlock.
+ *
+ * This is a lightweight equivalent of java.util.concurrent.ForkJoinPool, which is not available on older Android versions.
+ * Workers are daemon threads started lazily and never stopped.
+ */
+public class TaskForkPool {
+    private static final TaskForkPool INSTANCE = new TaskForkPool(Runtime.getRuntime().availableProcessors());
+
+    private final Worker[] mWorkers;
+    // Computations forked from outside the pool. Guarded by the queue itself.
+    private final LinkedList<Fork<?>> mSubmissions;
+    // Number of computations in all the queues, including computations already executed by a join but not removed yet.
+    private final AtomicInteger mQueuedCount;
+    // Idle workers wait on this lock. Idle count and started flag are guarded by it.
+    private final Object mIdleLock;
+    private int mIdleCount;
+    private boolean mStarted;
+
+    /**
+     * @return Pool shared by the whole process, with one worker per core.
+     */
+    public static TaskForkPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param pWorkerCount Number of worker threads. Must be positive.
+     */
+    public TaskForkPool(int pWorkerCount) {
+        super();
+        if (pWorkerCount <= 0) throw new IllegalArgumentException("Worker count must be positive");
+
+        mWorkers = new Worker[pWorkerCount];
+        for (int i = 0; i < pWorkerCount; ++i) {
+            mWorkers[i] = new Worker(i);
+        }
+        mSubmissions = new LinkedList<Fork<?>>();
+        mQueuedCount = new AtomicInteger(0);
+        mIdleLock = new Object();
+        mIdleCount = 0;
+        mStarted = false;
+    }
+
+    /**
+     * Fork a computation.
+     *
+     * @param pComputation Computation to run.
+     * @param pNotifier Notifier of the task the computation belongs to.
+     * @return Handle to join the computation.
+     */
+    public <TResult> TaskFork<TResult> fork(TaskComputation<TResult> pComputation, TaskNotifier pNotifier) {
+        if (pComputation == null) throw new NullPointerException("Computation is null");
+
+        Fork<TResult> lFork = new Fork<TResult>(pComputation, pNotifier);
+        Worker lWorker = currentWorker();
+        if (lWorker != null) {
+            synchronized (lWorker.mQueue) {
+                lWorker.mQueue.addLast(lFork);
+            }
+        } else {
+            synchronized (mSubmissions) {
+                mSubmissions.addLast(lFork);
+            }
+        }
+        mQueuedCount.incrementAndGet();
+
+        synchronized (mIdleLock) {
+            if (!mStarted) {
+                mStarted = true;
+                for (Worker lStartedWorker : mWorkers) {
+                    Thread lThread = new Thread(lStartedWorker, "TaskForkPool-" + lStartedWorker.mIndex);
+                    lThread.setDaemon(true);
+                    lThread.start();
+                }
+            } else if (mIdleCount > 0) {
+                mIdleLock.notify();
+            }
+        }
+        return lFork;
+    }
+
+    /**
+     * @return Worker running on the current thread or null if current thread is not a worker of this pool.
+     */
+    private Worker currentWorker() {
+        Thread lThread = Thread.currentThread();
+        for (Worker lWorker : mWorkers) {
+            if (lWorker.mThread == lThread) return lWorker;
+        }
+        return null;
+    }
+
+    /**
+     * Take the next computation to run for a worker: its own most recent one, then the oldest submitted one, then the oldest one
+     * of another worker.
+     *
+     * @return Computation to run or null if all queues are empty.
+     */
+    private Fork<?> take(Worker pWorker) {
+        Fork<?> lFork;
+        synchronized (pWorker.mQueue) {
+            lFork = pWorker.mQueue.isEmpty() ? null : pWorker.mQueue.removeLast();
+        }
+        if (lFork == null) {
+            synchronized (mSubmissions) {
+                lFork = mSubmissions.poll();
+            }
+        }
+        // Start stealing from the next worker so that victims are spread evenly.
+        for (int i = 1; (lFork == null) && (i < mWorkers.length); ++i) {
+            Worker lVictim = mWorkers[(pWorker.mIndex + i) % mWorkers.length];
+            synchronized (lVictim.mQueue) {
+                lFork = lVictim.mQueue.poll();
+            }
+        }
+
+        if (lFork != null) {
+            mQueuedCount.decrementAndGet();
+        }
+        return lFork;
+    }
+
+    private final class Worker implements Runnable {
+        private final int mIndex;
+        // Guarded by the queue itself.
+        private final LinkedList<Fork<?>> mQueue;
+        private volatile Thread mThread;
+
+        public Worker(int pIndex) {
+            mIndex = pIndex;
+            mQueue = new LinkedList<Fork<?>>();
+        }
+
+        public void run() {
+            mThread = Thread.currentThread();
+            while (true) {
+                Fork<?> lFork = take(this);
+                if (lFork != null) {
+                    // Computation may have been executed meanwhile by a join, in which case it is simply skipped.
+                    lFork.tryRun();
+                    // Clear the interrupted flag so that it doesn't leak into the next computation.
+                    Thread.interrupted();
+                } else {
+                    synchronized (mIdleLock) {
+                        // A computation may have been forked since queues have been checked.
+                        if (mQueuedCount.get() == 0) {
+                            ++mIdleCount;
+                            try {
+                                mIdleLock.wait();
+                            } catch (InterruptedException eInterruptedException) {
+                                // Ignore and retry. Workers are never stopped.
+                            } finally {
+                                --mIdleCount;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A forked computation, executed once only, either by a worker or by the thread that joins it.
+     */
+    private static final class Fork<TResult> implements TaskFork<TResult> {
+        private static final int STATE_NEW = 0;
+        private static final int STATE_RUNNING = 1;
+        private static final int STATE_DONE = 2;
+
+        private final TaskComputation<TResult> mComputation;
+        private final TaskNotifier mNotifier;
+        private final AtomicInteger mState;
+        // Written before state becomes STATE_DONE (under the fork lock) and read after.
+        private TResult mResult;
+        private Throwable mThrowable;
+
+        public Fork(TaskComputation<TResult> pComputation, TaskNotifier pNotifier) {
+            mComputation = pComputation;
+            mNotifier = pNotifier;
+            mState = new AtomicInteger(STATE_NEW);
+            mResult = null;
+            mThrowable = null;
+        }
+
+        /**
+         * Run the computation on the current thread if nobody has started it yet.
+         *
+         * @return True if the computation has been run by the current thread.
+         */
+        public boolean tryRun() {
+            if (!mState.compareAndSet(STATE_NEW, STATE_RUNNING)) return false;
+
+            TResult lResult = null;
+            Throwable lThrowable = null;
+            try {
+                // Computations of a cancelled task are not worth running.
+                if ((mNotifier != null) && mNotifier.isCancelled()) {
+                    throw new CancellationException("Task cancelled");
+                }
+                lResult = mComputation.onCompute(mNotifier);
+            }
+            // Errors are rethrown by join() too, so that they don't kill the worker that happens to run the computation.
+            catch (Throwable eThrowable) {
+                lThrowable = eThrowable;
+            } finally {
+                synchronized (this) {
+                    mResult = lResult;
+                    mThrowable = lThrowable;
+                    mState.set(STATE_DONE);
+                    notifyAll();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public TResult join() throws Exception {
+            if (!tryRun()) {
+                synchronized (this) {
+                    while (mState.get() != STATE_DONE) {
+                        wait();
+                    }
+                }
+            }
+
+            synchronized (this) {
+                if (mThrowable instanceof Error) throw (Error) mThrowable;
+                if (mThrowable != null) throw (Exception) mThrowable;
+                return mResult;
+            }
+        }
+
+        @Override
+        public boolean isDone() {
+            return mState.get() == STATE_DONE;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.codexperiments.robolabor.task.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.codexperiments.robolabor.task.id.TaskId;
+
+/**
+ * Size-bounded cache of task results, indexed by TaskId. Once the cache is full, the least recently used result is evicted. A
+ * result also expires after a time-to-live, after which the task must be executed again. Only successful results are cached
+ * (failures are never).
+ *
+ * Typically returned from TaskManagerConfig.resolveResultCache() for identifiable tasks whose result can be reused for a while,
+ * e.g. a task loading the content of a detail screen. A task whose result is in the cache is not executed: its result is
+ * delivered directly to its handlers. Tasks with the same TaskId are expected to return results of the same type.
+ */
+public class TaskResultCache {
+    private final int mMaxSize;
+    private final long mTimeToLive; // In nanoseconds.
+
+    // Entries in access order, from the least recently used to the most recently used. Entries and counters are all guarded by
+    // the cache itself.
+    private final LinkedHashMap<TaskId, Entry> mEntries;
+    private long mHitCount;
+    private long mMissCount;
+
+    /**
+     * @param pMaxSize Maximum number of results kept in the cache. Must be positive.
+     * @param pTimeToLiveMillis Time after which a result expires. Must be positive.
+     */
+    public TaskResultCache(int pMaxSize, long pTimeToLiveMillis) {
+        super();
+        if (pMaxSize <= 0) throw new IllegalArgumentException("Max size must be positive");
+        if (pTimeToLiveMillis <= 0) throw new IllegalArgumentException("Time-to-live must be positive");
+
+        mMaxSize = pMaxSize;
+        mTimeToLive = pTimeToLiveMillis * 1000000L;
+        // Inside the LinkedHashMap subclass, Entry means the inherited Map.Entry: the cache entry must be qualified.
+        mEntries = new LinkedHashMap<TaskId, TaskResultCache.Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TaskId, TaskResultCache.Entry> pEldest) {
+                return size() > mMaxSize;
+            }
+        };
+        mHitCount = 0;
+        mMissCount = 0;
+    }
+
+    /**
+     * Find a fresh result in the cache. An expired result is removed and considered as a miss.
+     *
+     * @param pTaskId Id of the task the result of which is needed.
+     * @return Cache entry holding the result (which may be null) or null if no fresh result is cached.
+     */
+    public synchronized Entry get(TaskId pTaskId) {
+        Entry lEntry = mEntries.get(pTaskId);
+        if ((lEntry != null) && (lEntry.mExpirationTime - System.nanoTime() <= 0)) {
+            mEntries.remove(pTaskId);
+            lEntry = null;
+        }
+
+        if (lEntry != null) {
+            ++mHitCount;
+        } else {
+            ++mMissCount;
+        }
+        return lEntry;
+    }
+
+    /**
+     * Cache the result of a task. Replaces any previous result and restarts its time-to-live.
+     *
+     * @param pTaskId Id of the task.
+     * @param pResult Result of the task. May be null.
+     */
+    public synchronized void put(TaskId pTaskId, Object pResult) {
+        if (pTaskId == null) throw new NullPointerException("TaskId is null");
+        mEntries.put(pTaskId, new Entry(pResult, System.nanoTime() + mTimeToLive));
+    }
+
+    /**
+     * Remove the result of a task, e.g. because the data it was computed from has changed.
+     *
+     * @param pTaskId Id of the task.
+     */
+    public synchronized void invalidate(TaskId pTaskId) {
+        mEntries.remove(pTaskId);
+    }
+
+    /**
+     * Remove all results. Counters are not reset.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * @return Number of results currently cached, expired ones included until they are accessed or evicted.
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * @return Number of lookups that found a fresh result.
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return Number of lookups that found no result or an expired one.
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Result of a task stored in the cache. Allows null results to be cached.
+     */
+    public static final class Entry {
+        private final Object mResult;
+        private final long mExpirationTime;
+
+        private Entry(Object pResult, long pExpirationTime) {
+            mResult = pResult;
+            mExpirationTime = pExpirationTime;
+        }
+
+        public Object getResult() {
+            return mResult;
+        }
+    }
+}
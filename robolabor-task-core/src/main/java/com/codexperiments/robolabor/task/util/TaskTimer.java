@@ -0,0 +1,179 @@
+package com.codexperiments.robolabor.task.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Timer shared by all task managers of a process to trigger time-related events (e.g. grace periods or timeouts). A single
+ * daemon thread, started lazily, waits for the earliest deadline of a queue. Thus, scheduling a timeout costs one small object
+ * instead of a thread or an executor.
+ *
+ * Timeout actions are executed on the timer thread and must be short: typically they only post some work to another thread.
+ *
+ * Most timeouts get cancelled (e.g. a task finishing before its deadline). A cancelled timeout is only flagged and stays in the
+ * queue until it reaches its head, where it is skipped. Queue is purged when cancelled timeouts make up most of it.
+ */
+public class TaskTimer {
+    private static final TaskTimer INSTANCE = new TaskTimer();
+    // Under this number of cancelled timeouts, the queue is never purged.
+    private static final int MIN_PURGE_COUNT = 32;
+
+    // Timeouts sorted by deadline. Guarded by the queue itself.
+    private final PriorityQueue<Timeout> mTimeouts;
+    private long mSequence;
+    private boolean mStarted;
+    // Number of cancelled timeouts still in the queue.
+    private int mCancelledCount;
+
+    /**
+     * @return Timer shared by the whole process.
+     */
+    public static TaskTimer getInstance() {
+        return INSTANCE;
+    }
+
+    public TaskTimer() {
+        super();
+        mTimeouts = new PriorityQueue<Timeout>();
+        mSequence = 0;
+        mStarted = false;
+        mCancelledCount = 0;
+    }
+
+    /**
+     * Execute an action after a delay, unless it is cancelled meanwhile.
+     *
+     * @param pAction Action to execute on the timer thread.
+     * @param pDelayMillis Delay before execution.
+     * @return Handle to cancel the action.
+     */
+    public Timeout schedule(Runnable pAction, long pDelayMillis) {
+        if (pAction == null) throw new NullPointerException("Action is null");
+
+        synchronized (mTimeouts) {
+            Timeout lTimeout = new Timeout(pAction, System.nanoTime() + (Math.max(pDelayMillis, 0) * 1000000L), mSequence++);
+            mTimeouts.add(lTimeout);
+            if (!mStarted) {
+                mStarted = true;
+                Thread lThread = new Thread(new Runnable() {
+                    public void run() {
+                        runTimeouts();
+                    }
+                }, "TaskTimer");
+                lThread.setDaemon(true);
+                lThread.start();
+            } else if (mTimeouts.peek() == lTimeout) {
+                // New timeout expires before the one the timer thread is waiting for.
+                mTimeouts.notify();
+            }
+            return lTimeout;
+        }
+    }
+
+    private boolean cancel(Timeout pTimeout) {
+        synchronized (mTimeouts) {
+            if (pTimeout.mDone) return false;
+            pTimeout.mDone = true;
+
+            ++mCancelledCount;
+            if ((mCancelledCount >= MIN_PURGE_COUNT) && (mCancelledCount > (mTimeouts.size() / 2))) {
+                purge();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Remove all cancelled timeouts from the queue. Must be called with the queue lock held.
+     */
+    private void purge() {
+        List<Timeout> lTimeouts = new ArrayList<Timeout>(mTimeouts.size() - mCancelledCount);
+        for (Timeout lTimeout : mTimeouts) {
+            if (!lTimeout.mDone) lTimeouts.add(lTimeout);
+        }
+        mTimeouts.clear();
+        mTimeouts.addAll(lTimeouts);
+        mCancelledCount = 0;
+    }
+
+    /**
+     * @return Number of timeouts in the queue, including cancelled ones not purged yet. Mostly useful for debugging purpose.
+     */
+    public int getQueueSize() {
+        synchronized (mTimeouts) {
+            return mTimeouts.size();
+        }
+    }
+
+    private void runTimeouts() {
+        while (true) {
+            Timeout lTimeout;
+            synchronized (mTimeouts) {
+                try {
+                    while (true) {
+                        lTimeout = mTimeouts.peek();
+                        if (lTimeout == null) {
+                            mTimeouts.wait();
+                        } else if (lTimeout.mDone) {
+                            mTimeouts.poll();
+                            --mCancelledCount;
+                        } else {
+                            long lRemaining = lTimeout.mDeadline - System.nanoTime();
+                            if (lRemaining <= 0) break;
+                            mTimeouts.wait((lRemaining / 1000000L) + 1);
+                        }
+                    }
+                } catch (InterruptedException eInterruptedException) {
+                    // Ignore and retry. Timer thread is never stopped.
+                    continue;
+                }
+                mTimeouts.poll();
+                lTimeout.mDone = true;
+            }
+
+            // A failing action must not stop the timer.
+            try {
+                lTimeout.mAction.run();
+            } catch (RuntimeException eRuntimeException) {
+                Thread lThread = Thread.currentThread();
+                Thread.UncaughtExceptionHandler lHandler = lThread.getUncaughtExceptionHandler();
+                if (lHandler != null) lHandler.uncaughtException(lThread, eRuntimeException);
+            }
+        }
+    }
+
+    /**
+     * Handle on a scheduled action.
+     */
+    public final class Timeout implements Comparable<Timeout> {
+        private final Runnable mAction;
+        private final long mDeadline;
+        private final long mSequence; // Keeps timeouts with the same deadline in scheduling order.
+        // True once executed or cancelled. Guarded by the timeout queue.
+        private boolean mDone;
+
+        private Timeout(Runnable pAction, long pDeadline, long pSequence) {
+            mAction = pAction;
+            mDeadline = pDeadline;
+            mSequence = pSequence;
+            mDone = false;
+        }
+
+        /**
+         * Prevent the action from being executed.
+         *
+         * @return True if the action has been cancelled, false if it has already been executed or cancelled.
+         */
+        public boolean cancel() {
+            return TaskTimer.this.cancel(this);
+        }
+
+        @Override
+        public int compareTo(Timeout pOther) {
+            long lDifference = mDeadline - pOther.mDeadline;
+            if (lDifference != 0) return (lDifference < 0) ? -1 : 1;
+            return (mSequence < pOther.mSequence) ? -1 : ((mSequence == pOther.mSequence) ? 0 : 1);
+        }
+    }
+}
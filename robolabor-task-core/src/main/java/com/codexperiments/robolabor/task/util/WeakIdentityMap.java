@@ -0,0 +1,333 @@
+package com.codexperiments.robolabor.task.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Map with weakly referenced keys and values, compared by identity (i.e. ==) instead of equals(). Entries are stored in an open
+ * addressing table (linear probing) so that get() allocates nothing: no key wrapper is created to perform a lookup. Entries whose
+ * key has been garbage collected are expunged lazily when the map is accessed, like WeakHashMap does. All accesses are
+ * synchronized, which is cheap as long as the map is not contended.
+ *
+ * Views (entrySet(), keySet() and values()) iterate over a snapshot of the entries still alive when iteration starts. Their keys
+ * and values are strongly referenced until the iterator is dropped. Removing through the iterator or setting an entry value
+ * writes through to the map.
+ */
+public class WeakIdentityMap<TKey, TValue> extends AbstractMap<TKey, TValue> {
+    private static final int MINIMUM_CAPACITY = 16;
+
+    private WeakEntry<TKey, TValue>[] mTable; // Length is always a power of 2.
+    private int mSize; // Number of entries, including those whose key has been collected but not expunged yet.
+    private ReferenceQueue<TKey> mQueue;
+
+    public WeakIdentityMap(int pCapacity) {
+        super();
+        mTable = newTable(tableSizeFor(pCapacity));
+        mSize = 0;
+        mQueue = new ReferenceQueue<TKey>();
+    }
+
+    public WeakIdentityMap() {
+        this(MINIMUM_CAPACITY);
+    }
+
+    @Override
+    public synchronized TValue get(Object pKey) {
+        expungeStaleEntries();
+        if (pKey == null) return null;
+
+        final WeakEntry<TKey, TValue>[] lTable = mTable;
+        final int lMask = lTable.length - 1;
+        for (int i = System.identityHashCode(pKey) & lMask;; i = (i + 1) & lMask) {
+            WeakEntry<TKey, TValue> lEntry = lTable[i];
+            if (lEntry == null) return null;
+            if (lEntry.get() == pKey) return lEntry.getValue();
+        }
+    }
+
+    @Override
+    public synchronized TValue put(TKey pKey, TValue pValue) {
+        if (pKey == null) throw new NullPointerException("Key is null");
+        if (pValue == null) throw new NullPointerException("Value is null");
+        expungeStaleEntries();
+
+        final int lHash = System.identityHashCode(pKey);
+        final WeakEntry<TKey, TValue>[] lTable = mTable;
+        final int lMask = lTable.length - 1;
+        int i = lHash & lMask;
+        for (WeakEntry<TKey, TValue> lEntry = lTable[i]; lEntry != null; lEntry = lTable[i = (i + 1) & lMask]) {
+            if (lEntry.get() == pKey) {
+                TValue lPreviousValue = lEntry.getValue();
+                lEntry.setValue(pValue);
+                return lPreviousValue;
+            }
+        }
+
+        lTable[i] = new WeakEntry<TKey, TValue>(pKey, lHash, pValue, mQueue);
+        // Keep the table at most half full so that probe sequences remain short.
+        if (++mSize > (lTable.length >> 1)) {
+            resize();
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized TValue remove(Object pKey) {
+        expungeStaleEntries();
+        if (pKey == null) return null;
+
+        final WeakEntry<TKey, TValue>[] lTable = mTable;
+        final int lMask = lTable.length - 1;
+        for (int i = System.identityHashCode(pKey) & lMask;; i = (i + 1) & lMask) {
+            WeakEntry<TKey, TValue> lEntry = lTable[i];
+            if (lEntry == null) return null;
+            if (lEntry.get() == pKey) {
+                TValue lValue = lEntry.getValue();
+                // Entry is removed explicitly. It must not be expunged again if its key gets collected later.
+                lEntry.clear();
+                delete(i);
+                return lValue;
+            }
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        expungeStaleEntries();
+        return mSize;
+    }
+
+    @Override
+    public boolean containsKey(Object pKey) {
+        // Values are never null: a null result means no entry (or an entry whose value has been collected).
+        return get(pKey) != null;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (WeakEntry<TKey, TValue> lEntry : mTable) {
+            if (lEntry != null) {
+                // Entries are removed explicitly. They must not be expunged again if their key gets collected later.
+                lEntry.clear();
+            }
+        }
+        Arrays.fill(mTable, null);
+        mSize = 0;
+    }
+
+    @Override
+    public Set<Map.Entry<TKey, TValue>> entrySet() {
+        return new EntrySet();
+    }
+
+    /**
+     * Copy entries whose key and value are still alive, so that they cannot be collected or moved by a deletion while iterating.
+     */
+    private synchronized List<Map.Entry<TKey, TValue>> snapshot() {
+        expungeStaleEntries();
+        List<Map.Entry<TKey, TValue>> lEntries = new ArrayList<Map.Entry<TKey, TValue>>(mSize);
+        for (WeakEntry<TKey, TValue> lEntry : mTable) {
+            if (lEntry != null) {
+                TKey lKey = lEntry.get();
+                TValue lValue = lEntry.getValue();
+                if ((lKey != null) && (lValue != null)) {
+                    lEntries.add(new SnapshotEntry(lKey, lValue));
+                }
+            }
+        }
+        return lEntries;
+    }
+
+    /**
+     * Remove entries whose key has been garbage collected. Never blocks: only keys already enqueued by the garbage collector are
+     * processed.
+     */
+    @SuppressWarnings("unchecked")
+    private void expungeStaleEntries() {
+        Reference<? extends TKey> lReference;
+        while ((lReference = mQueue.poll()) != null) {
+            WeakEntry<TKey, TValue> lStaleEntry = (WeakEntry<TKey, TValue>) lReference;
+            final WeakEntry<TKey, TValue>[] lTable = mTable;
+            final int lMask = lTable.length - 1;
+            // The entry may not be found if it has been dropped during a resize.
+            for (int i = lStaleEntry.mHash & lMask; lTable[i] != null; i = (i + 1) & lMask) {
+                if (lTable[i] == lStaleEntry) {
+                    delete(i);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the entry at the specified index and shift back the entries that follow it in the same probe sequence, so that no
+     * tombstone is needed (see Knuth's Algorithm R).
+     */
+    private void delete(int pIndex) {
+        final WeakEntry<TKey, TValue>[] lTable = mTable;
+        final int lMask = lTable.length - 1;
+        int lEmptyIndex = pIndex;
+        lTable[lEmptyIndex] = null;
+        --mSize;
+
+        for (int i = (lEmptyIndex + 1) & lMask; lTable[i] != null; i = (i + 1) & lMask) {
+            int lHomeIndex = lTable[i].mHash & lMask;
+            // Move the entry into the hole only if its home slot is not located cyclically in ]lEmptyIndex, i].
+            boolean lHomeInBetween = (lEmptyIndex <= i) ? ((lEmptyIndex < lHomeIndex) && (lHomeIndex <= i))
+                            : ((lEmptyIndex < lHomeIndex) || (lHomeIndex <= i));
+            if (!lHomeInBetween) {
+                lTable[lEmptyIndex] = lTable[i];
+                lTable[i] = null;
+                lEmptyIndex = i;
+            }
+        }
+    }
+
+    /**
+     * Double the table size. Entries whose key has been collected are dropped along the way.
+     */
+    private void resize() {
+        final WeakEntry<TKey, TValue>[] lOldTable = mTable;
+        final WeakEntry<TKey, TValue>[] lNewTable = newTable(lOldTable.length << 1);
+        final int lMask = lNewTable.length - 1;
+        int lSize = 0;
+        for (WeakEntry<TKey, TValue> lEntry : lOldTable) {
+            if ((lEntry != null) && (lEntry.get() != null)) {
+                int i = lEntry.mHash & lMask;
+                while (lNewTable[i] != null) {
+                    i = (i + 1) & lMask;
+                }
+                lNewTable[i] = lEntry;
+                ++lSize;
+            }
+        }
+        mTable = lNewTable;
+        mSize = lSize;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static <TKey, TValue> WeakEntry<TKey, TValue>[] newTable(int pSize) {
+        return new WeakEntry[pSize];
+    }
+
+    private static int tableSizeFor(int pCapacity) {
+        int lSize = MINIMUM_CAPACITY;
+        // Table is kept at most half full.
+        while (lSize < (pCapacity << 1)) {
+            lSize <<= 1;
+        }
+        return lSize;
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<TKey, TValue>> {
+        @Override
+        public Iterator<Map.Entry<TKey, TValue>> iterator() {
+            final Iterator<Map.Entry<TKey, TValue>> lSnapshotIterator = snapshot().iterator();
+            return new Iterator<Map.Entry<TKey, TValue>>() {
+                private Map.Entry<TKey, TValue> mLastEntry = null;
+
+                public boolean hasNext() {
+                    return lSnapshotIterator.hasNext();
+                }
+
+                public Map.Entry<TKey, TValue> next() {
+                    mLastEntry = lSnapshotIterator.next();
+                    return mLastEntry;
+                }
+
+                public void remove() {
+                    if (mLastEntry == null) throw new IllegalStateException();
+                    WeakIdentityMap.this.remove(mLastEntry.getKey());
+                    mLastEntry = null;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return WeakIdentityMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            WeakIdentityMap.this.clear();
+        }
+    }
+
+    /**
+     * Strongly referenced copy of an entry returned by iterators. Setting its value updates the map too.
+     */
+    private final class SnapshotEntry implements Map.Entry<TKey, TValue> {
+        private final TKey mKey;
+        private TValue mValue;
+
+        public SnapshotEntry(TKey pKey, TValue pValue) {
+            mKey = pKey;
+            mValue = pValue;
+        }
+
+        public TKey getKey() {
+            return mKey;
+        }
+
+        public TValue getValue() {
+            return mValue;
+        }
+
+        public TValue setValue(TValue pValue) {
+            TValue lPreviousValue = mValue;
+            put(mKey, pValue);
+            mValue = pValue;
+            return lPreviousValue;
+        }
+
+        @Override
+        public boolean equals(Object pOther) {
+            if (!(pOther instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> lOther = (Map.Entry<?, ?>) pOther;
+            return (mKey == lOther.getKey()) && mValue.equals(lOther.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(mKey) ^ mValue.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return mKey + "=" + mValue;
+        }
+    }
+
+    /**
+     * Weak reference to the key, which also holds the key hash (to locate the entry once the key is collected) and a weak
+     * reference to the value. Value must not be strongly referenced or it would keep its key reachable if it points to it.
+     */
+    private static final class WeakEntry<TKey, TValue> extends WeakReference<TKey> {
+        private final int mHash;
+        private WeakReference<TValue> mValue;
+
+        public WeakEntry(TKey pKey, int pHash, TValue pValue, ReferenceQueue<TKey> pQueue) {
+            super(pKey, pQueue);
+            mHash = pHash;
+            mValue = new WeakReference<TValue>(pValue);
+        }
+
+        public TValue getValue() {
+            return mValue.get();
+        }
+
+        public void setValue(TValue pValue) {
+            mValue = new WeakReference<TValue>(pValue);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.codexperiments.robolabor.task.core;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codexperiments.robolabor.task.core.helper.BackgroundTask;
+import com.codexperiments.robolabor.task.core.helper.TestTaskManager;
+import com.codexperiments.robolabor.task.core.helper.TestTaskManagerConfig;
+import com.codexperiments.robolabor.task.handler.Task;
+import com.codexperiments.robolabor.task.handler.TaskNotifier;
+
+/**
+ * Measures the cost of the engine itself (task bookkeeping and handler dispatch on the event loop) on a plain JVM. Tasks do
+ * nothing and run on the thread executing them, so that executor costs are left out. Results are written on the standard output.
+ * Not run by default: use mvn test -Dtest=CoreTaskManagerBenchmark.
+ */
+public class CoreTaskManagerBenchmark {
+    private static final int TASK_COUNT = 100000;
+    private static final int PROGRESS_COUNT = 1000000;
+    private static final long TIMEOUT_MS = 60000;
+
+    private TestTaskManagerConfig mConfig;
+    private TestTaskManager mTaskManager;
+
+    @Before
+    public void setUp() {
+        mConfig = new TestTaskManagerConfig();
+        mConfig.setExecutor(new Executor() {
+            public void execute(Runnable pRunnable) {
+                pRunnable.run();
+            }
+        });
+        mTaskManager = new TestTaskManager(mConfig);
+    }
+
+    @After
+    public void tearDown() {
+        mTaskManager.shutdown();
+        mConfig.shutdown();
+    }
+
+    @Test
+    public void testExecute() throws InterruptedException {
+        executeTasks(TASK_COUNT); // Warm-up.
+
+        long lStartTime = System.nanoTime();
+        executeTasks(TASK_COUNT);
+        long lDuration = System.nanoTime() - lStartTime;
+        System.out.println("CoreTaskManagerBenchmark.execute: " + (lDuration / TASK_COUNT) + "ns/task");
+    }
+
+    @Test
+    public void testProgress() throws InterruptedException {
+        notifyProgress(PROGRESS_COUNT); // Warm-up.
+
+        long lStartTime = System.nanoTime();
+        int lDispatchCount = notifyProgress(PROGRESS_COUNT);
+        long lDuration = System.nanoTime() - lStartTime;
+        System.out.println("CoreTaskManagerBenchmark.progress: " + (lDuration / PROGRESS_COUNT) + "ns/notification, "
+                        + lDispatchCount + " dispatches");
+    }
+
+    /**
+     * Execute tasks from the event loop and wait until all are finished.
+     */
+    private void executeTasks(int pTaskCount) throws InterruptedException {
+        final CountDownLatch lFinished = new CountDownLatch(pTaskCount);
+        final EmptyTask[] lTasks = new EmptyTask[pTaskCount];
+        for (int i = 0; i < pTaskCount; ++i) {
+            lTasks[i] = new EmptyTask(lFinished);
+        }
+
+        mTaskManager.call(new Callable<Void>() {
+            public Void call() throws Exception {
+                for (EmptyTask lTask : lTasks) {
+                    mTaskManager.getTaskManager().execute(lTask);
+                }
+                return null;
+            }
+        });
+        assertThat(lFinished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+    }
+
+    /**
+     * Notify progress from a task processed on a background thread.
+     * 
+     * @return Number of progress handlers called.
+     */
+    private int notifyProgress(final int pProgressCount) throws InterruptedException {
+        final BackgroundTask lTask = new BackgroundTask(0) {
+            @Override
+            public Integer onProcess(TaskNotifier pNotifier) throws Exception {
+                for (int i = 0; i < pProgressCount; ++i) {
+                    pNotifier.notifyProgress();
+                }
+                return super.onProcess(pNotifier);
+            }
+        };
+        mConfig.setExecutor(new Executor() {
+            public void execute(Runnable pRunnable) {
+                new Thread(pRunnable).start();
+            }
+        });
+        mTaskManager.execute(lTask);
+        assertThat(lTask.awaitFinished(TIMEOUT_MS), equalTo(true));
+        return lTask.getProgressCounter();
+    }
+
+    private static class EmptyTask implements Task<Integer> {
+        private final CountDownLatch mFinished;
+
+        public EmptyTask(CountDownLatch pFinished) {
+            super();
+            mFinished = pFinished;
+        }
+
+        @Override
+        public Integer onProcess(TaskNotifier pNotifier) throws Exception {
+            return 0;
+        }
+
+        @Override
+        public void onFinish(Integer pResult) {
+            mFinished.countDown();
+        }
+
+        @Override
+        public void onFail(Throwable pException) {
+            mFinished.countDown();
+        }
+    }
+}
@@ -0,0 +1,858 @@
+package com.codexperiments.robolabor.task.core;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codexperiments.robolabor.task.TaskBinder;
+import com.codexperiments.robolabor.task.TaskExecutionMode;
+import com.codexperiments.robolabor.task.TaskRef;
+import com.codexperiments.robolabor.task.core.helper.BackgroundTask;
+import com.codexperiments.robolabor.task.core.helper.TaskEmitter;
+import com.codexperiments.robolabor.task.core.helper.TaskEmitter.InnerTask;
+import com.codexperiments.robolabor.task.core.helper.TestTaskManager;
+import com.codexperiments.robolabor.task.core.helper.TestTaskManagerConfig;
+import com.codexperiments.robolabor.task.handler.TaskBatchable;
+import com.codexperiments.robolabor.task.handler.TaskIdentifiable;
+import com.codexperiments.robolabor.task.handler.TaskNotifier;
+import com.codexperiments.robolabor.task.id.IntTaskId;
+import com.codexperiments.robolabor.task.id.TaskId;
+import com.codexperiments.robolabor.task.util.BulkheadExecutor;
+import com.codexperiments.robolabor.task.util.KeyedTaskExecutor;
+import com.codexperiments.robolabor.task.util.PriorityTaskExecutor;
+import com.codexperiments.robolabor.task.util.TaskResultCache;
+
+/**
+ * Drives the CoreTaskManager on a plain JVM, through an EventLoopTaskScheduler and an EventLoopLockingStrategy.
+ */
+public class CoreTaskManagerTest {
+    // Time during which a handler that must not be called is waited for.
+    private static final long NO_CALL_DELAY_MS = 200;
+
+    private TestTaskManagerConfig mConfig;
+    private TestTaskManager mTaskManager;
+    private Thread mEventLoopThread;
+
+    @Before
+    public void setUp() {
+        mConfig = new TestTaskManagerConfig();
+        mTaskManager = new TestTaskManager(mConfig);
+        mEventLoopThread = mTaskManager.call(new Callable<Thread>() {
+            public Thread call() throws Exception {
+                return Thread.currentThread();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mTaskManager.shutdown();
+        mConfig.shutdown();
+    }
+
+    @Test
+    public void testExecute() throws InterruptedException {
+        BackgroundTask lTask = new BackgroundTask(1);
+        TaskRef<Integer> lTaskRef = mTaskManager.execute(lTask);
+        assertThat(lTaskRef, notNullValue());
+
+        assertThat(lTask.awaitFinished(), equalTo(true));
+        assertThat(lTask.getResult(), equalTo(1));
+        assertThat(lTask.getException(), nullValue());
+        assertThat(lTask.getStartCounter(), equalTo(1));
+        assertThat(lTask.getFinishThread(), sameInstance(mEventLoopThread));
+    }
+
+    @Test
+    public void testExecute_failure() throws InterruptedException {
+        Exception lTaskException = new Exception();
+        BackgroundTask lTask = BackgroundTask.failing(lTaskException);
+        mTaskManager.execute(lTask);
+
+        assertThat(lTask.awaitFinished(), equalTo(true));
+        assertThat(lTask.getResult(), nullValue());
+        assertThat(lTask.getException(), sameInstance((Throwable) lTaskException));
+        assertThat(lTask.getFinishThread(), sameInstance(mEventLoopThread));
+    }
+
+    @Test
+    public void testExecute_outsideEventLoop() {
+        try {
+            mTaskManager.getTaskManager().execute(new BackgroundTask(1));
+            fail();
+        } catch (TaskManagerException eTaskManagerException) {
+            // Success
+        }
+    }
+
+    @Test
+    public void testExecute_duplicateDropped() throws InterruptedException {
+        BackgroundTask lTask = BackgroundTask.blocking(1);
+        assertThat(mTaskManager.execute(lTask), notNullValue());
+        assertThat(mTaskManager.execute(lTask), nullValue());
+
+        lTask.release();
+        assertThat(lTask.awaitFinished(), equalTo(true));
+        assertThat(lTask.getProcessCounter(), equalTo(1));
+        assertThat(lTask.getFinishCounter(), equalTo(1));
+    }
+
+    @Test
+    public void testProgress() throws InterruptedException {
+        ProgressTask lTask = new ProgressTask(3);
+        mTaskManager.execute(lTask);
+
+        assertThat(lTask.awaitFinished(), equalTo(true));
+        assertThat(lTask.getProgressCounter(), equalTo(3));
+        assertThat(lTask.getResult(), equalTo(3));
+    }
+
+    @Test
+    public void testProgress_collapsed() throws InterruptedException {
+        mConfig.setProgressInterval(100);
+        BurstProgressTask lTask = new BurstProgressTask(1000);
+        mTaskManager.execute(lTask);
+
+        // Burst is collapsed but its last progress, still delayed by the interval, is delivered before the task finishes.
+        assertThat(lTask.awaitFinished(), equalTo(true));
+        assertThat(lTask.getProgressCounter() < 1000, equalTo(true));
+        assertThat(lTask.getLastProgress(), equalTo(1000));
+        assertThat(lTask.getProgressCounterOnFinish(), equalTo(lTask.getProgressCounter()));
+
+        // The delayed dispatch, flushed meanwhile, doesn't call the handler again.
+        Thread.sleep(NO_CALL_DELAY_MS);
+        assertThat(lTask.getProgressCounter(), equalTo(lTask.getProgressCounterOnFinish()));
+    }
+
+    @Test
+    public void testProgress_collapsedWithoutInterval() throws InterruptedException {
+        BurstProgressTask lTask = new BurstProgressTask(1000);
+        mTaskManager.execute(lTask);
+
+        assertThat(lTask.awaitFinished(), equalTo(true));
+        assertThat(lTask.getLastProgress(), equalTo(1000));
+        assertThat(lTask.getProgressCounterOnFinish(), equalTo(lTask.getProgressCounter()));
+    }
+
+    @Test
+    public void testProgress_outsideTask() {
+        try {
+            mTaskManager.call(new Callable<Void>() {
+                public Void call() throws Exception {
+                    mTaskManager.getTaskManager().notifyProgress();
+                    return null;
+                }
+            });
+            fail();
+        } catch (TaskManagerException eTaskManagerException) {
+            // Success
+        }
+    }
+
+    @Test
+    public void testCancel_interrupted() throws InterruptedException {
+        BackgroundTask lTask = BackgroundTask.blocking(1);
+        TaskRef<Integer> lTaskRef = mTaskManager.execute(lTask);
+        assertThat(lTask.awaitProcessStarted(), equalTo(true));
+
+        assertThat(mTaskManager.cancel(lTaskRef, true), equalTo(true));
+        assertThat(mTaskManager.cancel(lTaskRef, true), equalTo(false));
+        assertThat(awaitInterrupted(lTask), equalTo(true));
+        // Handlers of a cancelled task are never called.
+        assertThat(lTask.awaitFinished(NO_CALL_DELAY_MS), equalTo(false));
+    }
+
+    @Test
+    public void testCancel_notInterrupted() throws InterruptedException {
+        BackgroundTask lTask = BackgroundTask.blocking(1);
+        TaskRef<Integer> lTaskRef = mTaskManager.execute(lTask);
+        assertThat(lTask.awaitProcessStarted(), equalTo(true));
+
+        assertThat(mTaskManager.cancel(lTaskRef, false), equalTo(true));
+        lTask.release();
+        assertThat(lTask.awaitFinished(NO_CALL_DELAY_MS), equalTo(false));
+        assertThat(lTask.isInterrupted(), equalTo(false));
+    }
+
+    @Test
+    public void testCancel_finished() throws InterruptedException {
+        BackgroundTask lTask = new BackgroundTask(1);
+        TaskRef<Integer> lTaskRef = mTaskManager.execute(lTask);
+        assertThat(lTask.awaitFinished(), equalTo(true));
+        mTaskManager.flush();
+
+        assertThat(mTaskManager.cancel(lTaskRef, true), equalTo(false));
+    }
+
+    @Test
+    public void testRebind() throws InterruptedException {
+        BackgroundTask lTask = BackgroundTask.blocking(1);
+        BackgroundTask lNewHandler = new BackgroundTask(2);
+        TaskRef<Integer> lTaskRef = mTaskManager.execute(lTask);
+        assertThat(mTaskManager.rebind(lTaskRef, lNewHandler), equalTo(true));
+
+        lTask.release();
+        assertThat(lNewHandler.awaitFinished(), equalTo(true));
+        // Result comes from the task, not from the new handler.
+        assertThat(lNewHandler.getResult(), equalTo(1));
+        assertThat(lNewHandler.getStartCounter(), equalTo(1));
+        assertThat(lTask.awaitFinished(NO_CALL_DELAY_MS), equalTo(false));
+    }
+
+    @Test
+    public void testInnerTask_dereferenced() throws InterruptedException {
+        TaskEmitter lEmitter = new TaskEmitter("emitter");
+        mTaskManager.manage(lEmitter);
+        InnerTask lTask = lEmitter.innerTask(1);
+        mTaskManager.execute(lTask);
+
+        assertThat(lTask.awaitFinished(), equalTo(true));
+        // Outer reference is removed while the task is processed and restored for its handlers.
+        assertThat(lTask.isEmitterNullWhileProcessing(), equalTo(true));
+        assertThat(lTask.getFinishEmitter(), sameInstance(lEmitter));
+        assertThat(lEmitter.getTaskResult(), equalTo(1));
+    }
+
+    @Test
+    public void testInnerTask_restoredOnNewEmitter() throws InterruptedException {
+        TaskEmitter lInitialEmitter = new TaskEmitter("emitter");
+        mTaskManager.manage(lInitialEmitter);
+        InnerTask lTask = lInitialEmitter.blockingInnerTask(1);
+        mTaskManager.execute(lTask);
+        assertThat(lTask.awaitProcessStarted(), equalTo(true));
+
+        // Emitter goes away (e.g. an Activity destroyed on rotation). Result is kept on hold until it comes back.
+        mTaskManager.unmanage(lInitialEmitter);
+        lTask.release();
+        assertThat(lTask.awaitFinished(NO_CALL_DELAY_MS), equalTo(false));
+
+        TaskEmitter lNewEmitter = new TaskEmitter("emitter");
+        mTaskManager.manage(lNewEmitter);
+        assertThat(lTask.awaitFinished(), equalTo(true));
+        assertThat(lTask.getFinishEmitter(), sameInstance(lNewEmitter));
+        assertThat(lNewEmitter.getTaskResult(), equalTo(1));
+        assertThat(lInitialEmitter.getTaskResult(), nullValue());
+        // Task is finished directly when restored, without calling onStart() again.
+        assertThat(lTask.getStartCounter(), equalTo(1));
+    }
+
+    @Test
+    public void testInnerTask_emitterNotManaged() {
+        TaskEmitter lEmitter = new TaskEmitter("emitter");
+        try {
+            mTaskManager.execute(lEmitter.innerTask(1));
+            fail();
+        } catch (TaskManagerException eTaskManagerException) {
+            // Success
+        }
+    }
+
+    @Test
+    public void testInnerTask_binder() throws Exception {
+        // Binder is generated by robolabor-task-processor while compiling tests. TaskManager uses it instead of reflection.
+        TaskBinder lBinder = (TaskBinder) Class.forName(InnerTask.class.getName() + TaskBinder.SUFFIX).newInstance();
+        assertThat(lBinder.isInner(), equalTo(true));
+        assertThat(Arrays.asList(lBinder.getEmitterFieldNames()), equalTo(Arrays.asList("this$0", null)));
+
+        TaskEmitter lEmitter = new TaskEmitter("emitter");
+        mTaskManager.manage(lEmitter);
+        InnerTask lTask = lEmitter.innerTask(1);
+        mTaskManager.execute(lTask);
+
+        assertThat(lTask.awaitFinished(), equalTo(true));
+        assertThat(lTask.isEmitterNullWhileProcessing(), equalTo(true));
+        assertThat(lTask.getFinishEmitter(), sameInstance(lEmitter));
+        assertThat(lEmitter.getTaskResult(), equalTo(1));
+    }
+
+    @Test
+    public void testGracePeriod_expired() throws InterruptedException {
+        mConfig.setGracePeriod(100);
+        TaskEmitter lInitialEmitter = new TaskEmitter("emitter");
+        mTaskManager.manage(lInitialEmitter);
+        InnerTask lTask = lInitialEmitter.blockingInnerTask(1);
+        mTaskManager.execute(lTask);
+        assertThat(lTask.awaitProcessStarted(), equalTo(true));
+
+        // Emitter doesn't come back in time: task is cancelled and interrupted.
+        mTaskManager.unmanage(lInitialEmitter);
+        assertThat(awaitInterrupted(lTask), equalTo(true));
+
+        TaskEmitter lNewEmitter = new TaskEmitter("emitter");
+        mTaskManager.manage(lNewEmitter);
+        assertThat(lTask.awaitFinished(NO_CALL_DELAY_MS), equalTo(false));
+        assertThat(lNewEmitter.getTaskResult(), nullValue());
+    }
+
+    @Test
+    public void testGracePeriod_emitterBack() throws InterruptedException {
+        mConfig.setGracePeriod(200);
+        TaskEmitter lInitialEmitter = new TaskEmitter("emitter");
+        mTaskManager.manage(lInitialEmitter);
+        InnerTask lTask = lInitialEmitter.blockingInnerTask(1);
+        mTaskManager.execute(lTask);
+        assertThat(lTask.awaitProcessStarted(), equalTo(true));
+
+        // Emitter comes back before the end of the grace period: task goes on, even once the grace period is over.
+        mTaskManager.unmanage(lInitialEmitter);
+        TaskEmitter lNewEmitter = new TaskEmitter("emitter");
+        mTaskManager.manage(lNewEmitter);
+        Thread.sleep(400);
+        assertThat(lTask.isInterrupted(), equalTo(false));
+
+        lTask.release();
+        assertThat(lTask.awaitFinished(), equalTo(true));
+        assertThat(lTask.getFinishEmitter(), sameInstance(lNewEmitter));
+        assertThat(lNewEmitter.getTaskResult(), equalTo(1));
+    }
+
+    @Test
+    public void testTimeout_whileRunning() throws InterruptedException {
+        mConfig.setTimeout(100);
+        BackgroundTask lTask = BackgroundTask.blocking(1);
+        mTaskManager.execute(lTask);
+
+        assertThat(lTask.awaitFinished(), equalTo(true));
+        assertThat(lTask.getException(), instanceOf(TimeoutException.class));
+        assertThat(lTask.getResult(), nullValue());
+        assertThat(lTask.getFinishThread(), sameInstance(mEventLoopThread));
+        assertThat(awaitInterrupted(lTask), equalTo(true));
+    }
+
+    @Test
+    public void testTimeout_finishedInTime() throws InterruptedException {
+        mConfig.setTimeout(100);
+        BackgroundTask lTask = new BackgroundTask(1);
+        mTaskManager.execute(lTask);
+
+        assertThat(lTask.awaitFinished(), equalTo(true));
+        Thread.sleep(200);
+        assertThat(lTask.getResult(), equalTo(1));
+        assertThat(lTask.getException(), nullValue());
+        assertThat(lTask.getFinishCounter(), equalTo(1));
+    }
+
+    @Test
+    public void testTimeout_stuckWorkerReleased() throws InterruptedException {
+        // Single worker stuck in a task ignoring interruptions. Next task must not wait for it.
+        mConfig.setExecutor(newDaemonExecutor(1));
+        assertStuckTaskReleased();
+    }
+
+    @Test
+    public void testTimeout_stuckBulkheadSlotReleased() throws InterruptedException {
+        // Single slot and single worker taken by a stuck task. Both must be released.
+        BulkheadExecutor lBulkheadExecutor = new BulkheadExecutor(newDaemonExecutor(1), 1);
+        mConfig.setExecutor(lBulkheadExecutor.forCategory("category"));
+        assertStuckTaskReleased();
+    }
+
+    @Test
+    public void testTimeout_stuckKeyReleased() throws InterruptedException {
+        KeyedTaskExecutor lKeyedExecutor = new KeyedTaskExecutor(Executors.newCachedThreadPool());
+        mConfig.setExecutor(lKeyedExecutor.forKey("key"));
+        assertStuckTaskReleased();
+    }
+
+    /**
+     * Execute a task that ignores interruptions and exceeds its deadline. Once it has failed, a new task executed on the same
+     * executor must not wait for it.
+     */
+    private void assertStuckTaskReleased() throws InterruptedException {
+        mConfig.setTimeout(100);
+        StuckTask lStuckTask = new StuckTask();
+        mTaskManager.execute(lStuckTask);
+        try {
+            assertThat(lStuckTask.awaitFinished(), equalTo(true));
+            assertThat(lStuckTask.getException(), instanceOf(TimeoutException.class));
+
+            mConfig.setTimeout(0);
+            BackgroundTask lNextTask = new BackgroundTask(2);
+            mTaskManager.execute(lNextTask);
+            assertThat(lNextTask.awaitFinished(), equalTo(true));
+            assertThat(lNextTask.getResult(), equalTo(2));
+        } finally {
+            lStuckTask.release();
+        }
+    }
+
+    @Test
+    public void testCancel_removedFromBulkhead() throws InterruptedException {
+        BulkheadExecutor lBulkheadExecutor = new BulkheadExecutor(Executors.newCachedThreadPool(), 1);
+        mConfig.setExecutor(lBulkheadExecutor.forCategory("category"));
+        BackgroundTask lRunningTask = BackgroundTask.blocking(1);
+        BackgroundTask lWaitingTask = new BackgroundTask(2);
+        mTaskManager.execute(lRunningTask);
+        TaskRef<Integer> lWaitingTaskRef = mTaskManager.execute(lWaitingTask);
+        assertThat(lRunningTask.awaitProcessStarted(), equalTo(true));
+        assertThat(lBulkheadExecutor.getWaitingCount("category"), equalTo(1));
+
+        assertThat(mTaskManager.cancel(lWaitingTaskRef, false), equalTo(true));
+        assertThat(lBulkheadExecutor.getWaitingCount("category"), equalTo(0));
+        lRunningTask.release();
+        assertThat(lRunningTask.awaitFinished(), equalTo(true));
+        assertThat(lWaitingTask.getProcessCounter(), equalTo(0));
+    }
+
+    @Test
+    public void testResultCache() throws InterruptedException {
+        mConfig.setResultCache(new TaskResultCache(10, TimeUnit.HOURS.toMillis(1)));
+        IdentifiedTask lTask = new IdentifiedTask(1, 1);
+        mTaskManager.execute(lTask);
+        assertThat(lTask.awaitFinished(), equalTo(true));
+        mTaskManager.flush();
+
+        // Result of a task with the same Id is reused without processing it.
+        IdentifiedTask lCachedTask = new IdentifiedTask(1, 2);
+        mTaskManager.execute(lCachedTask);
+        assertThat(lCachedTask.awaitFinished(), equalTo(true));
+        assertThat(lCachedTask.getResult(), equalTo(1));
+        assertThat(lCachedTask.getProcessCounter(), equalTo(0));
+
+        IdentifiedTask lOtherTask = new IdentifiedTask(2, 3);
+        mTaskManager.execute(lOtherTask);
+        assertThat(lOtherTask.awaitFinished(), equalTo(true));
+        assertThat(lOtherTask.getResult(), equalTo(3));
+    }
+
+    @Test
+    public void testSingleFlight() throws InterruptedException {
+        mConfig.setExecutionMode(TaskExecutionMode.SINGLE_FLIGHT);
+        IdentifiedTask lTask = new IdentifiedTask(1, 1, true);
+        TaskRef<Integer> lTaskRef = mTaskManager.execute(lTask);
+        assertThat(lTask.awaitProcessStarted(), equalTo(true));
+
+        // Duplicates share the running task and its result instead of being processed.
+        IdentifiedTask lDuplicateTask1 = new IdentifiedTask(1, 2);
+        IdentifiedTask lDuplicateTask2 = new IdentifiedTask(1, 3);
+        assertThat(mTaskManager.execute(lDuplicateTask1), equalTo(lTaskRef));
+        assertThat(mTaskManager.execute(lDuplicateTask2), equalTo(lTaskRef));
+        lTask.release();
+
+        assertThat(lTask.awaitFinished(), equalTo(true));
+        assertThat(lDuplicateTask1.awaitFinished(), equalTo(true));
+        assertThat(lDuplicateTask2.awaitFinished(), equalTo(true));
+        assertThat(lTask.getResult(), equalTo(1));
+        assertThat(lDuplicateTask1.getResult(), equalTo(1));
+        assertThat(lDuplicateTask2.getResult(), equalTo(1));
+        assertThat(lDuplicateTask1.getStartCounter(), equalTo(1));
+        assertThat(lDuplicateTask1.getProcessCounter() + lDuplicateTask2.getProcessCounter(), equalTo(0));
+        mTaskManager.flush();
+
+        // Once over, the next identical task is processed again.
+        IdentifiedTask lNextTask = new IdentifiedTask(1, 4);
+        TaskRef<Integer> lNextTaskRef = mTaskManager.execute(lNextTask);
+        assertThat(lNextTaskRef.equals(lTaskRef), equalTo(false));
+        assertThat(lNextTask.awaitFinished(), equalTo(true));
+        assertThat(lNextTask.getResult(), equalTo(4));
+    }
+
+    @Test
+    public void testSingleFlight_failure() throws InterruptedException {
+        mConfig.setExecutionMode(TaskExecutionMode.SINGLE_FLIGHT);
+        Exception lTaskException = new Exception();
+        IdentifiedTask lTask = new IdentifiedTask(1, lTaskException, true);
+        mTaskManager.execute(lTask);
+        assertThat(lTask.awaitProcessStarted(), equalTo(true));
+        IdentifiedTask lDuplicateTask = new IdentifiedTask(1, 2);
+        mTaskManager.execute(lDuplicateTask);
+        lTask.release();
+
+        assertThat(lDuplicateTask.awaitFinished(), equalTo(true));
+        assertThat(lDuplicateTask.getException(), sameInstance((Throwable) lTaskException));
+    }
+
+    @Test
+    public void testLatestWins_chain() throws InterruptedException {
+        mConfig.setExecutionMode(TaskExecutionMode.LATEST_WINS);
+        IdentifiedTask lTask1 = new IdentifiedTask(1, 1, true);
+        IdentifiedTask lTask2 = new IdentifiedTask(1, 2, true);
+        IdentifiedTask lTask3 = new IdentifiedTask(1, 3);
+        TaskRef<Integer> lTaskRef1 = mTaskManager.execute(lTask1);
+        assertThat(lTask1.awaitProcessStarted(), equalTo(true));
+
+        // Each task supersedes the previous one, which is cancelled and interrupted.
+        TaskRef<Integer> lTaskRef2 = mTaskManager.execute(lTask2);
+        assertThat(lTask2.awaitProcessStarted(), equalTo(true));
+        assertThat(awaitInterrupted(lTask1), equalTo(true));
+        TaskRef<Integer> lTaskRef3 = mTaskManager.execute(lTask3);
+        assertThat(awaitInterrupted(lTask2), equalTo(true));
+        assertThat(lTaskRef2.equals(lTaskRef1), equalTo(false));
+        assertThat(lTaskRef3.equals(lTaskRef2), equalTo(false));
+
+        assertThat(lTask3.awaitFinished(), equalTo(true));
+        assertThat(lTask3.getResult(), equalTo(3));
+        assertThat(lTask1.awaitFinished(NO_CALL_DELAY_MS), equalTo(false));
+        assertThat(lTask2.isFinished(), equalTo(false));
+        // Superseded tasks can't be cancelled anymore.
+        assertThat(mTaskManager.cancel(lTaskRef1, true), equalTo(false));
+    }
+
+    @Test
+    public void testLatestWins_otherIdsUntouched() throws InterruptedException {
+        mConfig.setExecutionMode(TaskExecutionMode.LATEST_WINS);
+        IdentifiedTask lTask1 = new IdentifiedTask(1, 1, true);
+        IdentifiedTask lTask2 = new IdentifiedTask(2, 2);
+        mTaskManager.execute(lTask1);
+        assertThat(lTask1.awaitProcessStarted(), equalTo(true));
+        mTaskManager.execute(lTask2);
+
+        assertThat(lTask2.awaitFinished(), equalTo(true));
+        lTask1.release();
+        assertThat(lTask1.awaitFinished(), equalTo(true));
+        assertThat(lTask1.getResult(), equalTo(1));
+        assertThat(lTask1.isInterrupted(), equalTo(false));
+    }
+
+    @Test
+    public void testThrottle_window() throws InterruptedException {
+        mConfig.setExecutionMode(TaskExecutionMode.THROTTLE);
+        mConfig.setThrottlePeriod(300);
+        IdentifiedTask lTask1 = new IdentifiedTask(1, 1);
+        assertThat(mTaskManager.execute(lTask1), notNullValue());
+        assertThat(lTask1.awaitFinished(), equalTo(true));
+
+        // Dropped within the window, even though the first task is over.
+        IdentifiedTask lTask2 = new IdentifiedTask(1, 2);
+        assertThat(mTaskManager.execute(lTask2), nullValue());
+        // Other tasks are not throttled.
+        IdentifiedTask lOtherTask = new IdentifiedTask(2, 3);
+        assertThat(mTaskManager.execute(lOtherTask), notNullValue());
+        assertThat(lOtherTask.awaitFinished(), equalTo(true));
+
+        // A new window starts with the first task executed once the previous one is over.
+        Thread.sleep(400);
+        IdentifiedTask lTask3 = new IdentifiedTask(1, 4);
+        assertThat(mTaskManager.execute(lTask3), notNullValue());
+        assertThat(lTask3.awaitFinished(), equalTo(true));
+        assertThat(lTask3.getResult(), equalTo(4));
+        assertThat(mTaskManager.execute(new IdentifiedTask(1, 5)), nullValue());
+        assertThat(lTask2.awaitFinished(NO_CALL_DELAY_MS), equalTo(false));
+        assertThat(lTask2.getProcessCounter(), equalTo(0));
+    }
+
+    @Test
+    public void testBatch_flush() throws InterruptedException {
+        mConfig.setBatchWindow(100);
+        BatchTask lTask1 = new BatchTask("key1", 1);
+        BatchTask lTask2 = new BatchTask("key1", 2);
+        BatchTask lTask3 = new BatchTask("key1", 3);
+        BatchTask lOtherTask = new BatchTask("key2", 4);
+        mTaskManager.execute(lTask1);
+        mTaskManager.execute(lTask2);
+        mTaskManager.execute(lOtherTask);
+        mTaskManager.execute(lTask3);
+
+        // Tasks collected during the window are processed together when it is over, each getting its own result.
+        assertThat(lTask1.awaitFinished(), equalTo(true));
+        assertThat(lTask2.awaitFinished(), equalTo(true));
+        assertThat(lTask3.awaitFinished(), equalTo(true));
+        assertThat(lOtherTask.awaitFinished(), equalTo(true));
+        assertThat(lTask1.getResult(), equalTo(10));
+        assertThat(lTask2.getResult(), equalTo(20));
+        assertThat(lTask3.getResult(), equalTo(30));
+        assertThat(lOtherTask.getResult(), equalTo(40));
+        assertThat(lTask1.getBatchSize(), equalTo(3));
+        assertThat(lTask3.getBatchSize(), equalTo(3));
+        assertThat(lOtherTask.getBatchSize(), equalTo(1));
+        assertThat(lTask1.getProcessCounter() + lTask2.getProcessCounter() + lTask3.getProcessCounter(), equalTo(0));
+
+        // Window is closed: a new task starts a new batch.
+        BatchTask lNextTask = new BatchTask("key1", 5);
+        mTaskManager.execute(lNextTask);
+        assertThat(lNextTask.awaitFinished(), equalTo(true));
+        assertThat(lNextTask.getBatchSize(), equalTo(1));
+        assertThat(lNextTask.getResult(), equalTo(50));
+    }
+
+    @Test
+    public void testBatch_failure() throws InterruptedException {
+        mConfig.setBatchWindow(100);
+        BatchTask lTask1 = new BatchTask("key1", -1);
+        BatchTask lTask2 = new BatchTask("key1", 2);
+        mTaskManager.execute(lTask1);
+        mTaskManager.execute(lTask2);
+
+        // Failure of the batch is the failure of each of its tasks.
+        assertThat(lTask1.awaitFinished(), equalTo(true));
+        assertThat(lTask2.awaitFinished(), equalTo(true));
+        assertThat(lTask1.getException(), instanceOf(IllegalArgumentException.class));
+        assertThat(lTask2.getException(), sameInstance(lTask1.getException()));
+    }
+
+    @Test
+    public void testNotifyProgress_afterFinish() throws InterruptedException {
+        // Notifier is called on a background Thread: its errors go through translateException() to reach the task.
+        TestTaskManager lTaskManager = new TestTaskManager(mConfig) {
+            @Override
+            protected CoreTaskManager createTaskManager(TestTaskManagerConfig pConfig, EventLoopTaskScheduler pEventLoop) {
+                return new CoreTaskManager(pConfig, pEventLoop, new EventLoopLockingStrategy(pEventLoop)) {
+                    @Override
+                    protected TaskManagerException translateException(TaskManagerException pException) {
+                        return new TranslatedException(pException);
+                    }
+                };
+            }
+        };
+        try {
+            NotifierTask lTask = new NotifierTask();
+            lTaskManager.execute(lTask);
+            assertThat(lTask.awaitFinished(), equalTo(true));
+
+            try {
+                lTask.getNotifier().notifyProgress();
+                fail();
+            } catch (TranslatedException eTranslatedException) {
+                // Success
+            }
+        } finally {
+            lTaskManager.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatch_cancelledTaskLeftOut() throws InterruptedException {
+        mConfig.setBatchWindow(100);
+        BatchTask lTask1 = new BatchTask("key1", 1);
+        BatchTask lTask2 = new BatchTask("key1", 2);
+        mTaskManager.execute(lTask1);
+        TaskRef<Integer> lTaskRef2 = mTaskManager.execute(lTask2);
+        assertThat(mTaskManager.cancel(lTaskRef2, true), equalTo(true));
+
+        assertThat(lTask1.awaitFinished(), equalTo(true));
+        assertThat(lTask1.getBatchSize(), equalTo(1));
+        assertThat(lTask2.awaitFinished(NO_CALL_DELAY_MS), equalTo(false));
+    }
+
+    private static boolean awaitInterrupted(BackgroundTask pTask) throws InterruptedException {
+        long lDeadline = System.currentTimeMillis() + TestTaskManager.TIMEOUT_MS;
+        while (!pTask.isInterrupted() && (System.currentTimeMillis() < lDeadline)) {
+            Thread.sleep(10);
+        }
+        return pTask.isInterrupted();
+    }
+
+    private static class IdentifiedTask extends BackgroundTask implements TaskIdentifiable {
+        private final TaskId mTaskId;
+
+        public IdentifiedTask(int pTaskId, Integer pTaskResult) {
+            this(pTaskId, pTaskResult, false);
+        }
+
+        public IdentifiedTask(int pTaskId, Integer pTaskResult, boolean pBlocking) {
+            super(pTaskResult, null, pBlocking);
+            mTaskId = new IntTaskId(pTaskId);
+        }
+
+        public IdentifiedTask(int pTaskId, Exception pTaskException, boolean pBlocking) {
+            super(null, pTaskException, pBlocking);
+            mTaskId = new IntTaskId(pTaskId);
+        }
+
+        @Override
+        public TaskId getId() {
+            return mTaskId;
+        }
+    }
+
+    /**
+     * Keeps its notifier to call it once finished.
+     */
+    private static class NotifierTask extends BackgroundTask {
+        private volatile TaskNotifier mNotifier;
+
+        public NotifierTask() {
+            super(0);
+        }
+
+        @Override
+        public Integer onProcess(TaskNotifier pNotifier) throws Exception {
+            mNotifier = pNotifier;
+            return super.onProcess(pNotifier);
+        }
+
+        public TaskNotifier getNotifier() {
+            return mNotifier;
+        }
+    }
+
+    private static class TranslatedException extends TaskManagerException {
+        private static final long serialVersionUID = 1L;
+
+        public TranslatedException(TaskManagerException pException) {
+            super(pException, "%1$s", pException.getMessage());
+        }
+    }
+
+    /**
+     * Returns ten times its value. Fails the whole batch if its value is negative.
+     */
+    private static class BatchTask extends BackgroundTask implements TaskBatchable<Integer> {
+        private final Object mBatchKey;
+        private final int mValue;
+        private volatile int mBatchSize;
+
+        public BatchTask(Object pBatchKey, int pValue) {
+            super(pValue);
+            mBatchKey = pBatchKey;
+            mValue = pValue;
+            mBatchSize = 0;
+        }
+
+        @Override
+        public Object getBatchKey() {
+            return mBatchKey;
+        }
+
+        @Override
+        public List<Integer> onProcessBatch(List<TaskBatchable<Integer>> pTasks, TaskNotifier pNotifier) throws Exception {
+            List<Integer> lResults = new ArrayList<Integer>(pTasks.size());
+            for (TaskBatchable<Integer> lTask : pTasks) {
+                BatchTask lBatchTask = (BatchTask) lTask;
+                if (lBatchTask.mValue < 0) throw new IllegalArgumentException();
+                lBatchTask.mBatchSize = pTasks.size();
+                lResults.add(lBatchTask.mValue * 10);
+            }
+            return lResults;
+        }
+
+        public int getBatchSize() {
+            return mBatchSize;
+        }
+    }
+
+    private static PriorityTaskExecutor newDaemonExecutor(int pThreadCount) {
+        return new PriorityTaskExecutor(pThreadCount, TimeUnit.HOURS.toMillis(1), new ThreadFactory() {
+            public Thread newThread(Runnable pRunnable) {
+                Thread lThread = new Thread(pRunnable);
+                lThread.setDaemon(true);
+                return lThread;
+            }
+        });
+    }
+
+    /**
+     * Blocks until released, whatever the interruptions received.
+     */
+    private static class StuckTask extends BackgroundTask {
+        private final CountDownLatch mRelease = new CountDownLatch(1);
+
+        public StuckTask() {
+            super(0);
+        }
+
+        @Override
+        public Integer onProcess(TaskNotifier pNotifier) throws Exception {
+            while (true) {
+                try {
+                    mRelease.await();
+                    return super.onProcess(pNotifier);
+                } catch (InterruptedException eInterruptedException) {
+                    // Ignored on purpose.
+                }
+            }
+        }
+
+        @Override
+        public void release() {
+            mRelease.countDown();
+        }
+    }
+
+    /**
+     * Notifies a first progress and waits for it to be received. Then notifies the remaining progress in a burst. The last
+     * progress seen by the progress handler and the number of progress received when the task finishes are recorded.
+     */
+    private static class BurstProgressTask extends BackgroundTask {
+        private final int mProgressCount;
+        private volatile int mProgress;
+        private volatile int mLastProgress;
+        private volatile int mProgressCounterOnFinish;
+
+        public BurstProgressTask(int pProgressCount) {
+            super(pProgressCount);
+            mProgressCount = pProgressCount;
+            mProgress = 0;
+            mLastProgress = 0;
+            mProgressCounterOnFinish = -1;
+        }
+
+        @Override
+        public Integer onProcess(TaskNotifier pNotifier) throws Exception {
+            mProgress = 1;
+            pNotifier.notifyProgress();
+            long lDeadline = System.currentTimeMillis() + TestTaskManager.TIMEOUT_MS;
+            while ((getProgressCounter() == 0) && (System.currentTimeMillis() < lDeadline)) {
+                Thread.sleep(1);
+            }
+
+            for (int i = 2; i <= mProgressCount; ++i) {
+                mProgress = i;
+                pNotifier.notifyProgress();
+            }
+            return super.onProcess(pNotifier);
+        }
+
+        @Override
+        public void onProgress() {
+            mLastProgress = mProgress;
+            super.onProgress();
+        }
+
+        @Override
+        public void onFinish(Integer pTaskResult) {
+            mProgressCounterOnFinish = getProgressCounter();
+            super.onFinish(pTaskResult);
+        }
+
+        public int getLastProgress() {
+            return mLastProgress;
+        }
+
+        public int getProgressCounterOnFinish() {
+            return mProgressCounterOnFinish;
+        }
+    }
+
+    /**
+     * Notifies progress a number of times, each time once the previous progress has been received, and returns that number.
+     */
+    private static class ProgressTask extends BackgroundTask {
+        private final int mProgressCount;
+
+        public ProgressTask(int pProgressCount) {
+            super(pProgressCount);
+            mProgressCount = pProgressCount;
+        }
+
+        @Override
+        public Integer onProcess(TaskNotifier pNotifier) throws Exception {
+            for (int i = 0; i < mProgressCount; ++i) {
+                pNotifier.notifyProgress();
+                long lDeadline = System.currentTimeMillis() + TestTaskManager.TIMEOUT_MS;
+                while ((getProgressCounter() <= i) && (System.currentTimeMillis() < lDeadline)) {
+                    Thread.sleep(1);
+                }
+            }
+            return super.onProcess(pNotifier);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.codexperiments.robolabor.task.core;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventLoopTaskSchedulerTest {
+    private static final long TIMEOUT_MS = 5000;
+
+    private Thread.UncaughtExceptionHandler mDefaultHandler;
+    private List<Throwable> mUncaughtExceptions;
+    private EventLoopTaskScheduler mEventLoop;
+
+    @Before
+    public void setUp() {
+        // Event loop thread reports failures to the default handler since it doesn't have one of its own.
+        mDefaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+        mUncaughtExceptions = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            public void uncaughtException(Thread pThread, Throwable pThrowable) {
+                mUncaughtExceptions.add(pThrowable);
+            }
+        });
+        mEventLoop = new EventLoopTaskScheduler("EventLoopTaskSchedulerTest");
+    }
+
+    @After
+    public void tearDown() {
+        mEventLoop.shutdown();
+        Thread.setDefaultUncaughtExceptionHandler(mDefaultHandler);
+    }
+
+    @Test
+    public void testSchedule_inOrder() throws InterruptedException {
+        final List<Integer> lOrder = Collections.synchronizedList(new ArrayList<Integer>());
+        for (int i = 0; i < 100; ++i) {
+            final int lIndex = i;
+            mEventLoop.schedule(new Runnable() {
+                public void run() {
+                    lOrder.add(lIndex);
+                }
+            });
+        }
+
+        awaitIdle();
+        assertThat(lOrder.size(), equalTo(100));
+        for (int i = 0; i < 100; ++i) {
+            assertThat(lOrder.get(i), equalTo(i));
+        }
+    }
+
+    @Test
+    public void testSchedule_surviveException() throws InterruptedException {
+        final RuntimeException lException = new RuntimeException();
+        final Error lError = new AssertionError();
+        mEventLoop.schedule(new Runnable() {
+            public void run() {
+                throw lException;
+            }
+        });
+        mEventLoop.schedule(new Runnable() {
+            public void run() {
+                throw lError;
+            }
+        });
+
+        awaitIdle();
+        assertThat(mUncaughtExceptions.size(), equalTo(2));
+        assertThat(mUncaughtExceptions.get(0), sameInstance((Throwable) lException));
+        assertThat(mUncaughtExceptions.get(1), sameInstance((Throwable) lError));
+    }
+
+    @Test
+    public void testSchedule_rejectedOnceDead() throws InterruptedException {
+        // Exception handler itself fails: the event loop terminates and must not accept new runnables silently.
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            public void uncaughtException(Thread pThread, Throwable pThrowable) {
+                throw new IllegalStateException();
+            }
+        });
+        mEventLoop.schedule(new Runnable() {
+            public void run() {
+                throw new RuntimeException();
+            }
+        });
+
+        long lDeadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (System.currentTimeMillis() < lDeadline) {
+            try {
+                mEventLoop.schedule(new Runnable() {
+                    public void run() {
+                    }
+                });
+            } catch (RejectedExecutionException eRejectedExecutionException) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail();
+    }
+
+    @Test
+    public void testSchedule_afterShutdown() {
+        mEventLoop.shutdown();
+        try {
+            mEventLoop.schedule(new Runnable() {
+                public void run() {
+                }
+            });
+            fail();
+        } catch (RejectedExecutionException eRejectedExecutionException) {
+            // Success
+        }
+    }
+
+    @Test
+    public void testScheduleIfNecessary_inline() throws InterruptedException {
+        final List<Integer> lOrder = Collections.synchronizedList(new ArrayList<Integer>());
+        mEventLoop.schedule(new Runnable() {
+            public void run() {
+                mEventLoop.scheduleIfNecessary(new Runnable() {
+                    public void run() {
+                        lOrder.add(1);
+                    }
+                });
+                lOrder.add(2);
+            }
+        });
+
+        awaitIdle();
+        assertThat(lOrder.get(0), equalTo(1));
+        assertThat(lOrder.get(1), equalTo(2));
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        final CountDownLatch lIdle = new CountDownLatch(1);
+        mEventLoop.schedule(new Runnable() {
+            public void run() {
+                lIdle.countDown();
+            }
+        });
+        assertThat(lIdle.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+    }
+}
@@ -0,0 +1,156 @@
+package com.codexperiments.robolabor.task.core.helper;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.codexperiments.robolabor.task.handler.Task;
+import com.codexperiments.robolabor.task.handler.TaskNotifier;
+import com.codexperiments.robolabor.task.handler.TaskProgress;
+import com.codexperiments.robolabor.task.handler.TaskStart;
+
+/**
+ * Task recording the handlers called on it. A blocking task doesn't return from onProcess() until released (or interrupted).
+ */
+public class BackgroundTask implements Task<Integer>, TaskStart, TaskProgress {
+    private final Integer mTaskResult;
+    private final Exception mTaskException;
+
+    private final CountDownLatch mProcessStarted;
+    private final CountDownLatch mProcessReleased;
+    private final CountDownLatch mFinished;
+    private final AtomicInteger mProcessCounter;
+    private final AtomicInteger mStartCounter;
+    private final AtomicInteger mProgressCounter;
+    private final AtomicInteger mFinishCounter;
+    private volatile boolean mInterrupted;
+    private volatile Integer mResult;
+    private volatile Throwable mException;
+    private volatile Thread mFinishThread;
+
+    public BackgroundTask(Integer pTaskResult) {
+        this(pTaskResult, null, false);
+    }
+
+    public static BackgroundTask blocking(Integer pTaskResult) {
+        return new BackgroundTask(pTaskResult, null, true);
+    }
+
+    public static BackgroundTask failing(Exception pTaskException) {
+        return new BackgroundTask(null, pTaskException, false);
+    }
+
+    protected BackgroundTask(Integer pTaskResult, Exception pTaskException, boolean pBlocking) {
+        super();
+        mTaskResult = pTaskResult;
+        mTaskException = pTaskException;
+
+        mProcessStarted = new CountDownLatch(1);
+        mProcessReleased = new CountDownLatch(pBlocking ? 1 : 0);
+        mFinished = new CountDownLatch(1);
+        mProcessCounter = new AtomicInteger(0);
+        mStartCounter = new AtomicInteger(0);
+        mProgressCounter = new AtomicInteger(0);
+        mFinishCounter = new AtomicInteger(0);
+        mInterrupted = false;
+        mResult = null;
+        mException = null;
+        mFinishThread = null;
+    }
+
+    @Override
+    public Integer onProcess(TaskNotifier pNotifier) throws Exception {
+        mProcessCounter.incrementAndGet();
+        mProcessStarted.countDown();
+        try {
+            mProcessReleased.await();
+        } catch (InterruptedException eInterruptedException) {
+            mInterrupted = true;
+            throw eInterruptedException;
+        }
+
+        if (mTaskException != null) throw mTaskException;
+        return mTaskResult;
+    }
+
+    @Override
+    public void onStart(boolean pIsRestored) {
+        mStartCounter.incrementAndGet();
+    }
+
+    @Override
+    public void onProgress() {
+        mProgressCounter.incrementAndGet();
+    }
+
+    @Override
+    public void onFinish(Integer pTaskResult) {
+        mResult = pTaskResult;
+        mFinishThread = Thread.currentThread();
+        mFinishCounter.incrementAndGet();
+        mFinished.countDown();
+    }
+
+    @Override
+    public void onFail(Throwable pTaskException) {
+        mException = pTaskException;
+        mFinishThread = Thread.currentThread();
+        mFinishCounter.incrementAndGet();
+        mFinished.countDown();
+    }
+
+    /**
+     * Let a blocking task return from onProcess().
+     */
+    public void release() {
+        mProcessReleased.countDown();
+    }
+
+    public boolean awaitProcessStarted() throws InterruptedException {
+        return mProcessStarted.await(TestTaskManager.TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean awaitFinished() throws InterruptedException {
+        return awaitFinished(TestTaskManager.TIMEOUT_MS);
+    }
+
+    public boolean awaitFinished(long pTimeout) throws InterruptedException {
+        return mFinished.await(pTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isFinished() {
+        return mFinished.getCount() == 0;
+    }
+
+    public boolean isInterrupted() {
+        return mInterrupted;
+    }
+
+    public int getProcessCounter() {
+        return mProcessCounter.get();
+    }
+
+    public int getStartCounter() {
+        return mStartCounter.get();
+    }
+
+    public int getProgressCounter() {
+        return mProgressCounter.get();
+    }
+
+    public int getFinishCounter() {
+        return mFinishCounter.get();
+    }
+
+    public Integer getResult() {
+        return mResult;
+    }
+
+    public Throwable getException() {
+        return mException;
+    }
+
+    public Thread getFinishThread() {
+        return mFinishThread;
+    }
+}
@@ -0,0 +1,93 @@
+package com.codexperiments.robolabor.task.core.helper;
+
+import com.codexperiments.robolabor.task.handler.TaskNotifier;
+
+/**
+ * Managed emitter (see TestTaskManagerConfig) running inner tasks. Several instances with the same Id represent the same emitter
+ * recreated over time (e.g. an Activity recreated after a configuration change).
+ */
+public class TaskEmitter {
+    private final String mId;
+    private volatile Integer mTaskResult;
+    private volatile Throwable mTaskException;
+
+    public TaskEmitter(String pId) {
+        super();
+        mId = pId;
+        mTaskResult = null;
+        mTaskException = null;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public InnerTask innerTask(Integer pTaskResult) {
+        return new InnerTask(pTaskResult, false);
+    }
+
+    public InnerTask blockingInnerTask(Integer pTaskResult) {
+        return new InnerTask(pTaskResult, true);
+    }
+
+    public Integer getTaskResult() {
+        return mTaskResult;
+    }
+
+    public Throwable getTaskException() {
+        return mTaskException;
+    }
+
+    public class InnerTask extends BackgroundTask {
+        private volatile boolean mEmitterNullWhileProcessing;
+        private volatile TaskEmitter mFinishEmitter;
+
+        private InnerTask(Integer pTaskResult, boolean pBlocking) {
+            super(pTaskResult, null, pBlocking);
+            mEmitterNullWhileProcessing = false;
+            mFinishEmitter = null;
+        }
+
+        /**
+         * @return Outer emitter, which is null while the task is processed.
+         */
+        public TaskEmitter getEmitter() {
+            return TaskEmitter.this;
+        }
+
+        @Override
+        public Integer onProcess(TaskNotifier pNotifier) throws Exception {
+            mEmitterNullWhileProcessing = (getEmitter() == null);
+            return super.onProcess(pNotifier);
+        }
+
+        @Override
+        public void onFinish(Integer pTaskResult) {
+            mFinishEmitter = getEmitter();
+            if (mFinishEmitter != null) {
+                mTaskResult = pTaskResult;
+            }
+            super.onFinish(pTaskResult);
+        }
+
+        @Override
+        public void onFail(Throwable pTaskException) {
+            mFinishEmitter = getEmitter();
+            if (mFinishEmitter != null) {
+                mTaskException = pTaskException;
+            }
+            super.onFail(pTaskException);
+        }
+
+        public boolean isEmitterNullWhileProcessing() {
+            return mEmitterNullWhileProcessing;
+        }
+
+        /**
+         * @return Emitter the task was attached to when it finished.
+         */
+        public TaskEmitter getFinishEmitter() {
+            return mFinishEmitter;
+        }
+    }
+}
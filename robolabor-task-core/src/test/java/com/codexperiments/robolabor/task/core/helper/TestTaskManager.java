@@ -0,0 +1,132 @@
+package com.codexperiments.robolabor.task.core.helper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.codexperiments.robolabor.task.TaskRef;
+import com.codexperiments.robolabor.task.core.CoreTaskManager;
+import com.codexperiments.robolabor.task.core.EventLoopLockingStrategy;
+import com.codexperiments.robolabor.task.core.EventLoopTaskScheduler;
+import com.codexperiments.robolabor.task.handler.Task;
+import com.codexperiments.robolabor.task.handler.TaskResult;
+
+/**
+ * CoreTaskManager running on its own event loop. Each method is executed on the event loop and waits for it, as if the test was
+ * running on the event loop itself. Errors raised by the manager are rethrown to the test thread.
+ */
+public class TestTaskManager {
+    public static final long TIMEOUT_MS = 5000;
+
+    private final EventLoopTaskScheduler mEventLoop;
+    private final CoreTaskManager mTaskManager;
+
+    public TestTaskManager(TestTaskManagerConfig pConfig) {
+        super();
+        mEventLoop = new EventLoopTaskScheduler("TestTaskManager-EventLoop");
+        mTaskManager = createTaskManager(pConfig, mEventLoop);
+    }
+
+    /**
+     * Override to test a CoreTaskManager subclass. Called from the constructor.
+     */
+    protected CoreTaskManager createTaskManager(TestTaskManagerConfig pConfig, EventLoopTaskScheduler pEventLoop) {
+        return new CoreTaskManager(pConfig, pEventLoop, new EventLoopLockingStrategy(pEventLoop));
+    }
+
+    public void shutdown() {
+        mEventLoop.shutdown();
+    }
+
+    public EventLoopTaskScheduler getEventLoop() {
+        return mEventLoop;
+    }
+
+    public CoreTaskManager getTaskManager() {
+        return mTaskManager;
+    }
+
+    public void manage(final Object pEmitter) {
+        call(new Callable<Void>() {
+            public Void call() throws Exception {
+                mTaskManager.manage(pEmitter);
+                return null;
+            }
+        });
+    }
+
+    public void unmanage(final Object pEmitter) {
+        call(new Callable<Void>() {
+            public Void call() throws Exception {
+                mTaskManager.unmanage(pEmitter);
+                return null;
+            }
+        });
+    }
+
+    public <TResult> TaskRef<TResult> execute(final Task<TResult> pTask) {
+        return call(new Callable<TaskRef<TResult>>() {
+            public TaskRef<TResult> call() throws Exception {
+                return mTaskManager.execute(pTask);
+            }
+        });
+    }
+
+    public <TResult> TaskRef<TResult> execute(final Task<TResult> pTask, final TaskResult<TResult> pTaskResult) {
+        return call(new Callable<TaskRef<TResult>>() {
+            public TaskRef<TResult> call() throws Exception {
+                return mTaskManager.execute(pTask, pTaskResult);
+            }
+        });
+    }
+
+    public <TResult> boolean rebind(final TaskRef<TResult> pTaskRef, final TaskResult<TResult> pTaskResult) {
+        return call(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return mTaskManager.rebind(pTaskRef, pTaskResult);
+            }
+        });
+    }
+
+    public boolean cancel(final TaskRef<?> pTaskRef, final boolean pMayInterruptIfRunning) {
+        return call(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return mTaskManager.cancel(pTaskRef, pMayInterruptIfRunning);
+            }
+        });
+    }
+
+    /**
+     * Wait until everything scheduled on the event loop so far has been executed.
+     */
+    public void flush() {
+        call(new Callable<Void>() {
+            public Void call() throws Exception {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Execute some code on the event loop and wait for its result.
+     */
+    public <TResult> TResult call(Callable<TResult> pCallable) {
+        FutureTask<TResult> lFuture = new FutureTask<TResult>(pCallable);
+        mEventLoop.schedule(lFuture);
+        try {
+            return lFuture.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException eExecutionException) {
+            Throwable lCause = eExecutionException.getCause();
+            if (lCause instanceof RuntimeException) throw (RuntimeException) lCause;
+            if (lCause instanceof Error) throw (Error) lCause;
+            throw new RuntimeException(lCause);
+        } catch (TimeoutException eTimeoutException) {
+            throw new AssertionError("Event loop is stuck");
+        } catch (InterruptedException eInterruptedException) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError("Test interrupted");
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.codexperiments.robolabor.task.core.helper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.codexperiments.robolabor.task.TaskExecutionMode;
+import com.codexperiments.robolabor.task.TaskManagerConfig;
+import com.codexperiments.robolabor.task.handler.Task;
+import com.codexperiments.robolabor.task.handler.TaskPriority;
+import com.codexperiments.robolabor.task.util.PriorityTaskExecutor;
+import com.codexperiments.robolabor.task.util.TaskResultCache;
+
+/**
+ * Configuration whose options can be changed by tests before tasks are executed. Emitters are managed only if they are
+ * TaskEmitter instances. Everything else is allowed, including unmanaged emitters and inner tasks.
+ */
+public class TestTaskManagerConfig implements TaskManagerConfig
+{
+    private ExecutorService mDefaultExecutor;
+    private Executor mExecutor;
+    private TaskExecutionMode mExecutionMode;
+    private long mBatchWindow;
+    private long mThrottlePeriod;
+    private long mTimeout;
+    private long mProgressInterval;
+    private long mGracePeriod;
+    private TaskResultCache mResultCache;
+    private boolean mKeepResultOnHold;
+
+    public TestTaskManagerConfig()
+    {
+        super();
+        mDefaultExecutor = Executors.newCachedThreadPool();
+        mExecutor = mDefaultExecutor;
+        mExecutionMode = TaskExecutionMode.DROP;
+        mBatchWindow = 0;
+        mThrottlePeriod = 0;
+        mTimeout = 0;
+        mProgressInterval = 0;
+        mGracePeriod = 0;
+        mResultCache = null;
+        mKeepResultOnHold = true;
+    }
+
+    /**
+     * Stop the threads of the default executor.
+     */
+    public void shutdown()
+    {
+        mDefaultExecutor.shutdownNow();
+    }
+
+    public void setExecutor(Executor pExecutor)
+    {
+        mExecutor = pExecutor;
+    }
+
+    public void setExecutionMode(TaskExecutionMode pExecutionMode)
+    {
+        mExecutionMode = pExecutionMode;
+    }
+
+    public void setBatchWindow(long pBatchWindow)
+    {
+        mBatchWindow = pBatchWindow;
+    }
+
+    public void setThrottlePeriod(long pThrottlePeriod)
+    {
+        mThrottlePeriod = pThrottlePeriod;
+    }
+
+    public void setTimeout(long pTimeout)
+    {
+        mTimeout = pTimeout;
+    }
+
+    public void setProgressInterval(long pProgressInterval)
+    {
+        mProgressInterval = pProgressInterval;
+    }
+
+    public void setGracePeriod(long pGracePeriod)
+    {
+        mGracePeriod = pGracePeriod;
+    }
+
+    public void setResultCache(TaskResultCache pResultCache)
+    {
+        mResultCache = pResultCache;
+    }
+
+    public void setKeepResultOnHold(boolean pKeepResultOnHold)
+    {
+        mKeepResultOnHold = pKeepResultOnHold;
+    }
+
+    @Override
+    public Object resolveEmitterId(Object pEmitter)
+    {
+        return (pEmitter instanceof TaskEmitter) ? ((TaskEmitter) pEmitter).getId() : null;
+    }
+
+    @Override
+    public Executor resolveExecutor(Task<?> pTask)
+    {
+        return mExecutor;
+    }
+
+    @Override
+    public long resolveBatchWindow(Task<?> pTask)
+    {
+        return mBatchWindow;
+    }
+
+    @Override
+    public int resolvePriority(Task<?> pTask)
+    {
+        return (pTask instanceof TaskPriority) ? ((TaskPriority) pTask).getPriority() : PriorityTaskExecutor.DEFAULT_PRIORITY;
+    }
+
+    @Override
+    public TaskExecutionMode resolveExecutionMode(Task<?> pTask)
+    {
+        return mExecutionMode;
+    }
+
+    @Override
+    public long resolveThrottlePeriod(Task<?> pTask)
+    {
+        return mThrottlePeriod;
+    }
+
+    @Override
+    public long resolveTimeout(Task<?> pTask)
+    {
+        return mTimeout;
+    }
+
+    @Override
+    public long resolveProgressInterval(Task<?> pTask)
+    {
+        return mProgressInterval;
+    }
+
+    @Override
+    public TaskResultCache resolveResultCache(Task<?> pTask)
+    {
+        return mResultCache;
+    }
+
+    @Override
+    public boolean keepResultOnHold(Task<?> pTask)
+    {
+        return mKeepResultOnHold;
+    }
+
+    @Override
+    public long resolveGracePeriod(Task<?> pTask)
+    {
+        return mGracePeriod;
+    }
+
+    @Override
+    public boolean allowUnmanagedEmitters()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean allowInnerTasks()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean crashOnHandlerFailure()
+    {
+        return true;
+    }
+}
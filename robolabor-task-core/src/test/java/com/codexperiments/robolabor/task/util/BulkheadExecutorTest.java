@@ -0,0 +1,344 @@
+package com.codexperiments.robolabor.task.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codexperiments.robolabor.task.TaskExecutor;
+
+public class BulkheadExecutorTest {
+    private static final long TIMEOUT_MS = 5000;
+
+    private ExecutorService mExecutor;
+    private BulkheadExecutor mBulkheadExecutor;
+    private AtomicInteger mRunningCount;
+    private AtomicInteger mMaxRunningCount;
+    private CountDownLatch mRelease;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newCachedThreadPool();
+        mBulkheadExecutor = new BulkheadExecutor(mExecutor, 2);
+        mRunningCount = new AtomicInteger(0);
+        mMaxRunningCount = new AtomicInteger(0);
+        mRelease = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        mRelease.countDown();
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testExecute_capped() throws InterruptedException {
+        CountDownLatch lStarted = new CountDownLatch(2);
+        CountDownLatch lDone = new CountDownLatch(5);
+        for (int i = 0; i < 5; ++i) {
+            mBulkheadExecutor.execute("category", new GateTask(lStarted, lDone));
+        }
+
+        assertThat(lStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(mBulkheadExecutor.getWaitingCount("category"), equalTo(3));
+        mRelease.countDown();
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(mMaxRunningCount.get(), equalTo(2));
+        assertThat(mBulkheadExecutor.getWaitingCount("category"), equalTo(0));
+    }
+
+    @Test
+    public void testExecute_categoriesIndependent() throws InterruptedException {
+        mBulkheadExecutor.setLimit("category1", 1);
+        CountDownLatch lStarted = new CountDownLatch(1);
+        CountDownLatch lBlockedDone = new CountDownLatch(2);
+        mBulkheadExecutor.execute("category1", new GateTask(lStarted, lBlockedDone));
+        assertThat(lStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+
+        // Category 1 is full but category 2 is not affected.
+        CountDownLatch lDone = new CountDownLatch(1);
+        mBulkheadExecutor.execute("category1", new GateTask(new CountDownLatch(1), lBlockedDone));
+        mBulkheadExecutor.execute("category2", new RecordingTask("other", new ArrayList<String>(), lDone));
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(mBulkheadExecutor.getWaitingCount("category1"), equalTo(1));
+
+        mRelease.countDown();
+        assertThat(lBlockedDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+    }
+
+    @Test
+    public void testSlotHandover_inOrder() throws InterruptedException {
+        mBulkheadExecutor.setLimit("category", 1);
+        List<String> lOrder = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch lStarted = new CountDownLatch(1);
+        CountDownLatch lDone = new CountDownLatch(5);
+        mBulkheadExecutor.execute("category", new GateTask(lStarted, lDone));
+        for (int i = 1; i < 5; ++i) {
+            mBulkheadExecutor.execute("category", new RecordingTask(Integer.toString(i), lOrder, lDone));
+        }
+        assertThat(lStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(mBulkheadExecutor.getWaitingCount("category"), equalTo(4));
+
+        // Each task hands over its slot to the next waiting one when over.
+        mRelease.countDown();
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(lOrder.toString(), equalTo("[1, 2, 3, 4]"));
+    }
+
+    @Test
+    public void testSetLimit_raised() throws InterruptedException {
+        mBulkheadExecutor.setLimit("category", 1);
+        CountDownLatch lStarted = new CountDownLatch(3);
+        CountDownLatch lDone = new CountDownLatch(3);
+        for (int i = 0; i < 3; ++i) {
+            mBulkheadExecutor.execute("category", new GateTask(lStarted, lDone));
+        }
+        assertThat(lStarted.await(100, TimeUnit.MILLISECONDS), equalTo(false));
+        assertThat(mBulkheadExecutor.getWaitingCount("category"), equalTo(2));
+
+        // Waiting tasks start right away.
+        mBulkheadExecutor.setLimit("category", 3);
+        assertThat(lStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(mBulkheadExecutor.getWaitingCount("category"), equalTo(0));
+    }
+
+    @Test
+    public void testSetLimit_lowered() throws InterruptedException {
+        mBulkheadExecutor.setLimit("category", 3);
+        CountDownLatch lStarted = new CountDownLatch(3);
+        CountDownLatch lDone = new CountDownLatch(3);
+        for (int i = 0; i < 3; ++i) {
+            mBulkheadExecutor.execute("category", new GateTask(lStarted, lDone));
+        }
+        assertThat(lStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+
+        // Running tasks are not affected but later ones run one at a time.
+        mBulkheadExecutor.setLimit("category", 1);
+        AtomicInteger lRunningCount = new AtomicInteger(0);
+        AtomicInteger lMaxRunningCount = new AtomicInteger(0);
+        CountDownLatch lLaterDone = new CountDownLatch(3);
+        for (int i = 0; i < 3; ++i) {
+            mBulkheadExecutor.execute("category", new CountingTask(lRunningCount, lMaxRunningCount, lLaterDone));
+        }
+        assertThat(mBulkheadExecutor.getWaitingCount("category"), equalTo(3));
+        mRelease.countDown();
+
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(lLaterDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(lMaxRunningCount.get(), equalTo(1));
+    }
+
+    @Test
+    public void testExecute_slotReleasedOnRejection() throws InterruptedException {
+        final AtomicBoolean lReject = new AtomicBoolean(true);
+        BulkheadExecutor lBulkheadExecutor = new BulkheadExecutor(new Executor() {
+            public void execute(Runnable pRunnable) {
+                if (lReject.get()) throw new RejectedExecutionException();
+                mExecutor.execute(pRunnable);
+            }
+        }, 1);
+
+        try {
+            lBulkheadExecutor.execute("category", new RecordingTask("rejected", new ArrayList<String>(), new CountDownLatch(1)));
+            fail();
+        } catch (RejectedExecutionException eRejectedExecutionException) {
+            // Success
+        }
+
+        // Slot of the rejected task is available again.
+        lReject.set(false);
+        CountDownLatch lDone = new CountDownLatch(1);
+        lBulkheadExecutor.execute("category", new RecordingTask("accepted", new ArrayList<String>(), lDone));
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+    }
+
+    @Test
+    public void testRemove_waiting() throws InterruptedException {
+        mBulkheadExecutor.setLimit("category", 1);
+        CountDownLatch lStarted = new CountDownLatch(1);
+        CountDownLatch lDone = new CountDownLatch(1);
+        CountDownLatch lRemovedDone = new CountDownLatch(1);
+        RecordingTask lRemoved = new RecordingTask("removed", new ArrayList<String>(), lRemovedDone);
+        mBulkheadExecutor.execute("category", new GateTask(lStarted, lDone));
+        mBulkheadExecutor.execute("category", lRemoved);
+        assertThat(lStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+
+        TaskExecutor lExecutor = mBulkheadExecutor.forCategory("category");
+        assertThat(lExecutor.remove(lRemoved), equalTo(true));
+        assertThat(lExecutor.remove(lRemoved), equalTo(false));
+        assertThat(mBulkheadExecutor.getWaitingCount("category"), equalTo(0));
+        mRelease.countDown();
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(lRemovedDone.await(100, TimeUnit.MILLISECONDS), equalTo(false));
+    }
+
+    @Test
+    public void testRemove_submitted() throws InterruptedException {
+        // Single worker is busy: a task owning a slot is still queued in the shared executor.
+        PriorityTaskExecutor lExecutor = newDaemonExecutor(1);
+        BulkheadExecutor lBulkheadExecutor = new BulkheadExecutor(lExecutor, 1);
+        CountDownLatch lStarted = new CountDownLatch(1);
+        CountDownLatch lDone = new CountDownLatch(1);
+        lExecutor.execute(new GateTask(lStarted, lDone));
+        assertThat(lStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+
+        CountDownLatch lRemovedDone = new CountDownLatch(1);
+        RecordingTask lRemoved = new RecordingTask("removed", new ArrayList<String>(), lRemovedDone);
+        CountDownLatch lNextDone = new CountDownLatch(1);
+        lBulkheadExecutor.execute("category", lRemoved);
+        lBulkheadExecutor.execute("category", new RecordingTask("next", new ArrayList<String>(), lNextDone));
+        assertThat(lBulkheadExecutor.forCategory("category").remove(lRemoved), equalTo(true));
+
+        // Slot is handed over to the next task.
+        mRelease.countDown();
+        assertThat(lNextDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(lRemovedDone.getCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testRelease_stuck() throws InterruptedException {
+        // Single slot and single worker are taken by a stuck task: both are released.
+        PriorityTaskExecutor lExecutor = newDaemonExecutor(1);
+        BulkheadExecutor lBulkheadExecutor = new BulkheadExecutor(lExecutor, 1);
+        CountDownLatch lStarted = new CountDownLatch(1);
+        CountDownLatch lDone = new CountDownLatch(1);
+        final AtomicReference<Thread> lStuckThread = new AtomicReference<Thread>();
+        GateTask lStuck = new GateTask(lStarted, lDone) {
+            @Override
+            public void run() {
+                lStuckThread.set(Thread.currentThread());
+                super.run();
+            }
+        };
+        CountDownLatch lNextDone = new CountDownLatch(1);
+        lBulkheadExecutor.execute("category", lStuck);
+        lBulkheadExecutor.execute("category", new RecordingTask("next", new ArrayList<String>(), lNextDone));
+        assertThat(lStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+
+        TaskExecutor lCategoryExecutor = lBulkheadExecutor.forCategory("category");
+        assertThat(lCategoryExecutor.release(lStuck, lStuckThread.get()), equalTo(true));
+        assertThat(lNextDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(lCategoryExecutor.release(lStuck, lStuckThread.get()), equalTo(false));
+
+        // Once the stuck task is over, its slot is not released a second time: the limit still holds.
+        mRelease.countDown();
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        CountDownLatch lLaterStarted = new CountDownLatch(2);
+        CountDownLatch lLaterDone = new CountDownLatch(2);
+        mRelease = new CountDownLatch(1);
+        lBulkheadExecutor.execute("category", new GateTask(lLaterStarted, lLaterDone));
+        lBulkheadExecutor.execute("category", new GateTask(lLaterStarted, lLaterDone));
+        assertThat(lLaterStarted.await(100, TimeUnit.MILLISECONDS), equalTo(false));
+        assertThat(lBulkheadExecutor.getWaitingCount("category"), equalTo(1));
+        mRelease.countDown();
+        assertThat(lLaterDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+    }
+
+    private static PriorityTaskExecutor newDaemonExecutor(int pThreadCount) {
+        return new PriorityTaskExecutor(pThreadCount, TimeUnit.HOURS.toMillis(1), new ThreadFactory() {
+            public Thread newThread(Runnable pRunnable) {
+                Thread lThread = new Thread(pRunnable);
+                lThread.setDaemon(true);
+                return lThread;
+            }
+        });
+    }
+
+    /**
+     * Waits for the test to release it, counting the number of gate tasks running at the same time.
+     */
+    private class GateTask implements Runnable {
+        private final CountDownLatch mStarted;
+        private final CountDownLatch mDone;
+
+        public GateTask(CountDownLatch pStarted, CountDownLatch pDone) {
+            super();
+            mStarted = pStarted;
+            mDone = pDone;
+        }
+
+        @Override
+        public void run() {
+            int lRunningCount = mRunningCount.incrementAndGet();
+            updateMax(mMaxRunningCount, lRunningCount);
+            mStarted.countDown();
+            try {
+                mRelease.await();
+            } catch (InterruptedException eInterruptedException) {
+                Thread.currentThread().interrupt();
+            } finally {
+                mRunningCount.decrementAndGet();
+                mDone.countDown();
+            }
+        }
+    }
+
+    private static class CountingTask implements Runnable {
+        private final AtomicInteger mRunningCount;
+        private final AtomicInteger mMaxRunningCount;
+        private final CountDownLatch mDone;
+
+        public CountingTask(AtomicInteger pRunningCount, AtomicInteger pMaxRunningCount, CountDownLatch pDone) {
+            super();
+            mRunningCount = pRunningCount;
+            mMaxRunningCount = pMaxRunningCount;
+            mDone = pDone;
+        }
+
+        @Override
+        public void run() {
+            updateMax(mMaxRunningCount, mRunningCount.incrementAndGet());
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException eInterruptedException) {
+                Thread.currentThread().interrupt();
+            } finally {
+                mRunningCount.decrementAndGet();
+                mDone.countDown();
+            }
+        }
+    }
+
+    private static class RecordingTask implements Runnable {
+        private final String mName;
+        private final List<String> mOrder;
+        private final CountDownLatch mDone;
+
+        public RecordingTask(String pName, List<String> pOrder, CountDownLatch pDone) {
+            super();
+            mName = pName;
+            mOrder = pOrder;
+            mDone = pDone;
+        }
+
+        @Override
+        public void run() {
+            mOrder.add(mName);
+            mDone.countDown();
+        }
+    }
+
+    private static void updateMax(AtomicInteger pMax, int pValue) {
+        int lMax;
+        while ((lMax = pMax.get()) < pValue) {
+            if (pMax.compareAndSet(lMax, pValue)) return;
+        }
+    }
+}
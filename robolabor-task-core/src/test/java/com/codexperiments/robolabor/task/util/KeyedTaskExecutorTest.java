@@ -0,0 +1,243 @@
+package com.codexperiments.robolabor.task.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyedTaskExecutorTest {
+    private static final long TIMEOUT_MS = 5000;
+
+    private ExecutorService mExecutor;
+    private KeyedTaskExecutor mKeyedExecutor;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newFixedThreadPool(4);
+        mKeyedExecutor = new KeyedTaskExecutor(mExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testExecute_serializedPerKey() throws InterruptedException {
+        final int lTaskCount = 100;
+        final List<Integer> lOrder = Collections.synchronizedList(new ArrayList<Integer>());
+        final AtomicInteger lRunning = new AtomicInteger(0);
+        final AtomicBoolean lOverlap = new AtomicBoolean(false);
+        final CountDownLatch lDone = new CountDownLatch(lTaskCount);
+        Executor lKeyExecutor = mKeyedExecutor.forKey("key");
+        for (int i = 0; i < lTaskCount; ++i) {
+            final int lIndex = i;
+            lKeyExecutor.execute(new Runnable() {
+                public void run() {
+                    if (lRunning.incrementAndGet() > 1) lOverlap.set(true);
+                    lOrder.add(lIndex);
+                    Thread.yield();
+                    lRunning.decrementAndGet();
+                    lDone.countDown();
+                }
+            });
+        }
+
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(lOverlap.get(), equalTo(false));
+        for (int i = 0; i < lTaskCount; ++i) {
+            assertThat(lOrder.get(i), equalTo(i));
+        }
+        awaitNoActiveKey();
+    }
+
+    @Test
+    public void testExecute_otherKeysNotBlocked() throws InterruptedException {
+        final CountDownLatch lRelease = new CountDownLatch(1);
+        final CountDownLatch lOtherKeyDone = new CountDownLatch(1);
+        final CountDownLatch lSameKeyDone = new CountDownLatch(1);
+        mKeyedExecutor.execute("key1", new Runnable() {
+            public void run() {
+                try {
+                    lRelease.await();
+                } catch (InterruptedException eInterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        mKeyedExecutor.execute("key1", new CountDownRunnable(lSameKeyDone));
+        mKeyedExecutor.execute("key2", new CountDownRunnable(lOtherKeyDone));
+
+        assertThat(lOtherKeyDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(lSameKeyDone.await(100, TimeUnit.MILLISECONDS), equalTo(false));
+        lRelease.countDown();
+        assertThat(lSameKeyDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        awaitNoActiveKey();
+    }
+
+    @Test
+    public void testExecute_keyReleasedOnRejection() throws InterruptedException {
+        final AtomicBoolean lReject = new AtomicBoolean(true);
+        KeyedTaskExecutor lKeyedExecutor = new KeyedTaskExecutor(new Executor() {
+            public void execute(Runnable pRunnable) {
+                if (lReject.get()) throw new RejectedExecutionException();
+                mExecutor.execute(pRunnable);
+            }
+        });
+
+        try {
+            lKeyedExecutor.execute("key", new CountDownRunnable(new CountDownLatch(1)));
+            fail();
+        } catch (RejectedExecutionException eRejectedExecutionException) {
+            // Success
+        }
+        assertThat(lKeyedExecutor.getActiveKeyCount(), equalTo(0));
+
+        // Key is not blocked by the rejected task.
+        lReject.set(false);
+        CountDownLatch lDone = new CountDownLatch(1);
+        lKeyedExecutor.execute("key", new CountDownRunnable(lDone));
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+    }
+
+    @Test
+    public void testExecute_nullKey() throws InterruptedException {
+        CountDownLatch lDone = new CountDownLatch(1);
+        mKeyedExecutor.execute(null, new CountDownRunnable(lDone));
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(mKeyedExecutor.getActiveKeyCount(), equalTo(0));
+    }
+
+    @Test
+    public void testRemove_waiting() throws InterruptedException {
+        BlockingRunnable lRunning = new BlockingRunnable();
+        CountDownLatch lRemovedDone = new CountDownLatch(1);
+        CountDownRunnable lRemoved = new CountDownRunnable(lRemovedDone);
+        mKeyedExecutor.execute("key", lRunning);
+        mKeyedExecutor.execute("key", lRemoved);
+        assertThat(lRunning.awaitStarted(), equalTo(true));
+
+        assertThat(mKeyedExecutor.remove("key", lRemoved), equalTo(true));
+        assertThat(mKeyedExecutor.remove("key", lRemoved), equalTo(false));
+        assertThat(mKeyedExecutor.remove("key", lRunning), equalTo(false));
+        lRunning.release();
+        awaitNoActiveKey();
+        assertThat(lRemovedDone.getCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testRemove_submitted() throws InterruptedException {
+        // Single worker is busy: next task of the key is submitted but still queued in the shared executor.
+        PriorityTaskExecutor lExecutor = newDaemonExecutor(1);
+        KeyedTaskExecutor lKeyedExecutor = new KeyedTaskExecutor(lExecutor);
+        BlockingRunnable lBusy = new BlockingRunnable();
+        lExecutor.execute(lBusy);
+        assertThat(lBusy.awaitStarted(), equalTo(true));
+
+        CountDownLatch lRemovedDone = new CountDownLatch(1);
+        CountDownRunnable lRemoved = new CountDownRunnable(lRemovedDone);
+        CountDownLatch lNextDone = new CountDownLatch(1);
+        lKeyedExecutor.execute("key", lRemoved);
+        lKeyedExecutor.execute("key", new CountDownRunnable(lNextDone));
+        assertThat(lKeyedExecutor.remove("key", lRemoved), equalTo(true));
+
+        // Key moves on to its next task.
+        lBusy.release();
+        assertThat(lNextDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(lRemovedDone.getCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testRelease_stuck() throws InterruptedException {
+        BlockingRunnable lStuck = new BlockingRunnable();
+        CountDownLatch lNextDone = new CountDownLatch(1);
+        mKeyedExecutor.execute("key", lStuck);
+        mKeyedExecutor.execute("key", new CountDownRunnable(lNextDone));
+        assertThat(lStuck.awaitStarted(), equalTo(true));
+
+        // Next task runs while the stuck one is still running.
+        assertThat(mKeyedExecutor.release("key", lStuck, lStuck.mThread), equalTo(true));
+        assertThat(lNextDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(mKeyedExecutor.release("key", lStuck, lStuck.mThread), equalTo(false));
+
+        // Once the stuck task is over, the key is not moved on a second time.
+        lStuck.release();
+        awaitNoActiveKey();
+    }
+
+    /**
+     * Key is released right after its last task has run, i.e. slightly after the task itself has notified its completion.
+     */
+    private void awaitNoActiveKey() throws InterruptedException {
+        long lDeadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while ((mKeyedExecutor.getActiveKeyCount() > 0) && (System.currentTimeMillis() < lDeadline)) {
+            Thread.sleep(1);
+        }
+        assertThat(mKeyedExecutor.getActiveKeyCount(), equalTo(0));
+    }
+
+    private static class BlockingRunnable implements Runnable {
+        private final CountDownLatch mStarted = new CountDownLatch(1);
+        private final CountDownLatch mRelease = new CountDownLatch(1);
+        private volatile Thread mThread;
+
+        @Override
+        public void run() {
+            mThread = Thread.currentThread();
+            mStarted.countDown();
+            try {
+                mRelease.await();
+            } catch (InterruptedException eInterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public boolean awaitStarted() throws InterruptedException {
+            return mStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+
+        public void release() {
+            mRelease.countDown();
+        }
+    }
+
+    private static PriorityTaskExecutor newDaemonExecutor(int pThreadCount) {
+        return new PriorityTaskExecutor(pThreadCount, TimeUnit.HOURS.toMillis(1), new ThreadFactory() {
+            public Thread newThread(Runnable pRunnable) {
+                Thread lThread = new Thread(pRunnable);
+                lThread.setDaemon(true);
+                return lThread;
+            }
+        });
+    }
+
+    private static class CountDownRunnable implements Runnable {
+        private final CountDownLatch mLatch;
+
+        public CountDownRunnable(CountDownLatch pLatch) {
+            super();
+            mLatch = pLatch;
+        }
+
+        @Override
+        public void run() {
+            mLatch.countDown();
+        }
+    }
+}
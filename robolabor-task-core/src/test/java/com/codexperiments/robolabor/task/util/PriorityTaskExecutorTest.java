@@ -0,0 +1,268 @@
+package com.codexperiments.robolabor.task.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.codexperiments.robolabor.task.handler.TaskPriority;
+
+public class PriorityTaskExecutorTest {
+    private static final long TIMEOUT_MS = 5000;
+    private static final long NO_AGING = TimeUnit.HOURS.toMillis(1);
+
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        // Unblock workers left waiting by a failed test.
+        mRelease.countDown();
+    }
+
+    @Test
+    public void testExecute_byPriority() throws InterruptedException {
+        PriorityTaskExecutor lExecutor = newExecutor(1, NO_AGING);
+        List<String> lOrder = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch lBlockerStarted = new CountDownLatch(1);
+        lExecutor.execute(new BlockingTask(lBlockerStarted, mRelease));
+        assertThat(lBlockerStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+
+        CountDownLatch lDone = new CountDownLatch(4);
+        lExecutor.execute(new RecordingTask("low", 0, lOrder, lDone));
+        lExecutor.execute(new RecordingTask("high1", 5, lOrder, lDone));
+        lExecutor.execute(new RecordingTask("medium", 1, lOrder, lDone));
+        lExecutor.execute(new RecordingTask("high2", 5, lOrder, lDone));
+        mRelease.countDown();
+
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        // Highest priority first, then submission order for equal priorities.
+        assertThat(lOrder.toString(), equalTo("[high1, high2, medium, low]"));
+    }
+
+    @Test
+    public void testExecute_aging() throws InterruptedException {
+        PriorityTaskExecutor lExecutor = newExecutor(1, 10);
+        List<String> lOrder = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch lBlockerStarted = new CountDownLatch(1);
+        lExecutor.execute(new BlockingTask(lBlockerStarted, mRelease));
+        assertThat(lBlockerStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+
+        // Low priority task waits long enough to be raised above the high priority one submitted later.
+        CountDownLatch lDone = new CountDownLatch(2);
+        lExecutor.execute(new RecordingTask("low", 0, lOrder, lDone));
+        Thread.sleep(100);
+        lExecutor.execute(new RecordingTask("high", 2, lOrder, lDone));
+        mRelease.countDown();
+
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(lOrder.toString(), equalTo("[low, high]"));
+    }
+
+    @Test
+    public void testExecute_backToBackWithOneIdleWorker() throws InterruptedException {
+        // Woken worker may take the first task before the second is submitted, in which case everything is fine. Repeat to
+        // make sure the second submission also happens while the worker is still waking up.
+        for (int i = 0; i < 50; ++i) {
+            PriorityTaskExecutor lExecutor = newExecutor(2, NO_AGING);
+            CountDownLatch lRelease = new CountDownLatch(1);
+            try {
+                // Start one worker and let it become idle.
+                CountDownLatch lWarmUp = new CountDownLatch(1);
+                lExecutor.execute(new RecordingTask("warm-up", 0, new ArrayList<String>(), lWarmUp));
+                assertThat(lWarmUp.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+                Thread.sleep(5);
+
+                // The idle worker can take only one of them: a second worker must be started for the other.
+                CountDownLatch lStarted = new CountDownLatch(2);
+                lExecutor.execute(new BlockingTask(lStarted, lRelease));
+                lExecutor.execute(new BlockingTask(lStarted, lRelease));
+                assertThat(lStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+            } finally {
+                lRelease.countDown();
+            }
+        }
+    }
+
+    @Test
+    public void testRemove() throws InterruptedException {
+        PriorityTaskExecutor lExecutor = newExecutor(1, NO_AGING);
+        List<String> lOrder = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch lBlockerStarted = new CountDownLatch(1);
+        lExecutor.execute(new BlockingTask(lBlockerStarted, mRelease));
+        assertThat(lBlockerStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+
+        CountDownLatch lDone = new CountDownLatch(2);
+        RecordingTask lRemovedTask = new RecordingTask("removed", 0, lOrder, lDone);
+        lExecutor.execute(lRemovedTask);
+        lExecutor.execute(new RecordingTask("kept", 0, lOrder, lDone));
+        assertThat(lExecutor.remove(lRemovedTask), equalTo(true));
+        assertThat(lExecutor.remove(lRemovedTask), equalTo(false));
+        mRelease.countDown();
+
+        assertThat(lDone.await(200, TimeUnit.MILLISECONDS), equalTo(false));
+        assertThat(lOrder.toString(), equalTo("[kept]"));
+    }
+
+    @Test
+    public void testReleaseWorker() throws InterruptedException {
+        final List<Thread> lThreads = Collections.synchronizedList(new ArrayList<Thread>());
+        PriorityTaskExecutor lExecutor = newExecutor(1, NO_AGING);
+        CountDownLatch lBlockerStarted = new CountDownLatch(1);
+        lExecutor.execute(new BlockingTask(lBlockerStarted, mRelease) {
+            @Override
+            public void run() {
+                lThreads.add(Thread.currentThread());
+                super.run();
+            }
+        });
+        assertThat(lBlockerStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+
+        // Stuck worker is replaced so that the next task doesn't wait for it.
+        CountDownLatch lDone = new CountDownLatch(1);
+        lExecutor.execute(new RecordingTask("next", 0, new ArrayList<String>(), lDone));
+        assertThat(lExecutor.releaseWorker(lThreads.get(0)), equalTo(true));
+        assertThat(lExecutor.releaseWorker(lThreads.get(0)), equalTo(false));
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+    }
+
+    @Test
+    public void testShutdown() throws InterruptedException {
+        PriorityTaskExecutor lExecutor = newExecutor(2, NO_AGING);
+        List<String> lOrder = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch lBlockerStarted = new CountDownLatch(1);
+        lExecutor.execute(new BlockingTask(lBlockerStarted, mRelease));
+        assertThat(lBlockerStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        CountDownLatch lDone = new CountDownLatch(1);
+        lExecutor.execute(new RecordingTask("queued", 0, lOrder, lDone));
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+
+        // New tasks are rejected but the running one goes on until it is over.
+        lExecutor.shutdown();
+        assertThat(lExecutor.isShutdown(), equalTo(true));
+        try {
+            lExecutor.execute(new RecordingTask("rejected", 0, lOrder, lDone));
+            fail();
+        } catch (RejectedExecutionException eRejectedExecutionException) {
+            // Success
+        }
+        assertThat(lExecutor.awaitTermination(100, TimeUnit.MILLISECONDS), equalTo(false));
+        assertThat(lExecutor.isTerminated(), equalTo(false));
+
+        mRelease.countDown();
+        assertThat(lExecutor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(lExecutor.isTerminated(), equalTo(true));
+        assertThat(lOrder.toString(), equalTo("[queued]"));
+    }
+
+    @Test
+    public void testShutdown_neverStarted() throws InterruptedException {
+        PriorityTaskExecutor lExecutor = newExecutor(1, NO_AGING);
+        lExecutor.shutdown();
+        assertThat(lExecutor.isTerminated(), equalTo(true));
+    }
+
+    @Test
+    public void testShutdownNow() throws InterruptedException {
+        PriorityTaskExecutor lExecutor = newExecutor(1, NO_AGING);
+        List<String> lOrder = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch lBlockerStarted = new CountDownLatch(1);
+        // Not released by the test: only the interruption ends it.
+        lExecutor.execute(new BlockingTask(lBlockerStarted, new CountDownLatch(1)));
+        assertThat(lBlockerStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        RecordingTask lQueuedTask = new RecordingTask("queued", 0, lOrder, new CountDownLatch(1));
+        lExecutor.execute(lQueuedTask);
+
+        List<Runnable> lQueuedRunnables = lExecutor.shutdownNow();
+        assertThat(lQueuedRunnables.size(), equalTo(1));
+        assertThat(lQueuedRunnables.get(0) == lQueuedTask, equalTo(true));
+        assertThat(lExecutor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(lOrder.isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void testSubmit_byPriority() throws Exception {
+        PriorityTaskExecutor lExecutor = newExecutor(1, NO_AGING);
+        List<String> lOrder = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch lBlockerStarted = new CountDownLatch(1);
+        lExecutor.execute(new BlockingTask(lBlockerStarted, mRelease));
+        assertThat(lBlockerStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+
+        // Tasks wrapped in a Future keep their priority.
+        CountDownLatch lDone = new CountDownLatch(2);
+        Future<?> lLowFuture = lExecutor.submit(new RecordingTask("low", 0, lOrder, lDone));
+        Future<?> lHighFuture = lExecutor.submit(new RecordingTask("high", 5, lOrder, lDone));
+        mRelease.countDown();
+
+        lLowFuture.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        lHighFuture.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertThat(lOrder.toString(), equalTo("[high, low]"));
+    }
+
+    private static PriorityTaskExecutor newExecutor(int pThreadCount, long pAgingPeriod) {
+        return new PriorityTaskExecutor(pThreadCount, pAgingPeriod, new ThreadFactory() {
+            public Thread newThread(Runnable pRunnable) {
+                Thread lThread = new Thread(pRunnable);
+                lThread.setDaemon(true);
+                return lThread;
+            }
+        });
+    }
+
+    private static class BlockingTask implements Runnable {
+        private final CountDownLatch mStarted;
+        private final CountDownLatch mRelease;
+
+        public BlockingTask(CountDownLatch pStarted, CountDownLatch pRelease) {
+            super();
+            mStarted = pStarted;
+            mRelease = pRelease;
+        }
+
+        @Override
+        public void run() {
+            mStarted.countDown();
+            try {
+                mRelease.await();
+            } catch (InterruptedException eInterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class RecordingTask implements Runnable, TaskPriority {
+        private final String mName;
+        private final int mPriority;
+        private final List<String> mOrder;
+        private final CountDownLatch mDone;
+
+        public RecordingTask(String pName, int pPriority, List<String> pOrder, CountDownLatch pDone) {
+            super();
+            mName = pName;
+            mPriority = pPriority;
+            mOrder = pOrder;
+            mDone = pDone;
+        }
+
+        @Override
+        public int getPriority() {
+            return mPriority;
+        }
+
+        @Override
+        public void run() {
+            mOrder.add(mName);
+            mDone.countDown();
+        }
+    }
+}
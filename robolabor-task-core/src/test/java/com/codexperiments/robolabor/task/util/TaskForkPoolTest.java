@@ -0,0 +1,255 @@
+package com.codexperiments.robolabor.task.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codexperiments.robolabor.task.handler.TaskComputation;
+import com.codexperiments.robolabor.task.handler.TaskFork;
+import com.codexperiments.robolabor.task.handler.TaskNotifier;
+
+public class TaskForkPoolTest {
+    private static final long TIMEOUT_MS = 5000;
+
+    private TaskForkPool mTaskForkPool;
+    private TestNotifier mNotifier;
+    private CountDownLatch mRelease;
+
+    @Before
+    public void setUp() {
+        mTaskForkPool = new TaskForkPool(1);
+        mNotifier = new TestNotifier();
+        mRelease = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        // Workers are never stopped but at least they are not left blocked.
+        mRelease.countDown();
+    }
+
+    @Test
+    public void testJoin_result() throws Exception {
+        TaskFork<Integer> lFork = mTaskForkPool.fork(new ValueComputation(1), mNotifier);
+        assertThat(lFork.join(), equalTo(1));
+        assertThat(lFork.isDone(), equalTo(true));
+    }
+
+    @Test
+    public void testJoin_runInline() throws Exception {
+        // Single worker is busy, so the second computation stays in the queue until joined.
+        BlockingComputation lBlocking = new BlockingComputation();
+        TaskFork<Integer> lBlockingFork = mTaskForkPool.fork(lBlocking, mNotifier);
+        assertThat(lBlocking.mStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+
+        ValueComputation lComputation = new ValueComputation(2);
+        TaskFork<Integer> lFork = mTaskForkPool.fork(lComputation, mNotifier);
+        assertThat(lFork.isDone(), equalTo(false));
+        assertThat(lFork.join(), equalTo(2));
+        assertThat(lComputation.mThread, sameInstance(Thread.currentThread()));
+        assertThat(lBlockingFork.isDone(), equalTo(false));
+
+        // Computation already run by the join is skipped by the worker.
+        mRelease.countDown();
+        assertThat(lBlockingFork.join(), equalTo(0));
+        assertThat(lComputation.mComputeCounter.get(), equalTo(1));
+    }
+
+    @Test
+    public void testJoin_waitForRunning() throws Exception {
+        BlockingComputation lBlocking = new BlockingComputation();
+        final TaskFork<Integer> lFork = mTaskForkPool.fork(lBlocking, mNotifier);
+        assertThat(lBlocking.mStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+
+        final CountDownLatch lJoined = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    lFork.join();
+                    lJoined.countDown();
+                } catch (Exception eException) {
+                    // Latch is not counted down.
+                }
+            }
+        }).start();
+
+        // Computation is not run twice: the joining thread waits for the worker.
+        assertThat(lJoined.await(100, TimeUnit.MILLISECONDS), equalTo(false));
+        mRelease.countDown();
+        assertThat(lJoined.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(lBlocking.mComputeCounter.get(), equalTo(1));
+    }
+
+    @Test
+    public void testJoin_nested() throws Exception {
+        mTaskForkPool = new TaskForkPool(2);
+        TaskFork<Integer> lFork = mTaskForkPool.fork(new SumComputation(0, 1000), mNotifier);
+        assertThat(lFork.join(), equalTo(499500));
+    }
+
+    @Test
+    public void testJoin_exception() throws Exception {
+        IOException lException = new IOException();
+        TaskFork<Integer> lFork = mTaskForkPool.fork(new FailingComputation(lException), mNotifier);
+        try {
+            lFork.join();
+            fail();
+        } catch (IOException eIOException) {
+            assertThat(eIOException, sameInstance(lException));
+        }
+        assertThat(lFork.isDone(), equalTo(true));
+    }
+
+    @Test
+    public void testJoin_error() throws Exception {
+        AssertionError lError = new AssertionError();
+        TaskFork<Integer> lFork = mTaskForkPool.fork(new FailingComputation(lError), mNotifier);
+        try {
+            lFork.join();
+            fail();
+        } catch (AssertionError eAssertionError) {
+            assertThat(eAssertionError, sameInstance(lError));
+        }
+
+        // Worker survived the error.
+        BlockingComputation lBlocking = new BlockingComputation();
+        mTaskForkPool.fork(lBlocking, mNotifier);
+        assertThat(lBlocking.mStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+    }
+
+    @Test
+    public void testJoin_cancelled() throws Exception {
+        BlockingComputation lBlocking = new BlockingComputation();
+        mTaskForkPool.fork(lBlocking, mNotifier);
+        assertThat(lBlocking.mStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+
+        // Computation of a task cancelled before it starts is never run.
+        ValueComputation lComputation = new ValueComputation(1);
+        TaskFork<Integer> lFork = mTaskForkPool.fork(lComputation, mNotifier);
+        mNotifier.mCancelled = true;
+        try {
+            lFork.join();
+            fail();
+        } catch (CancellationException eCancellationException) {
+            // Success
+        }
+        assertThat(lComputation.mComputeCounter.get(), equalTo(0));
+        assertThat(lFork.isDone(), equalTo(true));
+    }
+
+    @Test
+    public void testJoin_cancelledWhileRunning() throws Exception {
+        // A running computation checks the cancellation flag itself and is joined normally.
+        BlockingComputation lBlocking = new BlockingComputation();
+        TaskFork<Integer> lFork = mTaskForkPool.fork(lBlocking, mNotifier);
+        assertThat(lBlocking.mStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        mNotifier.mCancelled = true;
+        mRelease.countDown();
+        assertThat(lFork.join(), equalTo(0));
+    }
+
+    private class TestNotifier implements TaskNotifier {
+        private volatile boolean mCancelled = false;
+
+        @Override
+        public void notifyProgress() {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        @Override
+        public <TResult> TaskFork<TResult> fork(TaskComputation<TResult> pComputation) {
+            return mTaskForkPool.fork(pComputation, this);
+        }
+    }
+
+    private static class ValueComputation implements TaskComputation<Integer> {
+        private final Integer mValue;
+        private final AtomicInteger mComputeCounter = new AtomicInteger(0);
+        private volatile Thread mThread;
+
+        public ValueComputation(Integer pValue) {
+            super();
+            mValue = pValue;
+        }
+
+        @Override
+        public Integer onCompute(TaskNotifier pNotifier) throws Exception {
+            mComputeCounter.incrementAndGet();
+            mThread = Thread.currentThread();
+            return mValue;
+        }
+    }
+
+    private class BlockingComputation implements TaskComputation<Integer> {
+        private final CountDownLatch mStarted = new CountDownLatch(1);
+        private final AtomicInteger mComputeCounter = new AtomicInteger(0);
+
+        @Override
+        public Integer onCompute(TaskNotifier pNotifier) throws Exception {
+            mComputeCounter.incrementAndGet();
+            mStarted.countDown();
+            mRelease.await();
+            return 0;
+        }
+    }
+
+    private static class FailingComputation implements TaskComputation<Integer> {
+        private final Throwable mThrowable;
+
+        public FailingComputation(Throwable pThrowable) {
+            super();
+            mThrowable = pThrowable;
+        }
+
+        @Override
+        public Integer onCompute(TaskNotifier pNotifier) throws Exception {
+            if (mThrowable instanceof Error) throw (Error) mThrowable;
+            throw (Exception) mThrowable;
+        }
+    }
+
+    /**
+     * Sum integers in [from, to[ by splitting the range recursively.
+     */
+    private static class SumComputation implements TaskComputation<Integer> {
+        private final int mFrom;
+        private final int mTo;
+
+        public SumComputation(int pFrom, int pTo) {
+            super();
+            mFrom = pFrom;
+            mTo = pTo;
+        }
+
+        @Override
+        public Integer onCompute(TaskNotifier pNotifier) throws Exception {
+            if (mTo - mFrom <= 10) {
+                int lSum = 0;
+                for (int i = mFrom; i < mTo; ++i) {
+                    lSum += i;
+                }
+                return lSum;
+            }
+
+            int lMiddle = (mFrom + mTo) / 2;
+            TaskFork<Integer> lLeft = pNotifier.fork(new SumComputation(mFrom, lMiddle));
+            TaskFork<Integer> lRight = pNotifier.fork(new SumComputation(lMiddle, mTo));
+            return lRight.join() + lLeft.join();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.codexperiments.robolabor.task.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import com.codexperiments.robolabor.task.id.IntTaskId;
+import com.codexperiments.robolabor.task.id.TaskId;
+
+public class TaskResultCacheTest {
+    private static final long NO_EXPIRATION = 3600000;
+
+    private final TaskId mTaskId1 = new IntTaskId(1);
+    private final TaskId mTaskId2 = new IntTaskId(2);
+    private final TaskId mTaskId3 = new IntTaskId(3);
+
+    @Test
+    public void testGet() {
+        TaskResultCache lCache = new TaskResultCache(10, NO_EXPIRATION);
+        lCache.put(mTaskId1, "result1");
+
+        assertThat(lCache.get(mTaskId1).getResult(), equalTo((Object) "result1"));
+        assertThat(lCache.get(new IntTaskId(1)).getResult(), equalTo((Object) "result1"));
+        assertThat(lCache.get(mTaskId2), nullValue());
+        assertThat(lCache.getHitCount(), equalTo(2L));
+        assertThat(lCache.getMissCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testGet_nullResult() {
+        // A null result is a result: the entry is found.
+        TaskResultCache lCache = new TaskResultCache(10, NO_EXPIRATION);
+        lCache.put(mTaskId1, null);
+
+        assertThat(lCache.get(mTaskId1), notNullValue());
+        assertThat(lCache.get(mTaskId1).getResult(), nullValue());
+    }
+
+    @Test
+    public void testPut_leastRecentlyUsedEvicted() {
+        TaskResultCache lCache = new TaskResultCache(2, NO_EXPIRATION);
+        lCache.put(mTaskId1, "result1");
+        lCache.put(mTaskId2, "result2");
+        // Access makes task 1 the most recently used. Task 2 is then the eldest one.
+        lCache.get(mTaskId1);
+        lCache.put(mTaskId3, "result3");
+
+        assertThat(lCache.size(), equalTo(2));
+        assertThat(lCache.get(mTaskId1), notNullValue());
+        assertThat(lCache.get(mTaskId2), nullValue());
+        assertThat(lCache.get(mTaskId3), notNullValue());
+    }
+
+    @Test
+    public void testGet_expired() throws InterruptedException {
+        TaskResultCache lCache = new TaskResultCache(10, 50);
+        lCache.put(mTaskId1, "result1");
+        assertThat(lCache.get(mTaskId1), notNullValue());
+
+        Thread.sleep(100);
+        assertThat(lCache.get(mTaskId1), nullValue());
+        // Expired entries are removed when found.
+        assertThat(lCache.size(), equalTo(0));
+    }
+
+    @Test
+    public void testPut_refreshesExpiration() throws InterruptedException {
+        TaskResultCache lCache = new TaskResultCache(10, 150);
+        lCache.put(mTaskId1, "result1");
+        Thread.sleep(100);
+        lCache.put(mTaskId1, "result2");
+        Thread.sleep(100);
+
+        assertThat(lCache.get(mTaskId1).getResult(), equalTo((Object) "result2"));
+    }
+
+    @Test
+    public void testInvalidate() {
+        TaskResultCache lCache = new TaskResultCache(10, NO_EXPIRATION);
+        lCache.put(mTaskId1, "result1");
+        lCache.put(mTaskId2, "result2");
+
+        lCache.invalidate(mTaskId1);
+        assertThat(lCache.get(mTaskId1), nullValue());
+        assertThat(lCache.get(mTaskId2), notNullValue());
+        lCache.clear();
+        assertThat(lCache.size(), equalTo(0));
+    }
+}
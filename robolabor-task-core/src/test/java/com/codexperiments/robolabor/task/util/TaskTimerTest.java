@@ -0,0 +1,119 @@
+package com.codexperiments.robolabor.task.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TaskTimerTest {
+    private static final long TIMEOUT_MS = 5000;
+
+    private TaskTimer mTimer;
+    private List<String> mOrder;
+
+    @Before
+    public void setUp() {
+        mTimer = new TaskTimer();
+        mOrder = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @Test
+    public void testSchedule_byDeadline() throws InterruptedException {
+        CountDownLatch lDone = new CountDownLatch(3);
+        mTimer.schedule(new RecordingAction("third", mOrder, lDone), 150);
+        mTimer.schedule(new RecordingAction("first", mOrder, lDone), 50);
+        mTimer.schedule(new RecordingAction("second", mOrder, lDone), 100);
+
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(mOrder.toString(), equalTo("[first, second, third]"));
+    }
+
+    @Test
+    public void testSchedule_sameDeadlineInSchedulingOrder() throws InterruptedException {
+        // Block the timer thread so that all timeouts are expired when it polls them.
+        final CountDownLatch lRelease = new CountDownLatch(1);
+        mTimer.schedule(new Runnable() {
+            public void run() {
+                try {
+                    lRelease.await();
+                } catch (InterruptedException eInterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, 0);
+
+        CountDownLatch lDone = new CountDownLatch(10);
+        for (int i = 0; i < 10; ++i) {
+            mTimer.schedule(new RecordingAction(Integer.toString(i), mOrder, lDone), 0);
+        }
+        lRelease.countDown();
+
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(mOrder.toString(), equalTo("[0, 1, 2, 3, 4, 5, 6, 7, 8, 9]"));
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        CountDownLatch lDone = new CountDownLatch(2);
+        TaskTimer.Timeout lCancelled = mTimer.schedule(new RecordingAction("cancelled", mOrder, lDone), 50);
+        mTimer.schedule(new RecordingAction("kept", mOrder, lDone), 100);
+
+        assertThat(lCancelled.cancel(), equalTo(true));
+        assertThat(lCancelled.cancel(), equalTo(false));
+        assertThat(lDone.await(300, TimeUnit.MILLISECONDS), equalTo(false));
+        assertThat(mOrder.toString(), equalTo("[kept]"));
+    }
+
+    @Test
+    public void testCancel_afterExecution() throws InterruptedException {
+        CountDownLatch lDone = new CountDownLatch(1);
+        TaskTimer.Timeout lTimeout = mTimer.schedule(new RecordingAction("executed", mOrder, lDone), 0);
+
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(lTimeout.cancel(), equalTo(false));
+    }
+
+    @Test
+    public void testCancel_purged() throws InterruptedException {
+        CountDownLatch lDone = new CountDownLatch(1);
+        mTimer.schedule(new RecordingAction("kept", mOrder, lDone), 100);
+        List<TaskTimer.Timeout> lTimeouts = new ArrayList<TaskTimer.Timeout>();
+        for (int i = 0; i < 1000; ++i) {
+            lTimeouts.add(mTimer.schedule(new RecordingAction("cancelled", mOrder, lDone), TimeUnit.HOURS.toMillis(1)));
+        }
+        for (TaskTimer.Timeout lTimeout : lTimeouts) {
+            assertThat(lTimeout.cancel(), equalTo(true));
+        }
+
+        // Cancelled timeouts don't accumulate in the queue until their (far) deadline.
+        assertThat(mTimer.getQueueSize() < 100, equalTo(true));
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(mOrder.toString(), equalTo("[kept]"));
+    }
+
+    private static class RecordingAction implements Runnable {
+        private final String mName;
+        private final List<String> mOrder;
+        private final CountDownLatch mDone;
+
+        public RecordingAction(String pName, List<String> pOrder, CountDownLatch pDone) {
+            super();
+            mName = pName;
+            mOrder = pOrder;
+            mDone = pDone;
+        }
+
+        @Override
+        public void run() {
+            mOrder.add(mName);
+            mDone.countDown();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.codexperiments.robolabor.task.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class WeakIdentityMapTest {
+    private final String mKey1 = new String("key");
+    private final String mKey2 = new String("key");
+    private final String mValue1 = "value1";
+    private final String mValue2 = "value2";
+
+    @Test
+    public void testPut_byIdentity() {
+        WeakIdentityMap<String, String> lMap = new WeakIdentityMap<String, String>();
+        lMap.put(mKey1, mValue1);
+        lMap.put(mKey2, mValue2);
+
+        // Keys are equal but not identical.
+        assertThat(lMap.size(), equalTo(2));
+        assertThat(lMap.get(mKey1), equalTo(mValue1));
+        assertThat(lMap.get(mKey2), equalTo(mValue2));
+        assertThat(lMap.get("key"), nullValue());
+        assertThat(lMap.containsKey(mKey1), equalTo(true));
+        assertThat(lMap.containsKey("key"), equalTo(false));
+
+        assertThat(lMap.remove(mKey1), equalTo(mValue1));
+        assertThat(lMap.containsKey(mKey1), equalTo(false));
+        assertThat(lMap.get(mKey2), equalTo(mValue2));
+    }
+
+    @Test
+    public void testPut_resize() {
+        WeakIdentityMap<Object, Object> lMap = new WeakIdentityMap<Object, Object>(1);
+        Object[] lKeys = new Object[100];
+        for (int i = 0; i < lKeys.length; ++i) {
+            lKeys[i] = new Object();
+            lMap.put(lKeys[i], Integer.valueOf(i));
+        }
+
+        assertThat(lMap.size(), equalTo(lKeys.length));
+        for (int i = 0; i < lKeys.length; ++i) {
+            assertThat(lMap.get(lKeys[i]), equalTo((Object) Integer.valueOf(i)));
+        }
+        for (int i = 0; i < lKeys.length; i += 2) {
+            lMap.remove(lKeys[i]);
+        }
+        for (int i = 0; i < lKeys.length; ++i) {
+            assertThat(lMap.get(lKeys[i]), equalTo((i % 2 == 0) ? null : (Object) Integer.valueOf(i)));
+        }
+    }
+
+    @Test
+    public void testEntrySet() {
+        WeakIdentityMap<String, String> lMap = new WeakIdentityMap<String, String>();
+        lMap.put(mKey1, mValue1);
+        lMap.put(mKey2, mValue2);
+
+        Map<String, String> lEntries = new HashMap<String, String>();
+        int lCount = 0;
+        for (Map.Entry<String, String> lEntry : lMap.entrySet()) {
+            lEntries.put(lEntry.getValue(), lEntry.getKey());
+            ++lCount;
+        }
+        assertThat(lCount, equalTo(2));
+        assertThat(lEntries.get(mValue1) == mKey1, equalTo(true));
+        assertThat(lEntries.get(mValue2) == mKey2, equalTo(true));
+        assertThat(lMap.keySet().size(), equalTo(2));
+        assertThat(lMap.values().contains(mValue1), equalTo(true));
+        assertThat(lMap.values().contains(mValue2), equalTo(true));
+    }
+
+    @Test
+    public void testEntrySet_writeThrough() {
+        WeakIdentityMap<String, String> lMap = new WeakIdentityMap<String, String>();
+        lMap.put(mKey1, mValue1);
+        lMap.put(mKey2, mValue2);
+
+        Iterator<Map.Entry<String, String>> lIterator = lMap.entrySet().iterator();
+        while (lIterator.hasNext()) {
+            Map.Entry<String, String> lEntry = lIterator.next();
+            if (lEntry.getKey() == mKey1) {
+                lIterator.remove();
+            } else {
+                assertThat(lEntry.setValue("value3"), equalTo(mValue2));
+            }
+        }
+
+        assertThat(lMap.size(), equalTo(1));
+        assertThat(lMap.get(mKey1), nullValue());
+        assertThat(lMap.get(mKey2), equalTo("value3"));
+    }
+
+    @Test
+    public void testClear() {
+        WeakIdentityMap<String, String> lMap = new WeakIdentityMap<String, String>();
+        lMap.put(mKey1, mValue1);
+        lMap.put(mKey2, mValue2);
+        lMap.keySet().clear();
+
+        assertThat(lMap.isEmpty(), equalTo(true));
+        assertThat(lMap.get(mKey1), nullValue());
+        assertThat(lMap.entrySet().iterator().hasNext(), equalTo(false));
+
+        lMap.put(mKey1, mValue1);
+        assertThat(lMap.get(mKey1), equalTo(mValue1));
+    }
+
+    @Test
+    public void testEqualsAndHashCode() {
+        WeakIdentityMap<String, String> lMap1 = new WeakIdentityMap<String, String>();
+        lMap1.put(mKey1, mValue1);
+        WeakIdentityMap<String, String> lMap2 = new WeakIdentityMap<String, String>();
+        lMap2.put(mKey1, mValue1);
+        WeakIdentityMap<String, String> lMap3 = new WeakIdentityMap<String, String>();
+        lMap3.put(mKey2, mValue1);
+
+        assertThat(lMap1.equals(lMap2), equalTo(true));
+        assertThat(lMap1.hashCode(), equalTo(lMap2.hashCode()));
+        assertThat(lMap1.equals(lMap3), equalTo(false));
+        assertThat(lMap1.toString(), equalTo("{key=value1}"));
+    }
+
+    @Test
+    public void testExpunge() throws InterruptedException {
+        WeakIdentityMap<Object, String> lMap = new WeakIdentityMap<Object, String>();
+        lMap.put(new Object(), mValue1);
+        lMap.put(mKey1, mValue2);
+
+        // Garbage collection cannot be forced: ask for it until the unreachable key is gone.
+        for (int i = 0; (i < 50) && (lMap.size() > 1); ++i) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertThat(lMap.size(), equalTo(1));
+        Iterator<Map.Entry<Object, String>> lIterator = lMap.entrySet().iterator();
+        assertThat(lIterator.next().getKey() == mKey1, equalTo(true));
+        assertThat(lIterator.hasNext(), equalTo(false));
+    }
+}
@@ -0,0 +1,172 @@
+package com.codexperiments.robolabor.task.jvm;
+
+import java.util.concurrent.Executor;
+
+import com.codexperiments.robolabor.task.TaskExecutionMode;
+import com.codexperiments.robolabor.task.TaskManagerConfig;
+import com.codexperiments.robolabor.task.handler.Task;
+import com.codexperiments.robolabor.task.handler.TaskBatchable;
+import com.codexperiments.robolabor.task.handler.TaskDeadline;
+import com.codexperiments.robolabor.task.handler.TaskPriority;
+import com.codexperiments.robolabor.task.util.BulkheadExecutor;
+import com.codexperiments.robolabor.task.util.PriorityTaskExecutor;
+import com.codexperiments.robolabor.task.util.TaskResultCache;
+
+/**
+ * Configuration for server-side JVMs, where tasks mostly perform blocking I/O. Each task runs on its own virtual thread (see
+ * VirtualThreadExecutor), so that thousands of tasks can wait for I/O at the same time without a thread pool of the same size.
+ * The number of tasks in flight is capped, per category, to protect the backends they talk to. By default, all tasks share the
+ * same category: override resolveCategory() to give some kinds of task their own cap (see setConcurrencyLimit()).
+ *
+ * There are no UI components to attach tasks to on a JVM. Thus emitters are never managed and inner tasks simply keep
+ * references to their outer object while running.
+ */
+public class JvmTaskManagerConfig implements TaskManagerConfig
+{
+    // Category of tasks that do not have a specific one.
+    private static final Object DEFAULT_CATEGORY = new Object();
+    // Time during which batchable tasks are collected.
+    private static final long DEFAULT_BATCH_WINDOW = 20;
+
+    private VirtualThreadExecutor mVirtualThreadExecutor;
+    private BulkheadExecutor mBulkheadExecutor;
+
+    /**
+     * @param pMaxConcurrency Maximum number of tasks of the same category in flight at the same time. Tasks in excess wait for
+     *            their turn without holding a thread.
+     */
+    public JvmTaskManagerConfig(int pMaxConcurrency)
+    {
+        mVirtualThreadExecutor = new VirtualThreadExecutor();
+        mBulkheadExecutor = new BulkheadExecutor(mVirtualThreadExecutor, pMaxConcurrency);
+    }
+
+    /**
+     * Give a specific cap to a category of tasks. See resolveCategory().
+     *
+     * @param pCategory Category of tasks.
+     * @param pMaxConcurrency Maximum number of tasks of the category in flight at the same time.
+     */
+    public void setConcurrencyLimit(Object pCategory, int pMaxConcurrency)
+    {
+        mBulkheadExecutor.setLimit(pCategory, pMaxConcurrency);
+    }
+
+    /**
+     * @return True if tasks run on virtual threads, false if the JVM doesn't support them and platform threads are used instead.
+     */
+    public boolean usesVirtualThreads()
+    {
+        return mVirtualThreadExecutor.isVirtual();
+    }
+
+    /**
+     * Category of a task, which defines the concurrency cap it is subject to. All tasks share the default category unless this
+     * method is overridden (e.g. to return the task class).
+     *
+     * @param pTask Task the category of which is needed.
+     * @return Category of the task. Must not be null.
+     */
+    protected Object resolveCategory(Task<?> pTask)
+    {
+        return DEFAULT_CATEGORY;
+    }
+
+    /**
+     * No emitter is managed on a JVM.
+     */
+    @Override
+    public Object resolveEmitterId(Object pEmitter)
+    {
+        return null;
+    }
+
+    @Override
+    public Executor resolveExecutor(Task<?> pTask)
+    {
+        return mBulkheadExecutor.forCategory(resolveCategory(pTask));
+    }
+
+    /**
+     * Priority is given by the task itself if it implements TaskPriority. Note that priorities only matter if tasks are queued
+     * by a PriorityTaskExecutor.
+     */
+    @Override
+    public int resolvePriority(Task<?> pTask)
+    {
+        return (pTask instanceof TaskPriority) ? ((TaskPriority) pTask).getPriority() : PriorityTaskExecutor.DEFAULT_PRIORITY;
+    }
+
+    @Override
+    public long resolveBatchWindow(Task<?> pTask)
+    {
+        return (pTask instanceof TaskBatchable) ? DEFAULT_BATCH_WINDOW : 0;
+    }
+
+    @Override
+    public TaskExecutionMode resolveExecutionMode(Task<?> pTask)
+    {
+        return TaskExecutionMode.DROP;
+    }
+
+    @Override
+    public long resolveThrottlePeriod(Task<?> pTask)
+    {
+        return 0;
+    }
+
+    /**
+     * Timeout is given by the task itself if it implements TaskDeadline. Note that an interrupted virtual thread stops blocking
+     * on I/O, which makes timeouts effective for most I/O-bound tasks.
+     */
+    @Override
+    public long resolveTimeout(Task<?> pTask)
+    {
+        return (pTask instanceof TaskDeadline) ? ((TaskDeadline) pTask).getTimeout() : 0;
+    }
+
+    @Override
+    public long resolveProgressInterval(Task<?> pTask)
+    {
+        return 0;
+    }
+
+    @Override
+    public TaskResultCache resolveResultCache(Task<?> pTask)
+    {
+        return null;
+    }
+
+    @Override
+    public boolean keepResultOnHold(Task<?> pTask)
+    {
+        return false;
+    }
+
+    @Override
+    public long resolveGracePeriod(Task<?> pTask)
+    {
+        return 0;
+    }
+
+    @Override
+    public boolean allowUnmanagedEmitters()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean allowInnerTasks()
+    {
+        return true;
+    }
+
+    /**
+     * Handler failures are reported on the scheduler thread, to avoid hiding bugs in services that have no debug mode.
+     */
+    @Override
+    public boolean crashOnHandlerFailure()
+    {
+        return true;
+    }
+}
@@ -0,0 +1,96 @@
+package com.codexperiments.robolabor.task.jvm;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.codexperiments.robolabor.task.TaskExecutor;
+
+/**
+ * Executor that runs each task on its own new thread: a virtual thread when the JVM supports them (Java 21 and later) or a
+ * daemon platform thread otherwise. A task blocked on I/O then only holds a virtual thread, which costs a few hundred bytes,
+ * instead of a thread of a pool. This executor has no limit on its own: wrap it (e.g. with a BulkheadExecutor) to cap the
+ * number of tasks in flight.
+ *
+ * Virtual threads are created reflectively so that this class can be compiled and run on any JVM.
+ *
+ * Tasks start as soon as they are submitted and don't hold any shared resource: there is never anything to remove or release.
+ */
+public class VirtualThreadExecutor implements TaskExecutor {
+    private final ThreadFactory mThreadFactory;
+    private final boolean mVirtual;
+
+    public VirtualThreadExecutor() {
+        this(createVirtualThreadFactory());
+    }
+
+    /**
+     * @param pVirtualThreadFactory Factory of virtual threads or null to fall back to platform threads.
+     */
+    VirtualThreadExecutor(ThreadFactory pVirtualThreadFactory) {
+        super();
+        mVirtual = (pVirtualThreadFactory != null);
+        mThreadFactory = mVirtual ? pVirtualThreadFactory : createPlatformThreadFactory();
+    }
+
+    @Override
+    public void execute(Runnable pRunnable) {
+        if (pRunnable == null) throw new NullPointerException("Runnable is null");
+        mThreadFactory.newThread(pRunnable).start();
+    }
+
+    @Override
+    public boolean remove(Runnable pRunnable) {
+        return false;
+    }
+
+    @Override
+    public boolean release(Runnable pRunnable, Thread pThread) {
+        return false;
+    }
+
+    /**
+     * @return True if tasks run on virtual threads, false if the JVM doesn't support them and platform threads are used instead.
+     */
+    public boolean isVirtual() {
+        return mVirtual;
+    }
+
+    /**
+     * Equivalent to Thread.ofVirtual().name("TaskManager-", 0).factory().
+     *
+     * @return Factory of virtual threads or null if the JVM doesn't support them.
+     */
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            // Methods are looked up on the public Thread.Builder interfaces since builder implementations are not accessible.
+            Class<?> lBuilderClass = Class.forName("java.lang.Thread$Builder");
+            Object lBuilder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method lNameMethod = lBuilderClass.getMethod("name", String.class, long.class);
+            lBuilder = lNameMethod.invoke(lBuilder, "TaskManager-", 0L);
+            return (ThreadFactory) lBuilderClass.getMethod("factory").invoke(lBuilder);
+        } catch (ClassNotFoundException eClassNotFoundException) {
+            return null;
+        } catch (NoSuchMethodException eNoSuchMethodException) {
+            return null;
+        } catch (IllegalAccessException eIllegalAccessException) {
+            return null;
+        } catch (InvocationTargetException eInvocationTargetException) {
+            // Virtual threads may be unsupported by the current JVM even if the API exists.
+            return null;
+        }
+    }
+
+    private static ThreadFactory createPlatformThreadFactory() {
+        return new ThreadFactory() {
+            private final AtomicInteger mThreadCount = new AtomicInteger(0);
+
+            public Thread newThread(Runnable pRunnable) {
+                Thread lThread = new Thread(pRunnable, "TaskManager-" + mThreadCount.getAndIncrement());
+                lThread.setDaemon(true);
+                return lThread;
+            }
+        };
+    }
+}
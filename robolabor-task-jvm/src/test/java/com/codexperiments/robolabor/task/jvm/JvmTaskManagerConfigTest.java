@@ -0,0 +1,161 @@
+package com.codexperiments.robolabor.task.jvm;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codexperiments.robolabor.task.TaskManager;
+import com.codexperiments.robolabor.task.core.CoreTaskManager;
+import com.codexperiments.robolabor.task.core.EventLoopLockingStrategy;
+import com.codexperiments.robolabor.task.core.EventLoopTaskScheduler;
+import com.codexperiments.robolabor.task.handler.Task;
+import com.codexperiments.robolabor.task.handler.TaskNotifier;
+
+/**
+ * Runs a CoreTaskManager configured by JvmTaskManagerConfig on an event loop, as a JVM service would.
+ */
+public class JvmTaskManagerConfigTest {
+    private static final long TIMEOUT_MS = 5000;
+
+    private EventLoopTaskScheduler mEventLoop;
+    private Thread mEventLoopThread;
+    private CountDownLatch mRelease;
+    private AtomicInteger mRunningCount;
+    private AtomicInteger mMaxRunningCount;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        mEventLoop = new EventLoopTaskScheduler("JvmTaskManagerConfigTest");
+        final CountDownLatch lStarted = new CountDownLatch(1);
+        mEventLoop.schedule(new Runnable() {
+            public void run() {
+                mEventLoopThread = Thread.currentThread();
+                lStarted.countDown();
+            }
+        });
+        assertThat(lStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+
+        mRelease = new CountDownLatch(1);
+        mRunningCount = new AtomicInteger(0);
+        mMaxRunningCount = new AtomicInteger(0);
+    }
+
+    @After
+    public void tearDown() {
+        mRelease.countDown();
+        mEventLoop.shutdown();
+    }
+
+    @Test
+    public void testExecute() throws InterruptedException {
+        JvmTaskManagerConfig lConfig = new JvmTaskManagerConfig(4);
+        mRelease.countDown();
+        CountingTask lTask = new CountingTask(1, mRelease, mRunningCount, mMaxRunningCount);
+        execute(newTaskManager(lConfig), lTask);
+
+        assertThat(lTask.mFinished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(lTask.mResult, equalTo(1));
+        assertThat(lTask.mException, nullValue());
+        assertThat(lTask.mFinishThread, sameInstance(mEventLoopThread));
+    }
+
+    @Test
+    public void testConcurrencyLimit() throws InterruptedException {
+        JvmTaskManagerConfig lConfig = new JvmTaskManagerConfig(4) {
+            @Override
+            protected Object resolveCategory(Task<?> pTask) {
+                return CountingTask.class;
+            }
+        };
+        lConfig.setConcurrencyLimit(CountingTask.class, 1);
+        TaskManager lTaskManager = newTaskManager(lConfig);
+        CountingTask[] lTasks = new CountingTask[3];
+        for (int i = 0; i < lTasks.length; ++i) {
+            lTasks[i] = new CountingTask(i, mRelease, mRunningCount, mMaxRunningCount);
+            execute(lTaskManager, lTasks[i]);
+        }
+
+        assertThat(lTasks[0].mStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(lTasks[1].mStarted.await(100, TimeUnit.MILLISECONDS), equalTo(false));
+        mRelease.countDown();
+        for (CountingTask lTask : lTasks) {
+            assertThat(lTask.mFinished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        }
+        assertThat(mMaxRunningCount.get(), equalTo(1));
+    }
+
+    private TaskManager newTaskManager(JvmTaskManagerConfig pConfig) {
+        return new CoreTaskManager(pConfig, mEventLoop, new EventLoopLockingStrategy(mEventLoop));
+    }
+
+    private void execute(final TaskManager pTaskManager, final Task<Integer> pTask) {
+        mEventLoop.schedule(new Runnable() {
+            public void run() {
+                pTaskManager.execute(pTask);
+            }
+        });
+    }
+
+    /**
+     * Waits for the test to release it and counts the tasks processed at the same time. Static, since the outer object of an
+     * inner task is not reachable while it is processed.
+     */
+    private static class CountingTask implements Task<Integer> {
+        private final Integer mTaskResult;
+        private final CountDownLatch mRelease;
+        private final AtomicInteger mRunningCount;
+        private final AtomicInteger mMaxRunningCount;
+        private final CountDownLatch mStarted = new CountDownLatch(1);
+        private final CountDownLatch mFinished = new CountDownLatch(1);
+        private volatile Integer mResult;
+        private volatile Throwable mException;
+        private volatile Thread mFinishThread;
+
+        public CountingTask(Integer pTaskResult, CountDownLatch pRelease, AtomicInteger pRunningCount,
+                            AtomicInteger pMaxRunningCount) {
+            super();
+            mTaskResult = pTaskResult;
+            mRelease = pRelease;
+            mRunningCount = pRunningCount;
+            mMaxRunningCount = pMaxRunningCount;
+        }
+
+        @Override
+        public Integer onProcess(TaskNotifier pNotifier) throws Exception {
+            int lRunningCount = mRunningCount.incrementAndGet();
+            synchronized (mMaxRunningCount) {
+                if (lRunningCount > mMaxRunningCount.get()) mMaxRunningCount.set(lRunningCount);
+            }
+            mStarted.countDown();
+            try {
+                mRelease.await();
+                return mTaskResult;
+            } finally {
+                mRunningCount.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void onFinish(Integer pResult) {
+            mResult = pResult;
+            mFinishThread = Thread.currentThread();
+            mFinished.countDown();
+        }
+
+        @Override
+        public void onFail(Throwable pException) {
+            mException = pException;
+            mFinishThread = Thread.currentThread();
+            mFinished.countDown();
+        }
+    }
+}
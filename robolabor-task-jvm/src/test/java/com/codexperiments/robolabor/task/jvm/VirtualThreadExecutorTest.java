@@ -0,0 +1,71 @@
+package com.codexperiments.robolabor.task.jvm;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class VirtualThreadExecutorTest {
+    private static final long TIMEOUT_MS = 5000;
+
+    @Test
+    public void testExecute_platformFallback() throws InterruptedException {
+        VirtualThreadExecutor lExecutor = new VirtualThreadExecutor(null);
+        assertThat(lExecutor.isVirtual(), equalTo(false));
+
+        ThreadRecorder lFirst = new ThreadRecorder();
+        ThreadRecorder lSecond = new ThreadRecorder();
+        lExecutor.execute(lFirst);
+        lExecutor.execute(lSecond);
+        assertThat(lFirst.await(), equalTo(true));
+        assertThat(lSecond.await(), equalTo(true));
+
+        // Each task gets its own daemon thread, so that the JVM can exit while tasks are still running.
+        assertThat(lFirst.mThread, not(sameInstance(lSecond.mThread)));
+        assertThat(lFirst.mThread.isDaemon(), equalTo(true));
+        assertThat(lFirst.mThread.getName(), equalTo("TaskManager-0"));
+        assertThat(lSecond.mThread.getName(), equalTo("TaskManager-1"));
+    }
+
+    @Test
+    public void testExecute_defaultThreads() throws InterruptedException {
+        VirtualThreadExecutor lExecutor = new VirtualThreadExecutor();
+        assertThat(lExecutor.isVirtual(), equalTo(supportsVirtualThreads()));
+
+        ThreadRecorder lRecorder = new ThreadRecorder();
+        lExecutor.execute(lRecorder);
+        assertThat(lRecorder.await(), equalTo(true));
+        assertThat(lRecorder.mThread, not(sameInstance(Thread.currentThread())));
+    }
+
+    /**
+     * @return True if the current JVM has the virtual thread API, i.e. Java 21 or later.
+     */
+    private static boolean supportsVirtualThreads() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException eNoSuchMethodException) {
+            return false;
+        }
+    }
+
+    private static class ThreadRecorder implements Runnable {
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        private volatile Thread mThread;
+
+        public void run() {
+            mThread = Thread.currentThread();
+            mDone.countDown();
+        }
+
+        public boolean await() throws InterruptedException {
+            return mDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.codexperiments.robolabor.task.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+
+/**
+ * Generates a TaskBinder for each inner task handler class (i.e. a non-static member class implementing TaskHandler, directly or
+ * through one of its super classes) found in the compiled sources. A binder records the name of the outer reference field (i.e.
+ * this$x) declared at each level of the class hierarchy, as computed by the Java compiler, so that the TaskManager doesn't have
+ * to discover them by reflection at runtime.
+ *
+ * The processor also writes ProGuard rules (META-INF/proguard/robolabor-task-binders.pro) that keep binders, bound classes names
+ * and their outer reference fields. Without them, an obfuscated application would silently fall back to the reflection heuristic.
+ *
+ * Note that anonymous and local classes are not visible to annotation processors. No binder is generated for them.
+ */
+@SupportedAnnotationTypes("*")
+public class TaskBinderProcessor extends AbstractProcessor {
+    private static final String TASK_HANDLER = "com.codexperiments.robolabor.task.handler.TaskHandler";
+    private static final String TASK_BINDER = "com.codexperiments.robolabor.task.TaskBinder";
+    private static final String BINDER_SUFFIX = "$$TaskBinder";
+    private static final String PROGUARD_RULES = "META-INF/proguard/robolabor-task-binders.pro";
+
+    private Elements mElements;
+    private Types mTypes;
+    private Filer mFiler;
+    // Binary names of the classes a binder has been generated for. Sorted to keep rule file stable between builds.
+    private Set<String> mBoundClasses;
+
+    public TaskBinderProcessor() {
+        super();
+        mBoundClasses = new TreeSet<String>();
+    }
+
+    @Override
+    public synchronized void init(ProcessingEnvironment pProcessingEnv) {
+        super.init(pProcessingEnv);
+        mElements = pProcessingEnv.getElementUtils();
+        mTypes = pProcessingEnv.getTypeUtils();
+        mFiler = pProcessingEnv.getFiler();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> pAnnotations, RoundEnvironment pRoundEnv) {
+        // If TaskHandler is not on the classpath, there is nothing to bind.
+        TypeElement lTaskHandler = mElements.getTypeElement(TASK_HANDLER);
+        if (lTaskHandler != null) {
+            TypeMirror lTaskHandlerType = mTypes.erasure(lTaskHandler.asType());
+            for (Element lElement : pRoundEnv.getRootElements()) {
+                processElement(lElement, lTaskHandlerType);
+            }
+        }
+
+        if (pRoundEnv.processingOver() && !mBoundClasses.isEmpty()) {
+            writeProguardRules();
+        }
+        // Never claim annotations since this processor accepts all of them.
+        return false;
+    }
+
+    private void processElement(Element pElement, TypeMirror pTaskHandlerType) {
+        // Enums and interfaces are never inner but they can enclose classes that are (e.g. a member class of an enum).
+        if (!pElement.getKind().isClass() && !pElement.getKind().isInterface()) return;
+
+        TypeElement lType = (TypeElement) pElement;
+        if (isInner(lType) && mTypes.isAssignable(mTypes.erasure(lType.asType()), pTaskHandlerType)) {
+            generateBinder(lType, pTaskHandlerType);
+        }
+        // Member classes can be handlers too.
+        for (Element lEnclosedElement : lType.getEnclosedElements()) {
+            processElement(lEnclosedElement, pTaskHandlerType);
+        }
+    }
+
+    private void generateBinder(TypeElement pType, TypeMirror pTaskHandlerType) {
+        List<String> lFieldNames = new ArrayList<String>();
+        List<Boolean> lHandlerFields = new ArrayList<Boolean>();
+        // Go through the class and each of its super classes (java.lang.Object excluded), as TaskManager does at runtime.
+        TypeElement lType = pType;
+        while (lType != null) {
+            if (isInner(lType)) {
+                TypeElement lOuterType = (TypeElement) lType.getEnclosingElement();
+                lFieldNames.add(outerFieldName(lOuterType));
+                lHandlerFields.add(mTypes.isAssignable(mTypes.erasure(lOuterType.asType()), pTaskHandlerType));
+            } else {
+                lFieldNames.add(null);
+                lHandlerFields.add(false);
+            }
+            lType = superclassOf(lType);
+        }
+
+        String lPackageName = mElements.getPackageOf(pType).getQualifiedName().toString();
+        String lBinaryName = mElements.getBinaryName(pType).toString();
+        String lBinderName = lBinaryName.substring(lPackageName.length() == 0 ? 0 : lPackageName.length() + 1) + BINDER_SUFFIX;
+        try {
+            Writer lWriter = mFiler.createSourceFile(lBinaryName + BINDER_SUFFIX, pType).openWriter();
+            try {
+                if (lPackageName.length() > 0) {
+                    lWriter.write("package " + lPackageName + ";\n\n");
+                }
+                lWriter.write("/**\n * Generated by " + getClass().getName() + " for " + lBinaryName + ". Do not modify.\n */\n");
+                lWriter.write("public final class " + lBinderName + " implements " + TASK_BINDER + " {\n");
+                lWriter.write("    private static final String[] EMITTER_FIELD_NAMES = { " + join(lFieldNames, true) + " };\n");
+                lWriter.write("    private static final boolean[] HANDLER_FIELDS = { " + join(lHandlerFields, false) + " };\n\n");
+                lWriter.write("    public boolean isInner() {\n        return true;\n    }\n\n");
+                lWriter.write("    public String[] getEmitterFieldNames() {\n        return EMITTER_FIELD_NAMES;\n    }\n\n");
+                lWriter.write("    public boolean[] getHandlerFields() {\n        return HANDLER_FIELDS;\n    }\n");
+                lWriter.write("}\n");
+            } finally {
+                lWriter.close();
+            }
+            mBoundClasses.add(lBinaryName);
+        } catch (IOException eIOException) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                                                     "Could not generate task binder: " + eIOException.getMessage(),
+                                                     pType);
+        }
+    }
+
+    private void writeProguardRules() {
+        try {
+            Writer lWriter = mFiler.createResource(StandardLocation.CLASS_OUTPUT, "", PROGUARD_RULES).openWriter();
+            try {
+                lWriter.write("# Generated by " + getClass().getName() + ". Do not modify.\n");
+                for (String lBoundClass : mBoundClasses) {
+                    // Binders are looked up by name from the handler class name. So both names must be preserved.
+                    lWriter.write("-keepnames class " + lBoundClass + "\n");
+                    lWriter.write("-keep class " + lBoundClass + BINDER_SUFFIX + " { <init>(); }\n");
+                    lWriter.write("-keepclassmembers class " + lBoundClass + " { ** this$*; }\n");
+                }
+            } finally {
+                lWriter.close();
+            }
+        } catch (IOException eIOException) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                                                     "Could not generate task binder ProGuard rules: " + eIOException.getMessage());
+        }
+    }
+
+    /**
+     * The Java compiler names the outer reference field of an inner class "this$" followed by the number of outer references the
+     * enclosing class itself has (e.g. this$0 if the enclosing class is a top-level or static class).
+     */
+    private String outerFieldName(TypeElement pOuterType) {
+        int lDepth = 0;
+        TypeElement lType = pOuterType;
+        while (isInner(lType)) {
+            ++lDepth;
+            lType = (TypeElement) lType.getEnclosingElement();
+        }
+        return "this$" + lDepth;
+    }
+
+    private boolean isInner(TypeElement pType) {
+        return (pType.getKind() == ElementKind.CLASS) && (pType.getNestingKind() == NestingKind.MEMBER)
+                        && !pType.getModifiers().contains(Modifier.STATIC);
+    }
+
+    private TypeElement superclassOf(TypeElement pType) {
+        TypeMirror lSuperclass = pType.getSuperclass();
+        if (lSuperclass.getKind() != TypeKind.DECLARED) return null;
+
+        TypeElement lSuperclassElement = (TypeElement) ((DeclaredType) lSuperclass).asElement();
+        return lSuperclassElement.getQualifiedName().contentEquals("java.lang.Object") ? null : lSuperclassElement;
+    }
+
+    private static String join(List<?> pValues, boolean pQuote) {
+        StringBuilder lBuilder = new StringBuilder();
+        for (Object lValue : pValues) {
+            if (lBuilder.length() > 0) lBuilder.append(", ");
+            if (pQuote && (lValue != null)) {
+                lBuilder.append('"').append(lValue).append('"');
+            } else {
+                lBuilder.append(lValue);
+            }
+        }
+        return lBuilder.toString();
+    }
+}
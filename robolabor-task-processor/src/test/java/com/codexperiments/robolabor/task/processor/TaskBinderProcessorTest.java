@@ -0,0 +1,238 @@
+package com.codexperiments.robolabor.task.processor;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs the processor with the system Java compiler on sample sources, then loads the compiled classes to check that generated
+ * binders name the outer reference fields javac actually generated. TaskHandler and TaskBinder are declared by the samples: the
+ * processor only knows them by name.
+ */
+public class TaskBinderProcessorTest {
+    private static final String TASK_HANDLER_SOURCE = "package com.codexperiments.robolabor.task.handler;\n"
+                    + "public interface TaskHandler {}\n";
+    private static final String TASK_BINDER_SOURCE = "package com.codexperiments.robolabor.task;\n"
+                    + "public interface TaskBinder {\n"
+                    + "    boolean isInner();\n"
+                    + "    String[] getEmitterFieldNames();\n"
+                    + "    boolean[] getHandlerFields();\n"
+                    + "}\n";
+    // Inner tasks use their outer instance so that no compiler can drop its reference field.
+    private static final String SAMPLE_SOURCE = "package sample;\n"
+                    + "import com.codexperiments.robolabor.task.handler.TaskHandler;\n"
+                    + "public class Emitter {\n"
+                    + "    public class InnerTask implements TaskHandler {\n"
+                    + "        public Object emitter() { return Emitter.this; }\n"
+                    + "    }\n"
+                    + "    public class Level1 {\n"
+                    + "        public class Level2Task extends InnerTask {\n"
+                    + "            public Object level1() { return Level1.this; }\n"
+                    + "        }\n"
+                    + "    }\n"
+                    + "    public class HandlerEmitter implements TaskHandler {\n"
+                    + "        public class NestedTask implements TaskHandler {\n"
+                    + "            public Object emitter() { return HandlerEmitter.this; }\n"
+                    + "        }\n"
+                    + "    }\n"
+                    + "    public static class StaticTask implements TaskHandler {}\n"
+                    + "    public class NotATask {}\n"
+                    + "    public enum Kind {\n"
+                    + "        VALUE;\n"
+                    + "        public class EnumTask implements TaskHandler {\n"
+                    + "            public Object kind() { return Kind.this; }\n"
+                    + "        }\n"
+                    + "    }\n"
+                    + "    public interface Container {\n"
+                    + "        class Nested {\n"
+                    + "            public class InterfaceTask implements TaskHandler {\n"
+                    + "                public Object nested() { return Nested.this; }\n"
+                    + "            }\n"
+                    + "        }\n"
+                    + "    }\n"
+                    + "}\n";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mSourceDir;
+    private File mClassDir;
+    private File mGeneratedDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mSourceDir = mFolder.newFolder("src");
+        mClassDir = mFolder.newFolder("classes");
+        mGeneratedDir = mFolder.newFolder("generated");
+    }
+
+    @Test
+    public void testProcess() throws Exception {
+        compile();
+
+        assertBinder("sample.Emitter$InnerTask", new String[] { "this$0" }, new boolean[] { false });
+        assertBinder("sample.Emitter$Level1$Level2Task", new String[] { "this$1", "this$0" }, new boolean[] { false, false });
+        assertBinder("sample.Emitter$HandlerEmitter$NestedTask", new String[] { "this$1" }, new boolean[] { true });
+        assertBinder("sample.Emitter$HandlerEmitter", new String[] { "this$0" }, new boolean[] { false });
+        // Static and non-handler classes don't need a binder.
+        assertNoBinder("sample.Emitter$StaticTask");
+        assertNoBinder("sample.Emitter$NotATask");
+        assertNoBinder("sample.Emitter$Level1");
+    }
+
+    @Test
+    public void testProcess_enclosedInEnumAndInterface() throws Exception {
+        compile();
+
+        assertBinder("sample.Emitter$Kind$EnumTask", new String[] { "this$0" }, new boolean[] { false });
+        assertBinder("sample.Emitter$Container$Nested$InterfaceTask", new String[] { "this$0" }, new boolean[] { false });
+        assertNoBinder("sample.Emitter$Container$Nested");
+    }
+
+    @Test
+    public void testProcess_generatedSource() throws Exception {
+        compile();
+
+        String lSource = read(new File(mGeneratedDir, "sample/Emitter$InnerTask$$TaskBinder.java"));
+        assertThat(lSource, containsString("package sample;\n"));
+        assertThat(lSource, containsString("public final class Emitter$InnerTask$$TaskBinder"
+                        + " implements com.codexperiments.robolabor.task.TaskBinder {\n"));
+        assertThat(lSource, containsString("private static final String[] EMITTER_FIELD_NAMES = { \"this$0\" };\n"));
+        assertThat(lSource, containsString("private static final boolean[] HANDLER_FIELDS = { false };\n"));
+    }
+
+    @Test
+    public void testProcess_proguardRules() throws Exception {
+        compile();
+
+        String lRules = read(new File(mClassDir, "META-INF/proguard/robolabor-task-binders.pro"));
+        assertThat(lRules, containsString("-keepnames class sample.Emitter$InnerTask\n"));
+        assertThat(lRules, containsString("-keep class sample.Emitter$InnerTask$$TaskBinder { <init>(); }\n"));
+        assertThat(lRules, containsString("-keepclassmembers class sample.Emitter$InnerTask { ** this$*; }\n"));
+        assertThat(lRules, containsString("-keepnames class sample.Emitter$Kind$EnumTask\n"));
+        assertThat(lRules.contains("StaticTask"), equalTo(false));
+    }
+
+    @Test
+    public void testProcess_noTaskHandler() throws Exception {
+        // Without TaskHandler on the classpath, nothing is generated.
+        List<File> lSources = Collections.singletonList(write("sample/Other.java",
+                                                              "package sample;\npublic class Other {\n    public class Inner {}\n}\n"));
+        compile(lSources);
+
+        assertThat(new File(mGeneratedDir, "sample").exists(), equalTo(false));
+        assertThat(new File(mClassDir, "META-INF/proguard/robolabor-task-binders.pro").exists(), equalTo(false));
+    }
+
+    private void compile() throws IOException {
+        List<File> lSources = new ArrayList<File>();
+        lSources.add(write("com/codexperiments/robolabor/task/handler/TaskHandler.java", TASK_HANDLER_SOURCE));
+        lSources.add(write("com/codexperiments/robolabor/task/TaskBinder.java", TASK_BINDER_SOURCE));
+        lSources.add(write("sample/Emitter.java", SAMPLE_SOURCE));
+        compile(lSources);
+    }
+
+    private void compile(List<File> pSources) throws IOException {
+        JavaCompiler lCompiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> lDiagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager lFileManager = lCompiler.getStandardFileManager(lDiagnostics, null, null);
+        try {
+            lFileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(mClassDir));
+            lFileManager.setLocation(StandardLocation.SOURCE_OUTPUT, Collections.singletonList(mGeneratedDir));
+            JavaCompiler.CompilationTask lTask = lCompiler.getTask(null, lFileManager, lDiagnostics, null, null,
+                                                                   lFileManager.getJavaFileObjectsFromFiles(pSources));
+            lTask.setProcessors(Collections.singletonList(new TaskBinderProcessor()));
+            boolean lSuccess = lTask.call();
+
+            for (Diagnostic<? extends JavaFileObject> lDiagnostic : lDiagnostics.getDiagnostics()) {
+                assertThat(lDiagnostic.toString(), lDiagnostic.getKind() == Diagnostic.Kind.ERROR, equalTo(false));
+            }
+            assertThat(lSuccess, equalTo(true));
+        } finally {
+            lFileManager.close();
+        }
+    }
+
+    /**
+     * Check binder content, then check that each field it names exists at the corresponding level of the class hierarchy.
+     */
+    private void assertBinder(String pClassName, String[] pFieldNames, boolean[] pHandlerFields) throws Exception {
+        URLClassLoader lClassLoader = new URLClassLoader(new URL[] { mClassDir.toURI().toURL() });
+        Class<?> lBinderClass = lClassLoader.loadClass(pClassName + "$$TaskBinder");
+        Object lBinder = lBinderClass.newInstance();
+        assertThat((Boolean) lBinderClass.getMethod("isInner").invoke(lBinder), equalTo(true));
+        String[] lFieldNames = (String[]) lBinderClass.getMethod("getEmitterFieldNames").invoke(lBinder);
+        boolean[] lHandlerFields = (boolean[]) lBinderClass.getMethod("getHandlerFields").invoke(lBinder);
+        assertThat(Arrays.asList(lFieldNames), equalTo(Arrays.asList(pFieldNames)));
+        assertThat(Arrays.toString(lHandlerFields), equalTo(Arrays.toString(pHandlerFields)));
+
+        Class<?> lClass = lClassLoader.loadClass(pClassName);
+        for (String lFieldName : lFieldNames) {
+            Field lField = lClass.getDeclaredField(lFieldName);
+            assertThat(lField.isSynthetic(), equalTo(true));
+            lClass = lClass.getSuperclass();
+        }
+    }
+
+    private void assertNoBinder(String pClassName) {
+        String lBinderPath = pClassName.replace('.', '/') + "$$TaskBinder";
+        assertThat(pClassName, new File(mGeneratedDir, lBinderPath + ".java").exists(), equalTo(false));
+        assertThat(pClassName, new File(mClassDir, lBinderPath + ".class").exists(), equalTo(false));
+    }
+
+    private File write(String pPath, String pContent) throws IOException {
+        File lFile = new File(mSourceDir, pPath);
+        lFile.getParentFile().mkdirs();
+        Writer lWriter = new OutputStreamWriter(new FileOutputStream(lFile), "UTF-8");
+        try {
+            lWriter.write(pContent);
+        } finally {
+            lWriter.close();
+        }
+        return lFile;
+    }
+
+    private String read(File pFile) throws IOException {
+        StringBuilder lBuilder = new StringBuilder();
+        Reader lReader = new InputStreamReader(new FileInputStream(pFile), "UTF-8");
+        try {
+            char[] lBuffer = new char[1024];
+            int lLength;
+            while ((lLength = lReader.read(lBuffer)) >= 0) {
+                lBuilder.append(lBuffer, 0, lLength);
+            }
+        } finally {
+            lReader.close();
+        }
+        return lBuilder.toString();
+    }
+}
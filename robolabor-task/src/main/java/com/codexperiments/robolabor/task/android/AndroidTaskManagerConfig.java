@@ -1,7 +1,6 @@
 package com.codexperiments.robolabor.task.android;
 
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 
 import android.annotation.TargetApi;
@@ -11,14 +10,27 @@ import android.content.pm.ApplicationInfo;
 import android.os.Build;
 import android.text.TextUtils;
 
+import com.codexperiments.robolabor.task.TaskExecutionMode;
 import com.codexperiments.robolabor.task.TaskManagerConfig;
 import com.codexperiments.robolabor.task.handler.Task;
+import com.codexperiments.robolabor.task.handler.TaskBatchable;
+import com.codexperiments.robolabor.task.handler.TaskDeadline;
+import com.codexperiments.robolabor.task.handler.TaskPriority;
+import com.codexperiments.robolabor.task.util.PriorityTaskExecutor;
+import com.codexperiments.robolabor.task.util.TaskResultCache;
 
 /**
  * Example configuration that handles basic Android components: Activity and Fragments.
  */
 public class AndroidTaskManagerConfig implements TaskManagerConfig
 {
+    // Time after which a waiting task gets its priority raised, so that low priority tasks are not starved.
+    private static final long DEFAULT_AGING_PERIOD = 500;
+    // Time during which batchable tasks are collected. Short enough to be unnoticeable, long enough to gather a burst of tasks.
+    private static final long DEFAULT_BATCH_WINDOW = 20;
+    // Minimum time between two progress dispatches. None by default: collapsing alone already prevents flooding the UI-Thread.
+    private static final long DEFAULT_PROGRESS_INTERVAL = 0;
+
     private Application mApplication;
     private ExecutorService mSerialExecutor;
 
@@ -44,13 +56,14 @@ public class AndroidTaskManagerConfig implements TaskManagerConfig
     }
 
     /**
-     * Create a single-threaded executor which executes tasks sequentially.
+     * Create a single-threaded executor which executes tasks one at a time, by priority (see resolvePriority()) and then in
+     * submission order.
      * 
      * @return Instance of the serial executor.
      */
     protected ExecutorService createExecutors()
     {
-        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+        return new PriorityTaskExecutor(1, DEFAULT_AGING_PERIOD, new ThreadFactory() {
             public Thread newThread(Runnable pRunnable)
             {
                 Thread thread = new Thread(pRunnable);
@@ -126,12 +139,75 @@ public class AndroidTaskManagerConfig implements TaskManagerConfig
         return false;
     }
 
+    @Override
+    public TaskExecutionMode resolveExecutionMode(Task<?> pTask)
+    {
+        return TaskExecutionMode.DROP;
+    }
+
+    @Override
+    public long resolveThrottlePeriod(Task<?> pTask)
+    {
+        return 0;
+    }
+
+    /**
+     * Timeout is given by the task itself if it implements TaskDeadline.
+     */
+    @Override
+    public long resolveTimeout(Task<?> pTask)
+    {
+        return (pTask instanceof TaskDeadline) ? ((TaskDeadline) pTask).getTimeout() : 0;
+    }
+
+    /**
+     * Progress is dispatched as soon as possible by default. Override to throttle tasks that update an expensive UI.
+     */
+    @Override
+    public long resolveProgressInterval(Task<?> pTask)
+    {
+        return DEFAULT_PROGRESS_INTERVAL;
+    }
+
+    @Override
+    public long resolveGracePeriod(Task<?> pTask)
+    {
+        return 0;
+    }
+
     @Override
     public ExecutorService resolveExecutor(Task<?> pTask)
     {
         return mSerialExecutor;
     }
 
+    /**
+     * Batchable tasks are collected during a short window by default.
+     */
+    @Override
+    public long resolveBatchWindow(Task<?> pTask)
+    {
+        return (pTask instanceof TaskBatchable) ? DEFAULT_BATCH_WINDOW : 0;
+    }
+
+    /**
+     * Priority is given by the task itself if it implements TaskPriority.
+     */
+    @Override
+    public int resolvePriority(Task<?> pTask)
+    {
+        return (pTask instanceof TaskPriority) ? ((TaskPriority) pTask).getPriority() : PriorityTaskExecutor.DEFAULT_PRIORITY;
+    }
+
+    /**
+     * Results are not cached by default. Override to return a shared TaskResultCache for the tasks that can use one.
+     */
+    @Override
+    public TaskResultCache resolveResultCache(Task<?> pTask)
+    {
+        return null;
+    }
+
     @Override
     public boolean allowUnmanagedEmitters()
     {
@@ -1,41 +1,63 @@
 package com.codexperiments.robolabor.task.android;
 
+import com.codexperiments.robolabor.task.core.TaskManagerException;
 import com.codexperiments.robolabor.task.handler.Task;
 import com.codexperiments.robolabor.task.handler.TaskResult;
 
-public class AndroidTaskManagerException extends RuntimeException {
-    private static final long serialVersionUID = 1075178581665280357L;
+/**
+ * Errors raised by the AndroidTaskManager. Engine errors, raised as TaskManagerException by the core, are translated into this
+ * exception by the AndroidTaskManager, so that existing catch clauses still handle them.
+ */
+public class AndroidTaskManagerException extends TaskManagerException {
+    private static final long serialVersionUID = -3387466286436720513L;
 
     public AndroidTaskManagerException(String pMessage, Object... pArguments) {
-        super(String.format(pMessage, pArguments));
+        super(pMessage, pArguments);
     }
 
     public AndroidTaskManagerException(Throwable pThrowable, String pMessage, Object... pArguments) {
-        super(String.format(pMessage, pArguments), pThrowable);
+        super(pThrowable, pMessage, pArguments);
+    }
+
+    /**
+     * Translate an engine error into an AndroidTaskManagerException with the same message, cause and stack trace.
+     */
+    public static AndroidTaskManagerException translate(TaskManagerException pException) {
+        if (pException instanceof AndroidTaskManagerException) return (AndroidTaskManagerException) pException;
+
+        AndroidTaskManagerException lException = new AndroidTaskManagerException(pException.getCause(),
+                                                                                  "%1$s",
+                                                                                  pException.getMessage());
+        lException.setStackTrace(pException.getStackTrace());
+        return lException;
     }
 
     public static AndroidTaskManagerException emitterIdCouldNotBeDetermined(TaskResult<?> pTask) {
-        return new AndroidTaskManagerException("Invalid task %1$s : Emitter Id couldn't be bound.", pTask);
+        return translate(TaskManagerException.emitterIdCouldNotBeDetermined(pTask));
     }
 
     public static AndroidTaskManagerException emitterNotManaged(Object pEmitterId, Object pEmitter) {
-        return new AndroidTaskManagerException("A call to manage for emitter %2$s with Id %1$s is missing.", pEmitterId, pEmitter);
+        return translate(TaskManagerException.emitterNotManaged(pEmitterId, pEmitter));
     }
 
     public static AndroidTaskManagerException innerTasksNotAllowed(Task<?> pTask) {
-        return new AndroidTaskManagerException("Inner tasks like %1$s not allowed by configuration.", pTask.getClass());
+        return translate(TaskManagerException.innerTasksNotAllowed(pTask));
     }
 
     public static AndroidTaskManagerException internalError() {
-        return internalError(null);
+        return translate(TaskManagerException.internalError());
     }
 
     public static AndroidTaskManagerException internalError(Throwable pThrowable) {
-        return new AndroidTaskManagerException(pThrowable, "Internal error inside the TaskManager.");
+        return translate(TaskManagerException.internalError(pThrowable));
+    }
+
+    public static AndroidTaskManagerException invalidBatchResults(TaskResult<?> pTask, int pTaskCount) {
+        return translate(TaskManagerException.invalidBatchResults(pTask, pTaskCount));
     }
 
     public static AndroidTaskManagerException invalidEmitterId(Object pEmitterId, Object pEmitter) {
-        return new AndroidTaskManagerException("Emitter Id %1$s is invalid for emitter %2$s.", pEmitterId, pEmitter);
+        return translate(TaskManagerException.invalidEmitterId(pEmitterId, pEmitter));
     }
 
     public static AndroidTaskManagerException mustBeExecutedFromUIThread() {
@@ -43,18 +65,18 @@ public class AndroidTaskManagerException extends RuntimeException {
     }
 
     public static AndroidTaskManagerException notCalledFromTask() {
-        return new AndroidTaskManagerException("This operation must be called inside a task.");
+        return translate(TaskManagerException.notCalledFromTask());
     }
 
     public static AndroidTaskManagerException progressCalledAfterTaskFinished() {
-        return new AndroidTaskManagerException("notifyProgress() called after task finished.");
+        return translate(TaskManagerException.progressCalledAfterTaskFinished());
     }
 
     public static AndroidTaskManagerException taskExecutedFromUnexecutedTask(Object pEmitter) {
-        return new AndroidTaskManagerException("Task executed from parent task %1$s that hasn't been executed yet.", pEmitter);
+        return translate(TaskManagerException.taskExecutedFromUnexecutedTask(pEmitter));
     }
 
     public static AndroidTaskManagerException unmanagedEmittersNotAllowed(Object pEmitter) {
-        return new AndroidTaskManagerException("Unmanaged emitter forbidden by configuration (%1$s).", pEmitter);
+        return translate(TaskManagerException.unmanagedEmittersNotAllowed(pEmitter));
     }
-}
+}
\ No newline at end of file
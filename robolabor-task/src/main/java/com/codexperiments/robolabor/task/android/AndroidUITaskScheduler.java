@@ -1,23 +1,68 @@
 package com.codexperiments.robolabor.task.android;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 
 import com.codexperiments.robolabor.task.TaskScheduler;
 
+/**
+ * Schedules runnables on the UI-Thread. Runnables are not posted one by one to the UI Handler: they are pushed to a lock-free queue
+ * which is drained by a single posted runnable. Thus, when many tasks notify the UI-Thread at the same time (e.g. 50 tasks
+ * finishing together), the UI Looper wakes up once and no Message is allocated per runnable.
+ *
+ * A drain can be given a time budget. Once it is exceeded, remaining runnables are left to a new drain posted behind the messages
+ * already queued in the Looper (e.g. input or drawing), so that a burst of runnables doesn't make the UI miss frames.
+ */
 public class AndroidUITaskScheduler implements TaskScheduler {
     private Handler mUIQueue;
     private Looper mUILooper;
+    // Runnables waiting for the next drain, in scheduling order.
+    private final Queue<Runnable> mRunnables;
+    // True while a drain is posted or running. Only the producer that sets it posts a drain.
+    private final AtomicBoolean mDrainScheduled;
+    private final Runnable mDrainRunnable;
+    private final long mTimeBudget;
 
+    /**
+     * Create a scheduler that drains all its runnables at once.
+     */
     public AndroidUITaskScheduler() {
+        this(0);
+    }
+
+    /**
+     * @param pTimeBudget Maximum time in milliseconds spent by a single drain, or 0 for no limit. At least one runnable is run per
+     *            drain, whatever its duration.
+     */
+    public AndroidUITaskScheduler(long pTimeBudget) {
         super();
+        if (pTimeBudget < 0) throw new IllegalArgumentException("Time budget must be positive or 0");
+
         mUILooper = Looper.getMainLooper();
         mUIQueue = new Handler(mUILooper);
+        mRunnables = new ConcurrentLinkedQueue<Runnable>();
+        mDrainScheduled = new AtomicBoolean(false);
+        mDrainRunnable = new Runnable() {
+            public void run() {
+                drain();
+            }
+        };
+        mTimeBudget = pTimeBudget;
     }
 
     @Override
     public void schedule(Runnable pRunnable) {
-        mUIQueue.post(pRunnable);
+        if (pRunnable == null) throw new NullPointerException("Runnable is null");
+
+        mRunnables.add(pRunnable);
+        if (mDrainScheduled.compareAndSet(false, true)) {
+            mUIQueue.post(mDrainRunnable);
+        }
     }
 
     @Override
@@ -25,7 +70,41 @@ public class AndroidUITaskScheduler implements TaskScheduler {
         if (Looper.myLooper() == mUILooper) {
             pRunnable.run();
         } else {
-            mUIQueue.post(pRunnable);
+            schedule(pRunnable);
+        }
+    }
+
+    /**
+     * Run queued runnables until the queue is empty or the time budget is exceeded.
+     */
+    private void drain() {
+        long lDeadline = (mTimeBudget > 0) ? SystemClock.uptimeMillis() + mTimeBudget : Long.MAX_VALUE;
+        boolean lFailed = true;
+        try {
+            while (true) {
+                Runnable lRunnable = mRunnables.poll();
+                if (lRunnable != null) {
+                    lRunnable.run();
+                    if ((SystemClock.uptimeMillis() >= lDeadline) && !mRunnables.isEmpty()) {
+                        // Drain stays scheduled: its flag is left set until the new drain empties the queue.
+                        mUIQueue.post(mDrainRunnable);
+                        lFailed = false;
+                        return;
+                    }
+                } else {
+                    mDrainScheduled.set(false);
+                    lFailed = false;
+                    // A runnable may have been queued after the last poll but before the flag got reset. Its producer has not
+                    // posted any drain, thus it must be run by this one.
+                    if (mRunnables.isEmpty() || !mDrainScheduled.compareAndSet(false, true)) return;
+                    lFailed = true;
+                }
+            }
+        } finally {
+            // If a runnable fails, remaining ones are run by a new drain, as they would have been if posted separately.
+            if (lFailed) {
+                mUIQueue.post(mDrainRunnable);
+            }
         }
     }
 }
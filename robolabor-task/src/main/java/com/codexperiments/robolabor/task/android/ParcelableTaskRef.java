@@ -0,0 +1,63 @@
+package com.codexperiments.robolabor.task.android;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.codexperiments.robolabor.task.TaskRef;
+
+/**
+ * TaskRef that can be written in a Parcel (e.g. in a Bundle saved with an Activity state). All references returned by the
+ * AndroidTaskManager are ParcelableTaskRef. A reference obtained elsewhere can be converted with of(): both reference the same
+ * task and are equal.
+ * 
+ * @param <TResult> Type of the result returned by the corresponding task.
+ */
+public class ParcelableTaskRef<TResult> extends TaskRef<TResult> implements Parcelable
+{
+    private static final long serialVersionUID = -5309346417869180413L;
+
+    public ParcelableTaskRef(int pId)
+    {
+        super(pId);
+    }
+
+    protected ParcelableTaskRef(TaskRef<TResult> pTaskRef)
+    {
+        super(pTaskRef);
+    }
+
+    protected ParcelableTaskRef(Parcel pParcel)
+    {
+        super(pParcel.readInt());
+    }
+
+    public static <TResult> ParcelableTaskRef<TResult> of(TaskRef<TResult> pTaskRef)
+    {
+        if (pTaskRef instanceof ParcelableTaskRef) return (ParcelableTaskRef<TResult>) pTaskRef;
+        return new ParcelableTaskRef<TResult>(pTaskRef);
+    }
+
+    @Override
+    public void writeToParcel(Parcel pParcel, int pFlags)
+    {
+        pParcel.writeInt(getId());
+    }
+
+    @Override
+    public int describeContents()
+    {
+        return 0;
+    }
+
+    public static final Parcelable.Creator<ParcelableTaskRef<?>> CREATOR = new Parcelable.Creator<ParcelableTaskRef<?>>() {
+        public ParcelableTaskRef<?> createFromParcel(Parcel pParcel)
+        {
+            return new ParcelableTaskRef<Object>(pParcel);
+        }
+
+        public ParcelableTaskRef<?>[] newArray(int pSize)
+        {
+            return new ParcelableTaskRef[pSize];
+        }
+    };
+}
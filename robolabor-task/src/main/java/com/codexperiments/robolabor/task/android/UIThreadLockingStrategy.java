@@ -0,0 +1,24 @@
+package com.codexperiments.robolabor.task.android;
+
+import static com.codexperiments.robolabor.task.android.AndroidTaskManagerException.mustBeExecutedFromUIThread;
+
+import android.os.Looper;
+
+import com.codexperiments.robolabor.task.core.LockingStrategy;
+
+/**
+ * Everything is done on the UI-Thread. No lock required.
+ */
+public class UIThreadLockingStrategy implements LockingStrategy {
+    private Looper mUILooper;
+
+    public UIThreadLockingStrategy() {
+        super();
+        mUILooper = Looper.getMainLooper();
+    }
+
+    @Override
+    public void checkCallIsAllowed() {
+        if (Looper.myLooper() != mUILooper) throw mustBeExecutedFromUIThread();
+    }
+}
@@ -1,8 +0,0 @@
-package com.codexperiments.robolabor.task.handler;
-
-/**
- * TODO Pass a progression object.
- */
-public interface TaskNotifier {
-    void notifyProgress();
-}
@@ -0,0 +1,138 @@
+package com.codexperiments.robolabor.test.task;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+
+import com.codexperiments.robolabor.task.android.AndroidUITaskScheduler;
+
+/**
+ * Runnables are scheduled from the instrumentation thread and drained on the UI-Thread.
+ */
+public class AndroidUITaskSchedulerTest extends InstrumentationTestCase {
+    private static final long TIMEOUT_MS = 5000;
+    private static final int RUNNABLE_COUNT = 1000;
+
+    private List<Integer> mOrder;
+    private AtomicBoolean mOnUIThread;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mOrder = Collections.synchronizedList(new ArrayList<Integer>());
+        mOnUIThread = new AtomicBoolean(true);
+    }
+
+    public void testSchedule_inOrderOnUIThread() throws InterruptedException {
+        AndroidUITaskScheduler lScheduler = new AndroidUITaskScheduler();
+        CountDownLatch lDone = new CountDownLatch(RUNNABLE_COUNT);
+        for (int i = 0; i < RUNNABLE_COUNT; ++i) {
+            lScheduler.schedule(new RecordingRunnable(i, lDone, 0));
+        }
+
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(mOnUIThread.get(), equalTo(true));
+        assertInOrder(RUNNABLE_COUNT);
+    }
+
+    public void testSchedule_concurrentProducers() throws InterruptedException {
+        final AndroidUITaskScheduler lScheduler = new AndroidUITaskScheduler();
+        final CountDownLatch lDone = new CountDownLatch(RUNNABLE_COUNT * 2);
+        Runnable lProducer = new Runnable() {
+            public void run() {
+                for (int i = 0; i < RUNNABLE_COUNT; ++i) {
+                    lScheduler.schedule(new RecordingRunnable(i, lDone, 0));
+                }
+            }
+        };
+        new Thread(lProducer).start();
+        new Thread(lProducer).start();
+
+        // No runnable is lost, even when queued while a drain is finishing.
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(mOrder.size(), equalTo(RUNNABLE_COUNT * 2));
+    }
+
+    public void testSchedule_timeBudget() throws InterruptedException {
+        final AndroidUITaskScheduler lScheduler = new AndroidUITaskScheduler(5);
+        final int lRunnableCount = 50;
+        final CountDownLatch lDone = new CountDownLatch(lRunnableCount + 1);
+        // Once the first runnable runs, a message is posted to the UI Looper. It must not wait for the whole burst to be drained.
+        lScheduler.schedule(new Runnable() {
+            public void run() {
+                new Handler(Looper.getMainLooper()).post(new RecordingRunnable(-1, lDone, 0));
+            }
+        });
+        for (int i = 0; i < lRunnableCount; ++i) {
+            lScheduler.schedule(new RecordingRunnable(i, lDone, 1));
+        }
+
+        assertThat(lDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), equalTo(true));
+        assertThat(mOnUIThread.get(), equalTo(true));
+        int lMessageIndex = mOrder.indexOf(-1);
+        assertThat(lMessageIndex < lRunnableCount, equalTo(true));
+
+        // Runnables are still run in order around the message.
+        mOrder.remove(lMessageIndex);
+        assertInOrder(lRunnableCount);
+    }
+
+    public void testScheduleIfNecessary_fromUIThread() {
+        final AndroidUITaskScheduler lScheduler = new AndroidUITaskScheduler();
+        final AtomicBoolean lRunInline = new AtomicBoolean(false);
+        getInstrumentation().runOnMainSync(new Runnable() {
+            public void run() {
+                lScheduler.scheduleIfNecessary(new Runnable() {
+                    public void run() {
+                        lRunInline.set(true);
+                    }
+                });
+                // Still inside the caller: runnable has not been deferred to a drain.
+                mOnUIThread.set(lRunInline.get());
+            }
+        });
+        assertThat(mOnUIThread.get(), equalTo(true));
+    }
+
+    private void assertInOrder(int pCount) {
+        assertThat(mOrder.size(), equalTo(pCount));
+        for (int i = 0; i < pCount; ++i) {
+            assertThat(mOrder.get(i), equalTo(i));
+        }
+    }
+
+    private class RecordingRunnable implements Runnable {
+        private final int mIndex;
+        private final CountDownLatch mDone;
+        private final long mDuration;
+
+        public RecordingRunnable(int pIndex, CountDownLatch pDone, long pDuration) {
+            super();
+            mIndex = pIndex;
+            mDone = pDone;
+            mDuration = pDuration;
+        }
+
+        public void run() {
+            if (Looper.myLooper() != Looper.getMainLooper()) {
+                mOnUIThread.set(false);
+            }
+            if (mDuration > 0) {
+                SystemClock.sleep(mDuration);
+            }
+            mOrder.add(mIndex);
+            mDone.countDown();
+        }
+    }
+}
@@ -535,6 +535,21 @@ public class TaskManagerTest extends TestCase<TaskActivity> {
         assertThat(lTaskResult.getTaskException(), nullValue());
     }
 
+    public void testRebind_inner_managed_several() throws InterruptedException {
+        TaskActivity lInitialActivity = getActivity();
+        BackgroundTask lTask1 = lInitialActivity.runInnerTask(mTaskResult);
+        BackgroundTask lTask2 = lInitialActivity.runInnerTask(mTaskResult);
+        rotateActivitySeveralTimes(2);
+        BackgroundTaskResult[] lTaskResults = lInitialActivity.rebindInnerTasks(new BackgroundTask[] { lTask1, lTask2 }, 2);
+        rotateActivitySeveralTimes(2);
+
+        for (BackgroundTaskResult lTaskResult : lTaskResults) {
+            assertThat(lTaskResult.awaitFinished(), equalTo(true));
+            assertThat(lTaskResult.getTaskResult(), equalTo(mTaskResult));
+            assertThat(lTaskResult.getTaskException(), nullValue());
+        }
+    }
+
     @UiThreadTest
     public void testRebind_inner_managed_nonExistingTask() throws Throwable {
         boolean lBound = mTaskManager.rebind(new TaskRef<Integer>(Integer.MAX_VALUE), new TaskResult<Integer>() {
@@ -549,6 +564,28 @@ public class TaskManagerTest extends TestCase<TaskActivity> {
         assertThat(lBound, equalTo(false));
     }
 
+    public void testCancel_inner_managed_running() throws InterruptedException {
+        TaskActivity lInitialActivity = getActivity();
+        BackgroundTask lTask = lInitialActivity.runInnerTask(mTaskResult);
+        lInitialActivity.cancelTask(lTask, true);
+        // Termination handlers of a cancelled task are never executed.
+        assertThat(lTask.awaitFinished(), equalTo(false));
+
+        assertThat(lInitialActivity.getTaskResult(), nullValue());
+        assertThat(lInitialActivity.getTaskException(), nullValue());
+        assertThat(lTask.getTaskResult(), nullValue());
+        assertThat(lTask.getTaskException(), nullValue());
+    }
+
+    public void testCancel_inner_managed_afterTaskEnded() throws InterruptedException {
+        TaskActivity lInitialActivity = getActivity();
+        BackgroundTask lTask = lInitialActivity.runInnerTask(mTaskResult);
+        assertThat(lTask.awaitFinished(), equalTo(true));
+
+        lInitialActivity.cancelTask(lTask, false);
+        assertThat(lTask.getTaskResult(), equalTo(mTaskResult));
+    }
+
     @UiThreadTest
     public void testExecute_failure_taskNull() throws InterruptedException {
         try {
@@ -2,12 +2,18 @@ package com.codexperiments.robolabor.test.task.helper;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
 import android.content.Intent;
 import android.os.Bundle;
 import android.support.v4.app.FragmentActivity;
 
 import com.codexperiments.robolabor.task.TaskManager;
+import com.codexperiments.robolabor.task.TaskRef;
 import com.codexperiments.robolabor.task.handler.TaskIdentifiable;
+import com.codexperiments.robolabor.task.handler.TaskResult;
 import com.codexperiments.robolabor.task.id.IntTaskId;
 import com.codexperiments.robolabor.test.R;
 import com.codexperiments.robolabor.test.common.TestApplicationContext;
@@ -115,6 +121,33 @@ public class TaskActivity extends FragmentActivity {
         return lResult;
     }
 
+    public BackgroundTaskResult[] rebindInnerTasks(final BackgroundTask[] pBackgroundTasks, final int expectTaskBoundCount) {
+        final BackgroundTaskResult[] lResults = new BackgroundTaskResult[pBackgroundTasks.length];
+        for (int i = 0; i < pBackgroundTasks.length; ++i) {
+            lResults[i] = new InnerResult(mCheckEmitterNull);
+        }
+        runOnUiThread(new Runnable() {
+            public void run() {
+                Map<TaskRef<?>, TaskResult<?>> lTaskResults = new HashMap<TaskRef<?>, TaskResult<?>>();
+                for (int i = 0; i < pBackgroundTasks.length; ++i) {
+                    lTaskResults.put(pBackgroundTasks[i].getTaskRef(), lResults[i]);
+                }
+                int lBoundCount = mTaskManager.rebind(lTaskResults);
+                assertThat(lBoundCount, equalTo(expectTaskBoundCount));
+            }
+        });
+        return lResults;
+    }
+
+    public void cancelTask(final BackgroundTask pBackgroundTask, final boolean expectTaskCancelled) {
+        runOnUiThread(new Runnable() {
+            public void run() {
+                boolean lCancelled = mTaskManager.cancel(pBackgroundTask.getTaskRef(), true);
+                assertThat(lCancelled, equalTo(expectTaskCancelled));
+            }
+        });
+    }
+
     public HierarchicalTask runHierarchicalTask(final Integer pTaskResult) {
         final HierarchicalTask lTask = new HierarchicalTask(pTaskResult, mCheckEmitterNull, mStepByStep);
         runOnUiThread(new Runnable() {
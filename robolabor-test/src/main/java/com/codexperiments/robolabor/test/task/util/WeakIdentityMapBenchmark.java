@@ -0,0 +1,85 @@
+package com.codexperiments.robolabor.test.task.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Map;
+
+import junit.framework.TestCase;
+import android.os.Debug;
+import android.util.Log;
+
+import com.codexperiments.robolabor.task.util.AutoCleanMap;
+import com.codexperiments.robolabor.task.util.WeakIdentityMap;
+
+/**
+ * Compares lookup cost and allocations of the maps used to find a task descriptor from its handler. Results are written in the
+ * log (tag WeakIdentityMapBenchmark). Allocations are counted on the current thread only and require a Dalvik VM.
+ */
+public class WeakIdentityMapBenchmark extends TestCase {
+    private static final String TAG = "WeakIdentityMapBenchmark";
+    private static final int KEY_COUNT = 64;
+    private static final int LOOKUP_COUNT = 100000;
+
+    private Object[] mKeys;
+    private Object[] mValues;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mKeys = new Object[KEY_COUNT];
+        mValues = new Object[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; ++i) {
+            mKeys[i] = new Object();
+            mValues[i] = new Object();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testLookup_autoCleanMap() {
+        benchmarkLookup("AutoCleanMap", new AutoCleanMap<Object, Object>(KEY_COUNT));
+    }
+
+    public void testLookup_weakIdentityMap() {
+        int lAllocCount = benchmarkLookup("WeakIdentityMap", new WeakIdentityMap<Object, Object>(KEY_COUNT));
+        assertThat(lAllocCount, equalTo(0));
+    }
+
+    /**
+     * Fill the map and perform lookups on it. Warm-up is performed before measurement.
+     *
+     * @return Number of objects allocated during measured lookups.
+     */
+    private int benchmarkLookup(String pName, Map<Object, Object> pMap) {
+        for (int i = 0; i < KEY_COUNT; ++i) {
+            pMap.put(mKeys[i], mValues[i]);
+        }
+        lookup(pMap, LOOKUP_COUNT);
+
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadGcInvocationCount();
+        Debug.startAllocCounting();
+        long lStartTime = System.nanoTime();
+        try {
+            lookup(pMap, LOOKUP_COUNT);
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        long lDuration = System.nanoTime() - lStartTime;
+        int lAllocCount = Debug.getThreadAllocCount();
+        int lAllocSize = Debug.getThreadAllocSize();
+        int lGcCount = Debug.getThreadGcInvocationCount();
+
+        Log.i(TAG, pName + ": " + (lDuration / LOOKUP_COUNT) + "ns/lookup, " + lAllocCount + " allocations (" + lAllocSize
+                        + " bytes), " + lGcCount + " GC");
+        return lAllocCount;
+    }
+
+    private void lookup(Map<Object, Object> pMap, int pLookupCount) {
+        for (int i = 0; i < pLookupCount; ++i) {
+            int lIndex = i % KEY_COUNT;
+            // Hamcrest matchers are not used here since they would be counted as allocations.
+            assertSame(mValues[lIndex], pMap.get(mKeys[lIndex]));
+        }
+    }
+}